@@ -6,12 +6,11 @@ import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RectangularShape;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import struct.AnnotationGroups;
 import struct.ArrayListModel;
@@ -74,40 +73,34 @@ import struct.MetaImage;
 @SuppressWarnings("serial")
 public class Annotation extends Rectangle2D.Double {
 	// ////////////////////////////////////////////////
-	// Regular Expressions for matching annotations //
+	// Characters the list grammar is built from     //
 	// ////////////////////////////////////////////////
 
-	/** a regular expression that matches a rectangle [x,y;w,h] */
-	static private final String reRectangle = "\\[(-?\\d+),(-?\\d+);(-?\\d+),(-?\\d+)\\]";
-
-	/** Attributes are string tags for an Annotation. */
-	static private final String reAttribute = "\\[([.*]+)\\]";
-
-	/** the contents of square braces are either rectangles or attributes */
-	static private final String reContent = "(" + reRectangle + ")|(" + reAttribute + ")";
-
-	/** A simple Annotation is only a single Feature id and a rectangle **/
-	static private final String reSimpleAnnotation = "(([A-Za-z])(" + reContent + "))";
 	/**
-	 * Complex Annotations are a Feature id, rectangle and tab separated list of
-	 * sub Annotations and Attributes
+	 * what follows each number of a rectangle [x,y;w,h], the rectangle's
+	 * '[' comes before the first
 	 */
-	static private final String reComplexAnnotation = "(([A-Za-z])\\{" + reRectangle + "(.*)\\})";
+	static private final char[] RECTANGLE_SEPARATORS = { ',', ';', ',', ']' };
+
+	/** the Feature each ASCII letter names, null where it names none */
+	static private final Feature[] FEATURE_BY_LETTER = new Feature[128];
+	static {
+		for (char c = 'A'; c <= 'z'; c++)
+			if (isLetter(c))
+				FEATURE_BY_LETTER[c] = Feature.parseFeature(String.valueOf(c));
+	}
 
+	/** the form of a string that isn't an Annotation */
+	static private final int NOT_ANNOTATION = 0;
+	/** the form of a generic Annotation, f[x,y;w,h] */
+	static private final int GENERIC = 1;
 	/**
-	 * A regular expression that matches both generic and complex Annotations
+	 * the form of a generic Annotation holding only dots and stars, f[.*],
+	 * which is read as an Annotation but never has a valid rectangle
 	 */
-	static private final String ANNOTATION = reSimpleAnnotation + "|" + reComplexAnnotation;
-
-	/** The Pattern that checks if a string might be an Annotation */
-	static private final Pattern annotationPattern = Pattern.compile(ANNOTATION);
-
-	/***/
-	static private final String FLOAT_REGEX = "([+-]?\\d*\\.?\\d*)";
-	/** regular expression for the roll/yaw/pitch */
-	private static final String ROTATION_REGEX = "r\\[" + FLOAT_REGEX + "," + FLOAT_REGEX + "," + FLOAT_REGEX + "\\]";
-	/** pattern for the roll/yaw/pitch */
-	private static final Pattern ROTATION_PATTERN = Pattern.compile(ROTATION_REGEX);
+	static private final int GENERIC_DOTS = 2;
+	/** the form of a complex Annotation, f{[x,y;w,h] ...} */
+	static private final int COMPLEX = 3;
 
 	/** */
 	private static final String PITCH_MIN = null;
@@ -181,13 +174,13 @@ public class Annotation extends Rectangle2D.Double {
 	 * like trying to id a twin, or if you want to mark it green since it has
 	 * green, and yellow if it also happens to have yellow)
 	 */
-	private Category category = new Category(Category.UNTAGGED.toString(), 'd');
+	private Category category = Category.UNTAGGED;
 	/**
 	 * An additional category allowed for annotations of animals, intended to
 	 * mark the breed of the animal as opposed to specifically identifying an
 	 * individual animal
 	 */
-	private Category breed = new Category(Category.BREED_UNKNOWN.toString(), 'b');
+	private Category breed = Category.BREED_UNKNOWN;
 
 	/** rotation of the annotation around a perceived longitudinal axis */
 	private float roll;
@@ -338,60 +331,59 @@ public class Annotation extends Rectangle2D.Double {
 	 * contain a square brace since all generic annotations and attributes use
 	 * them and anything without one is considered extraneous (for instance if
 	 * the line starts with a file name, that will be skipped).
+	 * <p>
+	 * The line is walked once, an Annotation's text is cut straight out of the
+	 * line unless a skipped section falls inside it, only then is the text
+	 * joined back together without the skipped section.
 	 * 
 	 * @param line
 	 *            the string to parse
 	 * @return an ArrayList of all Annotations found in the string
 	 */
 	static public ArrayList<Annotation> parseAnnotationList(String line) {
-		// break up the presumably tab separated line into a its composite
-		// segments
-		String[] segments = line.trim().split("[\t]");
-
-		// the list of Annotations the input line contained separated from each
-		// other
-		ArrayList<String> toParse = new ArrayList<>();
-
-		// the current annotation being built up from the segmented list
-		String readLine = "";
+		String s = line.trim();
+		ArrayList<Annotation> res = new ArrayList<>();
 
-		// whenever reentrant reaches zero an Annotation has been complete and
-		// readLine needs to be added to toParse and then reset
+		// where the Annotation being read starts, -1 between Annotations
+		int noteStart = -1;
+		// where the last section of the Annotation being read ends
+		int noteEnd = -1;
+		// the Annotation's text, only used if a section inside it is skipped
+		StringBuilder joined = null;
+		// whenever reentrant reaches zero an Annotation is complete
 		int reentrant = 0;
 
-		// loop through all the segments and build up strings of individual
-		// generic and complex annotations
-		for (String segment : segments) {
+		for (int start = 0; start <= s.length();) {
+			int end = s.indexOf('\t', start);
+			if (end < 0)
+				end = s.length();
+
 			// all Annotations and Attributes require at least "[" & "]". If the
-			// segment contains neither skip it
-			if (!(segment.contains("[") || segment.contains("]")))
-				continue;
-
-			// build current Annotation
-			readLine += "\t" + segment;
-
-			// curly braces indicates list of sub-Annotations and Attributes
-			// until they all close don't add to toParse
-			if (segment.contains("{"))
-				reentrant += charFrequency('{', segment);
-
-			if (segment.contains("}"))
-				reentrant -= charFrequency('}', segment);
-
-			// All braces have been closed, readline is ready to be added to
-			// toParse
-			if (reentrant == 0) {
-				toParse.add(readLine.trim());
-				readLine = "";
+			// section contains neither skip it
+			if (indexOf(s, '[', start, end) >= 0 || indexOf(s, ']', start, end) >= 0) {
+				if (noteStart < 0)
+					noteStart = start;
+				else if (joined != null || start != noteEnd + 1) {
+					// a section was skipped since the last one kept
+					if (joined == null)
+						joined = new StringBuilder().append(s, noteStart, noteEnd);
+					joined.append('\t').append(s, start, end);
+				}
+				noteEnd = end;
+
+				// curly braces indicate a list of sub-Annotations and
+				// Attributes, until they all close the Annotation isn't done
+				reentrant += count(s, '{', start, end) - count(s, '}', start, end);
+				if (reentrant == 0) {
+					String note = joined == null ? s.substring(noteStart, noteEnd) : joined.toString();
+					Annotation toAdd = parseAnnotation(note.trim(), null);
+					if (toAdd != null)
+						res.add(toAdd);
+					noteStart = -1;
+					joined = null;
+				}
 			}
-		}
-
-		// parse the Annotations and build an ArrayList
-		ArrayList<Annotation> res = new ArrayList<>();
-		for (String note : toParse) {
-			Annotation toAdd = parseAnnotation(note, null);
-			if (toAdd != null)
-				res.add(toAdd);
+			start = end + 1;
 		}
 
 		// remove any annotations that don't fit the min reqs of an annotation
@@ -410,24 +402,57 @@ public class Annotation extends Rectangle2D.Double {
 	 * @return the number of occurences of c in s
 	 */
 	static int charFrequency(char c, String s) {
+		return count(s, c, 0, s.length());
+	}
+
+	/**
+	 * Count the number of occurrences of a character c in part of a string
+	 * 
+	 * @param s
+	 *            the string to look in
+	 * @param c
+	 *            the character to seek
+	 * @param from
+	 *            where the part starts
+	 * @param to
+	 *            where the part ends
+	 * @return the number of occurences of c in s between from and to
+	 */
+	private static int count(String s, char c, int from, int to) {
 		int i = 0;
-		for (int j = 0; j < s.length(); j++)
+		for (int j = from; j < to; j++)
 			if (s.charAt(j) == c)
 				i++;
-
 		return i;
 	}
 
 	/**
-	 * Parses an Annotation from a string using {@value #ANNOTATION} to get
-	 * Feature type and the initial coordinates of the Annotation and the list
-	 * of tab separated subFeatures/Annotations and Attributes (if any).
+	 * @param s
+	 *            the string to look in
+	 * @param c
+	 *            the character to seek
+	 * @param from
+	 *            where to start looking
+	 * @param to
+	 *            where to stop looking
+	 * @return the index of the first c in s between from and to, or -1
+	 */
+	private static int indexOf(String s, char c, int from, int to) {
+		for (int j = from; j < to; j++)
+			if (s.charAt(j) == c)
+				return j;
+		return -1;
+	}
+
+	/**
+	 * Parses an Annotation from a string, reading its Feature type and the
+	 * initial coordinates of the Annotation and the list of tab separated
+	 * subFeatures/Annotations and Attributes (if any).
 	 * <p>
 	 * By breaking up the list of subFeatures/Annotations and Attributes at tab
 	 * delineations, recursive calls to this method can be made to find
-	 * subFeatures on segments of the list, while Attributes can be found by
-	 * attempting matchings with the various Patterns supplied by Attribute and
-	 * its nested classes.
+	 * subFeatures on segments of the list, while Attributes are found by
+	 * checking each segment against the various Attributes.
 	 * 
 	 * @param lineSegment
 	 *            the line to parse, generall a segment of a line read from a
@@ -440,68 +465,51 @@ public class Annotation extends Rectangle2D.Double {
 	 *         (if it has any).
 	 * 
 	 * @throws IllegalArgumentException
-	 *             thrown when the input does not match the annotationPattern,
+	 *             thrown when the input is not formatted as an Annotation,
 	 *             Attributes are repeated, or Attributes or
 	 *             subFeature/Annotations are malformed.
 	 */
 	static public Annotation parseAnnotation(String lineSegment, Annotation parent) {
-		Matcher matcher = annotationPattern.matcher(lineSegment);
-		if (!matcher.matches()) {
+		switch (annotationForm(lineSegment)) {
+		case GENERIC: {
+			// a basic annotation, with no muss or fuss
+			int[] r = readRectangle(lineSegment, 1);
+			return new Annotation(FEATURE_BY_LETTER[lineSegment.charAt(0)], r[0], r[1], r[2], r[3], parent,
+					Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED,
+					Attribute.UNMARKED, Attribute.UNMARKED, Category.BREED_UNKNOWN.toString(),
+					Category.UNTAGGED.toString());
+		}
+		case GENERIC_DOTS:
+			// the dots are read where the x coordinate is expected
+			throw new NumberFormatException(
+					"For input string: \"" + lineSegment.substring(2, lineSegment.length() - 1) + "\"");
+		case COMPLEX:
+			return parseComplexAnnotation(lineSegment, parent);
+		default:
 			throw new IllegalArgumentException(
 					"Input does not match basic Annotation formatting: " + lineSegment + ".");
 		}
+	}
 
-		// a basic annotation, with no muss or fuss
-		int x, y, w, h;
-		Feature t;
-		int off = 1;
-		// generic annotation
-		if (matcher.group(off) != null) {
-			String grp = matcher.group(++off);
-			t = Feature.parseFeature(grp);
-			int GrpCnt = matcher.groupCount();
-			// loop to find next useful group
-			while (++off < GrpCnt && (matcher.group(off) == null || matcher.group(off).startsWith("["))) {/* looping */
-			}
-			if (off >= GrpCnt)
-				throw new IllegalArgumentException("invalid annotation group " + matcher.group(0));
-
-			grp = matcher.group(off);
-			x = Integer.parseInt(grp);
-			y = Integer.parseInt(matcher.group(++off));
-
-			w = Integer.parseInt(matcher.group(++off));
-			h = Integer.parseInt(matcher.group(++off));
-
-			return new Annotation(t, x, y, w, h, parent, Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED,
-					Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED, Category.BREED_UNKNOWN.toString(),
-					Category.UNTAGGED.toString());
-		}
-
+	/**
+	 * Parses a complex Annotation, f{[x,y;w,h] ...}, see
+	 * {@link #parseAnnotation(String, Annotation)}.
+	 * 
+	 * @param s
+	 *            the Annotation, already known to be complex
+	 * @param parent
+	 *            the Annotation's parent, or null
+	 * @return the Annotation with all its sub-Annotations and Attributes
+	 */
+	private static Annotation parseComplexAnnotation(String s, Annotation parent) {
 		// a complicated mussy fussy feature
-		int GrpCnt = matcher.groupCount();
-		while (off < GrpCnt && matcher.group(off) == null) {
-			++off;
-		}
-
-		if (off >= GrpCnt)
-			throw new IllegalArgumentException("invalid annotation group");
-
-		t = Feature.parseFeature(matcher.group(++off));
-		x = Integer.parseInt(matcher.group(++off));
-		y = Integer.parseInt(matcher.group(++off));
-		w = Integer.parseInt(matcher.group(++off));
-		h = Integer.parseInt(matcher.group(++off));
+		int[] r = readRectangle(s, 2);
 
 		// the result of this parsing, before checking for fancy attributes and
 		// sub features
-		Annotation res = new Annotation(t, x, y, w, h, parent, Attribute.UNMARKED, Attribute.UNMARKED,
-				Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED,
-				Category.BREED_UNKNOWN.toString(), Category.UNTAGGED.toString());
-
-		// list of subFeatures and Attributes previously tab separated
-		String grp = matcher.group(++off); // old=13
-		String[] featuresAndAttributes = grp.split("\t");
+		Annotation res = new Annotation(FEATURE_BY_LETTER[s.charAt(0)], r[0], r[1], r[2], r[3], parent,
+				Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED,
+				Attribute.UNMARKED, Category.BREED_UNKNOWN.toString(), Category.UNTAGGED.toString());
 
 		// false once an age is found
 		boolean ageNotFound = true;
@@ -519,85 +527,84 @@ public class Annotation extends Rectangle2D.Double {
 		boolean categoryNotFound = true;
 		// false once breed is found
 		boolean breedNotFound = true;
-		// false once rotation is found
-		boolean rotationNotFound = true;
 
-		// loop through the list, and assign the first age, gender, and skin
-		// found, while adding subFeatures, if a second age, gender, or skin is
-		// found throw an error because you can have only one of each
-		for (int i = 0; i < featuresAndAttributes.length; i++) {
-			String part = featuresAndAttributes[i].trim();
+		// loop through the tab separated list of subFeatures and Attributes
+		// between the rectangle and the closing brace, and assign the first
+		// age, gender, and skin found, while adding subFeatures, if a second
+		// category is found throw an error because you can have only one
+		int end = s.length() - 1;
+		for (int start = s.indexOf(']', 2) + 1; start <= end;) {
+			int stop = s.indexOf('\t', start);
+			if (stop < 0)
+				stop = end;
+			String part = s.substring(start, stop).trim();
 
 			// parse for an age
-			if (ageNotFound && res.getAge().parseSet(part))
+			if (ageNotFound && isTagged(part, Attribute.Age) && res.getAge().parseSet(part))
 				ageNotFound = false;
 
 			// parse for a gender
-			else if (genderNotFound && res.getGender().parseSet(part))
+			else if (genderNotFound && isTagged(part, Attribute.Gender) && res.getGender().parseSet(part))
 				genderNotFound = false;
 
 			// parse for a skin type
-			else if (skinNotFound && res.getSkin().parseSet(part))
+			else if (skinNotFound && isTagged(part, Attribute.SkinTone) && res.getSkin().parseSet(part))
 				skinNotFound = false;
 
 			// parse for a wound
-			else if (woundNotFound && res.getWound().parseSet(part))
+			else if (woundNotFound && isTagged(part, Attribute.Wounds) && res.getWound().parseSet(part))
 				woundNotFound = false;
 
 			// parse for occlusions
-			else if (occlusionsNotFound && res.getOcclusions().parseSet(part))
+			else if (occlusionsNotFound && isTagged(part, Attribute.Occlusions)
+					&& res.getOcclusions().parseSet(part))
 				occlusionsNotFound = false;
 
-			// parse for kind
-			else if (kindNotFound && res.getOcclusions().parseSet(part))
+			// parse for kind, which has always been checked as occlusions
+			else if (kindNotFound && isTagged(part, Attribute.Occlusions) && res.getOcclusions().parseSet(part))
 				kindNotFound = false;
 
-			else if (rotationNotFound && res.parseRotation(part))
-				rotationNotFound = false;
-			else
+			// parse for the rotation, the last one given is kept
+			else if (res.parseRotation(part)) {
+				// read
+			}
 
 			// parse for a subfeature
-			if (annotationPattern.matcher(part).matches())
-
-			{
+			else if (annotationForm(part) != NOT_ANNOTATION)
 				parseAnnotation(part, res);
 
-			} else
 			// parse for a subfeature with fancy sub children for the really
-			// recursive stuff
-			if (part.contains("{")) {
-				String fancyAnnotationPart = "";
+			// recursive stuff, it runs over the following sections until its
+			// braces close
+			else if (part.indexOf('{') >= 0) {
 				int reentrant = 0;
-				for (; i < featuresAndAttributes.length; i++) {
-					if (featuresAndAttributes[i].contains("{"))
-						reentrant += charFrequency('{', featuresAndAttributes[i]);
-					if (featuresAndAttributes[i].contains("}"))
-						reentrant -= charFrequency('}', featuresAndAttributes[i]);
-					fancyAnnotationPart += "\t" + featuresAndAttributes[i];
-					if (reentrant == 0)
+				for (int from = start;; from = stop + 1) {
+					stop = s.indexOf('\t', from);
+					if (stop < 0)
+						stop = end;
+					reentrant += count(s, '{', from, stop) - count(s, '}', from, stop);
+					if (reentrant == 0 || stop == end)
 						break;
 				}
-				while (reentrant < 0) {
-					fancyAnnotationPart.subSequence(0, fancyAnnotationPart.lastIndexOf('}'));
-					i--;
-
-				}
-				Annotation.parseAnnotation(fancyAnnotationPart.trim(), res);
+				Annotation.parseAnnotation(s.substring(start, stop).trim(), res);
+			}
 
-			} else // parse for a category
-			if (Category.pattern.matcher(part).matches()) {
-				Category tmp = Category.getAttribute(part);
-				if (tmp.id == 'd')
+			// parse for a category
+			else if (isCategory(part)) {
+				String label = part.substring(2, part.length() - 1);
+				if (label.equals(""))
+					throw new IllegalArgumentException();
+				if (part.charAt(0) == 'd')
 					if (categoryNotFound) {
-						res.setCategory(tmp.toString());
+						res.setCategory(label);
 						categoryNotFound = false;
 					} else
 						throw new IllegalArgumentException("Individual Annotations can only have one category.");
 
 				// parse for a breed
-				else if (tmp.id == 'b')
+				else if (part.charAt(0) == 'b')
 					if (breedNotFound) {
-						res.setBreed(tmp.toString());
+						res.setBreed(label);
 						breedNotFound = false;
 					} else
 						throw new IllegalArgumentException("Individual Annotations can only have one category.");
@@ -605,9 +612,172 @@ public class Annotation extends Rectangle2D.Double {
 				throw new IllegalArgumentException(part + " is not a valid feature or attribute");
 			}
 
+			start = stop + 1;
 		}
 		return res;
+	}
+
+	/**
+	 * @param s
+	 *            a string
+	 * @return the form of Annotation the string is in: {@link #GENERIC},
+	 *         {@link #GENERIC_DOTS}, {@link #COMPLEX}, or
+	 *         {@link #NOT_ANNOTATION}
+	 */
+	private static int annotationForm(String s) {
+		int len = s.length();
+		if (len < 4 || !isLetter(s.charAt(0)))
+			return NOT_ANNOTATION;
+		char open = s.charAt(1), close = s.charAt(len - 1);
+		if (open == '[' && close == ']') {
+			if (rectangleEnd(s, 1) == len)
+				return GENERIC;
+			for (int i = 2; i < len - 1; i++)
+				if (s.charAt(i) != '.' && s.charAt(i) != '*')
+					return NOT_ANNOTATION;
+			return GENERIC_DOTS;
+		}
+		if (open == '{' && close == '}') {
+			int r = rectangleEnd(s, 2);
+			if (r > 0 && !hasLineBreak(s, r, len - 1))
+				return COMPLEX;
+		}
+		return NOT_ANNOTATION;
+	}
+
+	/**
+	 * @param s
+	 *            a string
+	 * @param at
+	 *            where a rectangle [x,y;w,h] might start in the string
+	 * @return the index just past the rectangle, or -1 if there isn't one there
+	 */
+	private static int rectangleEnd(String s, int at) {
+		int len = s.length();
+		if (at >= len || s.charAt(at) != '[')
+			return -1;
+		for (char separator : RECTANGLE_SEPARATORS) {
+			at++;
+			if (at < len && s.charAt(at) == '-')
+				at++;
+			int digits = at;
+			while (at < len && isDigit(s.charAt(at)))
+				at++;
+			if (at == digits || at >= len || s.charAt(at) != separator)
+				return -1;
+		}
+		return at + 1;
+	}
 
+	/**
+	 * @param s
+	 *            a string
+	 * @param at
+	 *            where a rectangle [x,y;w,h] starts in the string, already
+	 *            known to be well formed
+	 * @return the x, y, w, and h of the rectangle
+	 * @throws NumberFormatException
+	 *             if a number doesn't fit in an int
+	 */
+	private static int[] readRectangle(String s, int at) {
+		int[] r = new int[4];
+		for (int k = 0; k < r.length; k++) {
+			int start = ++at;
+			while (s.charAt(at) != RECTANGLE_SEPARATORS[k])
+				at++;
+			r[k] = parseInt(s, start, at);
+		}
+		return r;
+	}
+
+	/**
+	 * @param s
+	 *            a string
+	 * @param from
+	 *            where an integer, -?\d+, starts in the string
+	 * @param to
+	 *            where it ends
+	 * @return the integer
+	 * @throws NumberFormatException
+	 *             if it doesn't fit in an int, the same as
+	 *             {@link Integer#parseInt(String)} would
+	 */
+	private static int parseInt(String s, int from, int to) {
+		boolean negative = s.charAt(from) == '-';
+		long value = 0;
+		for (int i = negative ? from + 1 : from; i < to; i++) {
+			value = value * 10 + (s.charAt(i) - '0');
+			if (value > -(long) Integer.MIN_VALUE)
+				return Integer.parseInt(s.substring(from, to));
+		}
+		if (!negative && value > Integer.MAX_VALUE)
+			return Integer.parseInt(s.substring(from, to));
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * @param part
+	 *            a section of a complex Annotation
+	 * @param rules
+	 *            an Attribute's rules
+	 * @return true if the section starts the way that Attribute is written,
+	 *         id[, so it's worth trying to parse as one
+	 */
+	private static boolean isTagged(String part, AttributeSet rules) {
+		return part.length() > 2 && part.charAt(0) == rules.id && part.charAt(1) == '[';
+	}
+
+	/**
+	 * @param part
+	 *            a section of a complex Annotation
+	 * @return true if the section is written as a category, c[...]
+	 */
+	private static boolean isCategory(String part) {
+		int len = part.length();
+		return len >= 3 && isLetter(part.charAt(0)) && part.charAt(1) == '[' && part.charAt(len - 1) == ']'
+				&& !hasLineBreak(part, 2, len - 1);
+	}
+
+	/**
+	 * @param s
+	 *            a string
+	 * @param from
+	 *            where to start looking
+	 * @param to
+	 *            where to stop looking
+	 * @return true if there's a line break between from and to, which the
+	 *         free text of a list may not hold
+	 */
+	private static boolean hasLineBreak(String s, int from, int to) {
+		for (int i = from; i < to; i++)
+			switch (s.charAt(i)) {
+			case '\n':
+			case '\r':
+			case '\u0085':
+			case '\u2028':
+			case '\u2029':
+				return true;
+			default:
+			}
+		return false;
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return true if it's an ASCII letter
+	 */
+	private static boolean isLetter(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return true if it's an ASCII digit
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
 	}
 
 	//
@@ -620,73 +790,123 @@ public class Annotation extends Rectangle2D.Double {
 	 */
 	@Override
 	public String toString() {
-		// girish: added gender and age support
 		StringBuilder ret = new StringBuilder();
+		try {
+			appendTo(ret);
+		} catch (IOException e) {
+			// a StringBuilder never throws
+			throw new AssertionError(e);
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Write this Annotation as {@link #toString()} does, straight to out,
+	 * without building a String for it or any of its parts first.
+	 * 
+	 * @param out
+	 *            where to write the Annotation
+	 * @return out
+	 * @throws IOException
+	 *             if out can't be written to
+	 */
+	public Appendable appendTo(Appendable out) throws IOException {
+		// girish: added gender and age support
+		boolean untagged = getCategory() == Category.UNTAGGED;
+		boolean unknown = getBreed() == Category.BREED_UNKNOWN;
+		boolean unrotated = getRoll() == 0 && getYaw() == 0 && getPitch() == 0;
 
 		// generic annotation
 		if (getSubannotes().size() == 0 && getSkin().isUnmarked() && getGender().isUnmarked() && getAge().isUnmarked()
-				&& getWound().isUnmarked() && getOcclusions().isUnmarked() && getKind().isUnmarked()
-				&& getCategory().toString().equals(Category.UNTAGGED.toString())
-				&& getBreed().toString().equals(Category.BREED_UNKNOWN.toString()) && getRoll() == 0 && getYaw() == 0
-				&& getPitch() == 0) {
-			ret.append(getId().getIdString());
-			ret.append("[");
-			ret.append(getRelX());
-			ret.append(",");
-			ret.append(getRelY());
-			ret.append(";");
-			ret.append((int) getWidth());
-			ret.append(",");
-			ret.append((int) getHeight());
-			ret.append("]");
-			return ret.toString();
+				&& getWound().isUnmarked() && getOcclusions().isUnmarked() && getKind().isUnmarked() && untagged
+				&& unknown && unrotated) {
+			out.append(getId().getIdString());
+			appendRectangle(out);
+			return out;
 		}
 
 		// complex annotation
-		ret.append(getId().getIdString());
-		ret.append("{[");
-		ret.append(getRelX());
-		ret.append(",");
-		ret.append(getRelY());
-		ret.append(";");
-		ret.append((int) getWidth());
-		ret.append(",");
-		ret.append((int) getHeight());
-		ret.append("]");
+		out.append(getId().getIdString()).append('{');
+		appendRectangle(out);
 
 		if (!getSkin().isUnmarked())
-			ret.append("\t").append(getSkin());
+			getSkin().appendTo(out.append('\t'));
 
 		// Girish: added gender and age support
 		if (!getGender().isUnmarked())
-			ret.append("\t").append(getGender());
+			getGender().appendTo(out.append('\t'));
 
 		if (!getAge().isUnmarked())
-			ret.append("\t").append(getAge());
+			getAge().appendTo(out.append('\t'));
 
 		if (!getWound().isUnmarked())
-			ret.append("\t").append(getWound());
+			getWound().appendTo(out.append('\t'));
 
 		if (!getOcclusions().isUnmarked())
-			ret.append("\t").append(getOcclusions());
+			getOcclusions().appendTo(out.append('\t'));
 
 		if (!getKind().isUnmarked())
-			ret.append("\t").append(getKind());
+			getKind().appendTo(out.append('\t'));
 
-		if (getCategory().getID() != null && !getCategory().getID().equals("")
-				&& !getCategory().toString().equals(Category.UNTAGGED.toString()))
-			ret.append("\t").append(getCategory().getID());
+		if (!untagged)
+			getCategory().appendTo(out.append('\t'));
 
-		if (!getBreed().toString().equals(Category.BREED_UNKNOWN.toString()))
-			ret.append("\t").append(getBreed().getID());
-		if (!(getRoll() == 0 && getYaw() == 00 && getPitch() == 0))
-			ret.append("\t").append("r[").append(getRoll()).append(",").append(getPitch()).append(",").append(getYaw())
-					.append("]");
+		if (!unknown)
+			getBreed().appendTo(out.append('\t'));
+		if (!unrotated)
+			out.append("\tr[").append(String.valueOf(getRoll())).append(',').append(String.valueOf(getPitch()))
+					.append(',').append(String.valueOf(getYaw())).append(']');
 
 		for (int i = 0; i < this.getSubannotes().size(); i++)
-			ret.append("\t").append(getSubannotes().get(i));
-		ret.append("}");
-		return ret.toString();
+			getSubannotes().get(i).appendTo(out.append('\t'));
+		out.append('}');
+		return out;
+	}
+
+	/**
+	 * Write this Annotation's rectangle, [x,y;w,h].
+	 * 
+	 * @param out
+	 *            where to write the rectangle
+	 * @throws IOException
+	 *             if out can't be written to
+	 */
+	private void appendRectangle(Appendable out) throws IOException {
+		appendInt(out.append('['), getRelX());
+		appendInt(out.append(','), getRelY());
+		appendInt(out.append(';'), (int) getWidth());
+		appendInt(out.append(','), (int) getHeight());
+		out.append(']');
+	}
+
+	/**
+	 * Write an int in decimal, as String.valueOf would.
+	 * 
+	 * @param out
+	 *            where to write the int
+	 * @param n
+	 *            the int
+	 * @throws IOException
+	 *             if out can't be written to
+	 */
+	private static void appendInt(Appendable out, int n) throws IOException {
+		if (out instanceof StringBuilder) {
+			((StringBuilder) out).append(n);
+			return;
+		}
+		if (n == Integer.MIN_VALUE) {
+			out.append(Integer.toString(n));
+			return;
+		}
+		if (n < 0) {
+			out.append('-');
+			n = -n;
+		}
+		int div = 1;
+		while (n / div >= 10)
+			div *= 10;
+		for (; div > 0; div /= 10)
+			out.append((char) ('0' + n / div % 10));
 	}
 
 	/** @return the start x of this relative to its parent annotation */
@@ -1157,9 +1377,16 @@ public class Annotation extends Rectangle2D.Double {
 	 *            the new category to put this annotation in.
 	 */
 	public void setCategory(String update) {
-		this.category.setIDString(update);
-		this.fireListener();
+		setCategory(Category.of(update, 'd'));
+	}
 
+	/**
+	 * @param update
+	 *            the new category to put this annotation in.
+	 */
+	public void setCategory(Category update) {
+		this.category = update;
+		this.fireListener();
 	}
 
 	/**
@@ -1173,9 +1400,12 @@ public class Annotation extends Rectangle2D.Double {
 		if (list.size() == 0)
 			return ret;
 
+		ArrayList<Category> found = new ArrayList<>();
 		for (Annotation a : list)
-			if (!ret.contains(a.getCategory().toString()))
+			if (!found.contains(a.getCategory())) {
+				found.add(a.getCategory());
 				ret.add(a.getCategory().toString());
+			}
 		return ret;
 	}
 
@@ -1189,12 +1419,26 @@ public class Annotation extends Rectangle2D.Double {
 	 *            name of category annotations no longer belong to
 	 */
 	public static void removeAllTraceOfCategroy(ArrayList<Annotation> annotations, String id2) {
+		Category old = Category.find(id2, 'd');
+		if (old != null)
+			removeAllTraceOfCategroy(annotations, old);
+	}
+
+	/**
+	 * Looks at the list, and takes all annotations out of a category
+	 * 
+	 * @param annotations
+	 *            list to decategorize from input
+	 * @param old
+	 *            the category annotations no longer belong to
+	 */
+	private static void removeAllTraceOfCategroy(ArrayList<Annotation> annotations, Category old) {
 		for (Annotation a : annotations) {
-			if (a.getCategory().toString().equals(id2)) {
-				a.setCategory(Category.UNTAGGED.toString());
+			if (a.getCategory() == old) {
+				a.setCategory(Category.UNTAGGED);
 				a.fireListener();
 			}
-			Annotation.removeAllTraceOfCategroy(a.getSubannotes(), id2);
+			Annotation.removeAllTraceOfCategroy(a.getSubannotes(), old);
 		}
 	}
 
@@ -1209,8 +1453,25 @@ public class Annotation extends Rectangle2D.Double {
 	 *            the list of annotations to inspect
 	 */
 	public static void renameTag(String oldT, String newT, ArrayList<Annotation> list) {
+		Category old = Category.find(oldT, 'd');
+		if (old != null)
+			renameTag(old, Category.of(newT, 'd'), list);
+	}
+
+	/**
+	 * Given a list of Annotations move all Annotations of one Category to
+	 * another.
+	 * 
+	 * @param oldT
+	 *            the old category
+	 * @param newT
+	 *            the new category
+	 * @param list
+	 *            the list of annotations to inspect
+	 */
+	public static void renameTag(Category oldT, Category newT, List<Annotation> list) {
 		for (Annotation a : list)
-			if (a.getCategory().toString().equals(oldT)) {
+			if (a.getCategory() == oldT) {
 				a.setCategory(newT);
 				a.fireListener();
 
@@ -1600,7 +1861,7 @@ public class Annotation extends Rectangle2D.Double {
 	 *            the breed to set the annotation to
 	 */
 	public void setBreed(String update) {
-		this.breed.setIDString(update);
+		this.breed = Category.of(update, 'b');
 		this.fireListener();
 	}
 
@@ -1860,22 +2121,50 @@ public class Annotation extends Rectangle2D.Double {
 	}
 
 	/**
-	 * Attempts to parse a string into the roll/yaw/pitch of an image
+	 * Attempts to parse a string into the roll/yaw/pitch of an image, written
+	 * r[roll,pitch,yaw]
 	 * 
 	 * @param s
 	 *            the string to parse
 	 * @return true if it parsed into the rotation angles
 	 */
 	private boolean parseRotation(String s) {
-		Matcher m = ROTATION_PATTERN.matcher(s);
+		int len = s.length();
+		if (len < 5 || s.charAt(0) != 'r' || s.charAt(1) != '[' || s.charAt(len - 1) != ']')
+			return false;
+		int c1 = indexOf(s, ',', 2, len - 1);
+		int c2 = c1 < 0 ? -1 : indexOf(s, ',', c1 + 1, len - 1);
+		if (c2 < 0 || !isFloat(s, 2, c1) || !isFloat(s, c1 + 1, c2) || !isFloat(s, c2 + 1, len - 1))
+			return false;
 
-		if (m.matches()) {
-			setRoll(java.lang.Float.parseFloat(m.group(1)));
-			setPitch(java.lang.Float.parseFloat(m.group(2)));
-			setYaw(java.lang.Float.parseFloat(m.group(3)));
-		}
+		setRoll(java.lang.Float.parseFloat(s.substring(2, c1)));
+		setPitch(java.lang.Float.parseFloat(s.substring(c1 + 1, c2)));
+		setYaw(java.lang.Float.parseFloat(s.substring(c2 + 1, len - 1)));
+		return true;
+	}
 
-		return false;
+	/**
+	 * @param s
+	 *            a string
+	 * @param from
+	 *            where to start looking
+	 * @param to
+	 *            where to stop looking
+	 * @return true if the string between from and to is an optional sign,
+	 *         digits, an optional point, and more digits (any of which may be
+	 *         left out)
+	 */
+	private static boolean isFloat(String s, int from, int to) {
+		int i = from;
+		if (i < to && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+			i++;
+		while (i < to && isDigit(s.charAt(i)))
+			i++;
+		if (i < to && s.charAt(i) == '.')
+			i++;
+		while (i < to && isDigit(s.charAt(i)))
+			i++;
+		return i == to;
 	}
 
 	/***
@@ -1,10 +1,8 @@
 package annotations;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
-import java.util.StringJoiner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Every Annotation can have Attributes. The Attribute is a special type of
@@ -35,8 +33,17 @@ public class Attribute {
 	/** String for any Attribute that has not been set */
 	public final static String UNMARKED = "unmarked";
 
-	/** a list of Attributes used */
-	private List<String> state = new ArrayList<>();
+	/**
+	 * the states selected, as a mask over the rules' values, see
+	 * {@link AttributeSet}
+	 */
+	private long state;
+	/**
+	 * the order the states were selected in, see
+	 * {@link AttributeSet#order(String...)}, null if it's the order of the
+	 * rules' values
+	 */
+	private byte[] order;
 	/** the rules defining this Attribute */
 	final private AttributeSet rules;
 
@@ -49,7 +56,7 @@ public class Attribute {
 	 */
 	public Attribute(AttributeSet rules, String defaultState) {
 		this.rules = rules;
-		this.state.add(defaultState);
+		this.state = rules.mask(defaultState);
 	}
 
 	/**
@@ -57,7 +64,8 @@ public class Attribute {
 	 *            the rules defining the Attribute
 	 */
 	public Attribute(AttributeSet rules) {
-		this(rules, UNMARKED);
+		this.rules = rules;
+		this.state = rules.unmarked();
 	}
 
 	/**
@@ -69,10 +77,20 @@ public class Attribute {
 
 	@Override
 	public String toString() {
-		StringJoiner sj = new StringJoiner(",", this.rules.id + "[", "]");
-		for (String i : this.state)
-			sj.add(i);
-		return sj.toString();
+		return this.rules.write(this.state, this.order);
+	}
+
+	/**
+	 * Write this Attribute as {@link #toString()} does.
+	 * 
+	 * @param out
+	 *            where to write the Attribute
+	 * @return out
+	 * @throws IOException
+	 *             if out can't be written to
+	 */
+	public Appendable appendTo(Appendable out) throws IOException {
+		return out.append(this.rules.write(this.state, this.order));
 	}
 
 	/**
@@ -85,9 +103,8 @@ public class Attribute {
 		if (values.length == 0)
 			values = new String[] { Attribute.UNMARKED };
 		if (this.rules.isValidSelection(values)) {
-			this.state.clear();
-			for (String s : values)
-				this.state.add(s);
+			this.state = this.rules.mask(values);
+			this.order = this.rules.order(values);
 			return true;
 		}
 		return false;
@@ -99,24 +116,61 @@ public class Attribute {
 	 * @return the attribute created
 	 */
 	public boolean parseSet(String s) {
-		Pattern p = Pattern.compile(this.regex());
-		Matcher m = p.matcher(s);
-		if (m.matches())
-			return this.setState(m.group(1).split(","));
-		return false;
-
+		String[] values = this.rules.read(s);
+		if (values == null)
+			return false;
+		this.state = this.rules.mask(values);
+		this.order = this.rules.order(values);
+		return true;
 	}
 
 	/** @return true if the only state included is UNMARKED */
 	public boolean isUnmarked() {
-		return this.state.size() == 1 && this.state.get(0).equals(UNMARKED);
+		return this.state == this.rules.unmarked();
 	}
 
 	/**
-	 * @return an unmodifiable list of Attribute state/values
+	 * @return the Attribute state/values, in the order they were selected
 	 */
 	public String[] values() {
-		return this.state.toArray(new String[] {});
+		return this.order == null ? this.rules.values(this.state) : this.rules.values(this.order);
+	}
+
+	/**
+	 * @return the states selected as a mask over the rules' values, see
+	 *         {@link AttributeSet}
+	 */
+	public long getMask() {
+		return this.state;
+	}
+
+	/**
+	 * @param mask
+	 *            the states to select, as a mask over the rules' values, taken
+	 *            to be a valid selection
+	 */
+	public void setMask(long mask) {
+		this.state = mask;
+		this.order = null;
+	}
+
+	/**
+	 * @return the order the states were selected in, see
+	 *         {@link AttributeSet#order(String...)}, or null if it's the order
+	 *         of the rules' values
+	 */
+	public byte[] getOrder() {
+		return this.order;
+	}
+
+	/**
+	 * @param order
+	 *            the order the states of the mask were selected in, see
+	 *            {@link AttributeSet#order(String...)}, or null for the order
+	 *            of the rules' values
+	 */
+	public void setOrder(byte[] order) {
+		this.order = order;
 	}
 
 	/** @return the rules of this Attribute */
@@ -131,16 +185,13 @@ public class Attribute {
 	 *         items also yields larger scores.
 	 */
 	public int score() {
-		int score = 0;
-		for (String s : this.state)
-			score += (this.rules.values().size() - this.rules.values().indexOf(s));
-		return score;
+		return this.rules.score(this.state);
 	}
 
 	/**
 	 * @return a List of all the states the Attribute is in currently.
 	 */
 	public List<String> getState() {
-		return this.state;
+		return Arrays.asList(values());
 	}
-}
\ No newline at end of file
+}
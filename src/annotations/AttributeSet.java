@@ -8,9 +8,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @author bonifantmc
@@ -23,19 +26,36 @@ import java.util.StringJoiner;
  *         blood, scars, and bruising.
  *         <p>
  *         Or: g[male] could indicate a male gendered object.
+ *         <p>
+ *         A selection is held as a bit mask over the tags, bit i is set if
+ *         the i-th tag of {@link #values()} is selected, so a set can have
+ *         at most {@value #MAX_TAGS} tags. A selection given in another
+ *         order than the tags' also keeps the order it was given in, see
+ *         {@link #order(String...)}, so it's written back as it was read.
  *
  *
  *
  */
 public class AttributeSet {
 
+	/** the most tags a set can have, one for each bit of a selection mask */
+	public static final int MAX_TAGS = Long.SIZE;
+
 	/** an array of possible attributes (ex: {"blood", "scars", "bruising") */
 	final private List<String> tags;
+	/** the position of each tag in tags, which is its bit in a mask */
+	final private HashMap<String, Integer> index = new HashMap<>();
 	/**
-	 * an array of valid states that attributes can be selected in (ex:
-	 * {{"blood"}, {"blood", "scars"}, {"scars", "bruising"}})
+	 * the masks of the selections that aren't allowed (ex: {"blood",
+	 * "unwounded"}), a selection is invalid if it includes all of any of them
 	 */
-	final private String[][] invalidSelections;
+	final private long[] invalidSelections;
+	/** the mask of the unmarked state */
+	final private long unmarked;
+	/** the pattern written selections of this set are matched with */
+	final private Pattern pattern;
+	/** the written form of each selection written so far, by its mask */
+	final private ConcurrentHashMap<Long, String> written = new ConcurrentHashMap<>();
 	/**
 	 * a character id to identify what the attribute is marking (ex: w for wound
 	 * or g for gender)
@@ -67,11 +87,27 @@ public class AttributeSet {
 	 *            the length of a valid selection state
 	 */
 	public AttributeSet(String[] t, String[][] inv, char i, String n, int j) {
+		if (t.length > MAX_TAGS)
+			throw new IllegalArgumentException(n + " has more than " + MAX_TAGS + " tags");
 		this.id = i;
 		this.tags = Collections.unmodifiableList(Arrays.asList(t));
-		this.invalidSelections = inv;
+		for (int k = t.length - 1; k >= 0; k--)
+			this.index.put(t[k], Integer.valueOf(k));
 		this.characteristic = n;
 		this.validLength = j;
+		this.unmarked = mask(Attribute.UNMARKED);
+
+		// an invalid selection naming something that isn't a tag can never
+		// be selected, so it's left out
+		ArrayList<Long> invalid = new ArrayList<>();
+		for (String[] vs : inv)
+			if (contains(vs))
+				invalid.add(Long.valueOf(mask(vs)));
+		this.invalidSelections = new long[invalid.size()];
+		for (int k = 0; k < this.invalidSelections.length; k++)
+			this.invalidSelections[k] = invalid.get(k).longValue();
+
+		this.pattern = Pattern.compile(regex());
 	}
 
 	/**
@@ -80,10 +116,19 @@ public class AttributeSet {
 	 * @return true if the attribute is contained in this set.
 	 */
 	public boolean contains(String s) {
-		for (String is : this.tags)
-			if (is.equals(s))
-				return true;
-		return false;
+		return this.index.containsKey(s);
+	}
+
+	/**
+	 * @param selection
+	 *            strings to check
+	 * @return true if they're all contained in this set
+	 */
+	private boolean contains(String[] selection) {
+		for (String select : selection)
+			if (!contains(select))
+				return false;
+		return true;
 	}
 
 	/**
@@ -99,37 +144,158 @@ public class AttributeSet {
 			return false;
 		// next easiest check, must actually be a list of states for this
 		// attribute
-		for (String select : selection)
-			if (!contains(select))
-				return false;
+		if (!contains(selection))
+			return false;
+		return isValidSelection(mask(selection));
+	}
 
-		// hardest check, must be a valid state for this attribute
-		for (String[] vs : this.invalidSelections)
-			if (contains(selection, vs))
+	/**
+	 * Checks if a selection includes none of the invalid selections, its length
+	 * isn't checked.
+	 * 
+	 * @param mask
+	 *            the mask of the selection to check
+	 * @return true if the selection is allowed
+	 */
+	public boolean isValidSelection(long mask) {
+		for (long vs : this.invalidSelections)
+			if ((mask & vs) == vs)
 				return false;
 		return true;
 	}
 
 	/**
-	 * Checks if vs is a subset of selection
-	 * 
 	 * @param selection
-	 *            the selection
-	 * @param vs
-	 *            a subset to look for
-	 * @return true iff vs is a subset of selection
+	 *            tags of this set
+	 * @return the mask selecting them, tags not in this set are ignored
 	 */
-	private boolean contains(String[] selection, String[] vs) {
-		if (vs.length > selection.length)
-			return false;
-		HashSet<String> s = new HashSet<String>();
-		for (String select : selection)
-			s.add(select);
-		for (String select : vs)
-			if (!s.contains(select))
-				return false;
+	public long mask(String... selection) {
+		long mask = 0;
+		for (String select : selection) {
+			Integer i = this.index.get(select);
+			if (i != null)
+				mask |= 1L << i.intValue();
+		}
+		return mask;
+	}
 
-		return true;
+	/** @return the mask of the unmarked state */
+	public long unmarked() {
+		return this.unmarked;
+	}
+
+	/**
+	 * @param mask
+	 *            a selection's mask
+	 * @return the tags the mask selects, in the order of {@link #values()}
+	 */
+	public String[] values(long mask) {
+		String[] ret = new String[Long.bitCount(mask)];
+		int k = 0;
+		for (long m = mask; m != 0; m &= m - 1)
+			ret[k++] = this.tags.get(Long.numberOfTrailingZeros(m));
+		return ret;
+	}
+
+	/**
+	 * @param mask
+	 *            a selection's mask
+	 * @return the selection as it's written in a list file, eg w[blood,scar]
+	 */
+	public String write(long mask) {
+		String s = this.written.get(Long.valueOf(mask));
+		if (s == null) {
+			StringJoiner sj = new StringJoiner(",", this.id + "[", "]");
+			for (String v : values(mask))
+				sj.add(v);
+			s = sj.toString();
+			this.written.putIfAbsent(Long.valueOf(mask), s);
+		}
+		return s;
+	}
+
+	/**
+	 * @param selection
+	 *            tags of this set, in the order they were given
+	 * @return the position of each tag in {@link #values()}, in the order
+	 *         given, or null if that's the order of {@link #values()} with no
+	 *         tag given twice, the order {@link #values(long)} gives back
+	 */
+	public byte[] order(String... selection) {
+		byte[] order = new byte[selection.length];
+		boolean sorted = true;
+		for (int k = 0; k < selection.length; k++) {
+			Integer i = this.index.get(selection[k]);
+			if (i == null)
+				return null;
+			order[k] = (byte) i.intValue();
+			sorted &= k == 0 || order[k] > order[k - 1];
+		}
+		return sorted ? null : order;
+	}
+
+	/**
+	 * @param order
+	 *            the positions of a selection's tags, see
+	 *            {@link #order(String...)}
+	 * @return the tags, in that order
+	 */
+	public String[] values(byte[] order) {
+		String[] ret = new String[order.length];
+		for (int k = 0; k < order.length; k++)
+			ret[k] = this.tags.get(order[k]);
+		return ret;
+	}
+
+	/**
+	 * @param mask
+	 *            a selection's mask
+	 * @param order
+	 *            the order its tags were given in, see
+	 *            {@link #order(String...)}, or null for the order of
+	 *            {@link #values()}
+	 * @return the selection as it's written in a list file, its tags in the
+	 *         order they were given
+	 */
+	public String write(long mask, byte[] order) {
+		if (order == null)
+			return write(mask);
+		StringJoiner sj = new StringJoiner(",", this.id + "[", "]");
+		for (String v : values(order))
+			sj.add(v);
+		return sj.toString();
+	}
+
+	/**
+	 * @param mask
+	 *            a selection's mask
+	 * @return a score for sorting the selection, each tag selected scores
+	 *         higher the closer it is to the top of the list of tags
+	 */
+	public int score(long mask) {
+		int score = 0;
+		for (long m = mask; m != 0; m &= m - 1)
+			score += this.tags.size() - Long.numberOfTrailingZeros(m);
+		return score;
+	}
+
+	/**
+	 * Reads a selection written as this set writes it, eg w[blood,scar].
+	 * 
+	 * @param s
+	 *            the string to read
+	 * @return the tags selected, in the order they're written, or null if the
+	 *         string isn't a selection of this set or the selection isn't
+	 *         valid
+	 */
+	public String[] read(String s) {
+		Matcher m = this.pattern.matcher(s);
+		if (!m.matches())
+			return null;
+		String[] selection = m.group(1).split(",");
+		if (!isValidSelection(selection))
+			return null;
+		return selection;
 	}
 
 	/**
@@ -1,6 +1,10 @@
 package annotations;
 
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import struct.AnnotationGroups;
@@ -10,22 +14,36 @@ import struct.AnnotationGroups;
  * the Feature id of Annotation indicates. It gives a specific label, like
  * "Larry" or "Subject1". This is little more than an over-glorified string
  * wrapper in honesty.
+ * <p>
+ * Categories are interned: there is only ever one Category for each id and
+ * label, found with {@link #of(String, char)}, and every Annotation of that
+ * category refers to it, so Annotations can be grouped and compared by
+ * category without looking at the label. A Category never changes, to move an
+ * Annotation to another category give it that Category instead.
+ * <p>
+ * Categories are only held weakly, once no Annotation refers to a Category
+ * (say one of the numbered groups a sort made for an earlier list) it's
+ * dropped from the dictionary.
  * 
  * @author bonifantmc
  *
  */
 public class Category {
+	/** the Categories still in use, by id then label */
+	static private final ConcurrentHashMap<Character, ConcurrentHashMap<String, Entry>> dictionary = new ConcurrentHashMap<>();
+	/** where the entries of Categories no longer in use turn up */
+	static private final ReferenceQueue<Category> dropped = new ReferenceQueue<>();
 	/** A Pattern using this class's regex() method to matche Strings */
 	static public final Pattern pattern = Pattern.compile(regex());
 	/** A constant Category for untagged images */
-	static public final Category UNTAGGED = new Category(AnnotationGroups.UNTAGGED, 'd');
+	static public final Category UNTAGGED = of(AnnotationGroups.UNTAGGED, 'd');
 	/** A constant Category unknown breeds */
-	static public final Category BREED_UNKNOWN = new Category("unknown", 'b');
+	static public final Category BREED_UNKNOWN = of("unknown", 'b');
 	/**
 	 * Whatever this annotation is being marked as ( "Larry", "Pontiac Grand Am"
 	 * , "Crumpled Oak Leaf"
 	 */
-	private String category;
+	private final String category;
 
 	/**
 	 * the choice of default character id/feature tag, default is 'd' for 'id'
@@ -41,14 +59,100 @@ public class Category {
 	 * @param c
 	 *            character mark for the attribute's id
 	 */
-	public Category(String s, Character c) {
-		setIDString(s);
-
-		if (c == null)
-			c = 'd';
+	private Category(String s, char c) {
+		this.category = s;
 		this.id = c;
 	}
 
+	/**
+	 * A Category's place in the dictionary, cleared once nothing else refers
+	 * to the Category.
+	 */
+	private static class Entry extends WeakReference<Category> {
+		/** the Category's id */
+		final char id;
+		/** the Category's label */
+		final String label;
+
+		/**
+		 * @param c
+		 *            the Category
+		 */
+		Entry(Category c) {
+			super(c, dropped);
+			this.id = c.id;
+			this.label = c.category;
+		}
+	}
+
+	/**
+	 * @param s
+	 *            a string marking what the category is of
+	 * @param c
+	 *            character mark for the attribute's id, 'd' for a category
+	 *            and 'b' for a breed
+	 * @return the one Category with that id and label, made if there isn't
+	 *         one yet
+	 * @throws IllegalArgumentException
+	 *             if the label is null or empty
+	 */
+	public static Category of(String s, char c) {
+		if (s == null || s.equals(""))
+			throw new IllegalArgumentException();
+		ConcurrentHashMap<String, Entry> labels = dictionary.get(Character.valueOf(c));
+		if (labels == null) {
+			dictionary.putIfAbsent(Character.valueOf(c), new ConcurrentHashMap<String, Entry>());
+			labels = dictionary.get(Character.valueOf(c));
+		}
+		Category ret = deref(labels.get(s));
+		if (ret != null)
+			return ret;
+		synchronized (dropped) {
+			expunge();
+			ret = deref(labels.get(s));
+			if (ret == null) {
+				ret = new Category(s, c);
+				labels.put(s, new Entry(ret));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @param e
+	 *            an entry of the dictionary, or null
+	 * @return its Category, or null if there's none or it's been dropped
+	 */
+	private static Category deref(Entry e) {
+		return e == null ? null : e.get();
+	}
+
+	/**
+	 * Remove the entries of the Categories dropped since the last call. Called
+	 * holding the lock on dropped.
+	 */
+	private static void expunge() {
+		Entry e;
+		while ((e = (Entry) dropped.poll()) != null) {
+			ConcurrentHashMap<String, Entry> labels = dictionary.get(Character.valueOf(e.id));
+			if (labels != null)
+				labels.remove(e.label, e);
+		}
+	}
+
+	/**
+	 * @param s
+	 *            a label
+	 * @param c
+	 *            character mark for the attribute's id
+	 * @return the Category with that id and label, or null if no Annotation
+	 *         has it
+	 */
+	public static Category find(String s, char c) {
+		ConcurrentHashMap<String, Entry> labels = dictionary.get(Character.valueOf(c));
+		return labels == null || s == null ? null : deref(labels.get(s));
+	}
+
 	/**
 	 * @return a regular expression for matching Age Attributes
 	 */
@@ -66,7 +170,7 @@ public class Category {
 	 */
 	public static Category getAttribute(String s) {
 		if (s.matches(regex()))
-			return new Category(s.substring(2, s.length() - 1), s.charAt(0));
+			return of(s.substring(2, s.length() - 1), s.charAt(0));
 		throw new IllegalArgumentException();
 	}
 
@@ -81,35 +185,35 @@ public class Category {
 	}
 
 	/**
-	 * @param category
-	 *            value to set category to
+	 * Write this Category as {@link #getID()} does, without building the
+	 * String.
+	 * 
+	 * @param out
+	 *            where to write the Category
+	 * @return out
+	 * @throws IOException
+	 *             if out can't be written to
 	 */
-	public void setIDString(String category) {
-
-		if (category != null && category.equals(""))
-			throw new IllegalArgumentException();
-		this.category = category;
+	public Appendable appendTo(Appendable out) throws IOException {
+		return out.append(this.id).append('[').append(this.category).append(']');
 	}
 
 	/**
-	 * tells if category is exact same object, or at least same string
+	 * Categories are interned, so two are equal only if they're the same
+	 * Category.
 	 * 
-	 * @return this == o || (o instanceof Category && this.category
-	 *         .equals(((Category) o).category));
+	 * @return this == o
 	 */
 	@Override
 	public boolean equals(Object o) {
-		if (this.category == null)
-			return false;
 		if (!(o instanceof Category))
 			throw new ClassCastException();
-
-		return this.category.toString().equals(((Category) o).category.toString()) && this.id == ((Category) o).id;
+		return this == o;
 	}
 
 	@Override
 	public int hashCode() {
-		return toString().hashCode();
+		return System.identityHashCode(this);
 	}
 
 	/**
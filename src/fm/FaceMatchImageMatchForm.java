@@ -308,7 +308,7 @@ public class FaceMatchImageMatchForm extends JFrame {
 					for (MetaImage i : FaceMatchImageMatchForm.this.handler.getMasterList()) {
 						i.distances.clear();
 						for (Annotation anote : i.getAnnotations())
-							anote.setCategory(Category.UNTAGGED.toString());
+							anote.setCategory(Category.UNTAGGED);
 					}
 				}
 
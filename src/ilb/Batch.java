@@ -0,0 +1,511 @@
+package ilb;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import annotations.Annotation;
+import struct.BinaryList;
+import struct.DirectoryScanner;
+import struct.ListMerge;
+import struct.ListWriter;
+import struct.MappedLineReader;
+import struct.MetaImage;
+
+/**
+ * Runs the ILB's list engine from the command line, without creating any AWT
+ * components, so lists can be checked and rewritten on machines with no
+ * display.
+ *
+ * <pre>
+ * java -cp ILB.jar ilb.Batch [-threads n] validate list.lst...
+ * java -cp ILB.jar ilb.Batch [-threads n] normalize list.lst [out.lst]
+ * java -cp ILB.jar ilb.Batch [-threads n] convert list.lst out.ilbl
+ * java -cp ILB.jar ilb.Batch [-threads n] convert list.ilbl out.lst
+ * java -cp ILB.jar ilb.Batch [-threads n] scan repository out.lst [mask]
+ * java -cp ILB.jar ilb.Batch merge base.lst ours.lst theirs.lst out.lst
+ * </pre>
+ * <ul>
+ * <li>validate parses every line of each list and reports the lines that
+ * don't name an image or whose annotations are malformed</li>
+ * <li>normalize rewrites a list (in place if no output is given) with each
+ * image's annotations written back out the way the ILB saves them, lines that
+ * can't be parsed are reported and kept as they are</li>
+ * <li>convert turns a text list into a binary list, or a binary list back
+ * into a text list, see {@link BinaryList}; converting a list and back gives
+ * back the same list</li>
+ * <li>scan writes a list of all images in a repository and its
+ * sub-directories that match the mask (by default *)</li>
+ * <li>merge merges two lists edited from the same base list, image by image
+ * and box by box, reporting the conflicts, which are resolved in favor of
+ * ours, see {@link ListMerge}; all three lists must be sorted by name, as scan
+ * writes them, and are read in one pass</li>
+ * </ul>
+ * Lists are read in chunks split at line boundaries, the chunks are parsed in
+ * parallel and written out in file order, with only a few chunks held in
+ * memory at once, so a list of any size can be streamed through. The exit
+ * status is 0 if all went well, 1 if any line was reported, and 2 if the
+ * arguments were wrong or a file couldn't be read or written.
+ *
+ * @author bonifantmc
+ *
+ */
+public class Batch {
+	/** approximate size in bytes of the chunks a list is split into, 4MB */
+	private static final long CHUNK_SIZE = 1 << 22;
+	/** how many chunks per thread may be parsed ahead of the one being written */
+	private static final int CHUNKS_AHEAD = 2;
+	/** exit status when a line was reported */
+	private static final int PROBLEMS = 1;
+	/** exit status when the job couldn't be run */
+	private static final int FAILED = 2;
+
+	/** the threads chunks are parsed on */
+	private final ForkJoinPool pool;
+	/** the number of lines reported so far */
+	private int problems;
+
+	/**
+	 * @param threads
+	 *            the number of threads to parse with
+	 */
+	Batch(int threads) {
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Runs one batch job, see the class description for the jobs and their
+	 * arguments.
+	 *
+	 * @param args
+	 *            the job and its arguments
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		int threads = Runtime.getRuntime().availableProcessors();
+		int a = 0;
+		if (args.length > 1 && args[0].equals("-threads")) {
+			try {
+				threads = Math.max(1, Integer.parseInt(args[1]));
+			} catch (NumberFormatException e) {
+				usage();
+			}
+			a = 2;
+		}
+		if (args.length <= a + 1)
+			usage();
+
+		Batch b = new Batch(threads);
+		String job = args[a];
+		int status = 0;
+		try {
+			switch (job) {
+			case "validate":
+				for (int i = a + 1; i < args.length; i++)
+					b.validate(new File(args[i]));
+				break;
+			case "normalize":
+				if (args.length > a + 3)
+					usage();
+				File in = new File(args[a + 1]);
+				b.normalize(in, args.length > a + 2 ? new File(args[a + 2]) : in);
+				break;
+			case "convert":
+				if (args.length != a + 3)
+					usage();
+				b.convert(new File(args[a + 1]), new File(args[a + 2]));
+				break;
+			case "scan":
+				if (args.length < a + 3 || args.length > a + 4)
+					usage();
+				b.scan(new File(args[a + 1]), new File(args[a + 2]), args.length > a + 3 ? args[a + 3] : "*");
+				break;
+			case "merge":
+				if (args.length != a + 5)
+					usage();
+				b.merge(new File(args[a + 1]), new File(args[a + 2]), new File(args[a + 3]), new File(args[a + 4]));
+				break;
+			default:
+				usage();
+			}
+			if (b.problems > 0) {
+				System.err.println(b.problems + " line(s) reported.");
+				status = PROBLEMS;
+			}
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			status = FAILED;
+		} finally {
+			b.pool.shutdownNow();
+		}
+		System.exit(status);
+	}
+
+	/** Print how the batch jobs are run and quit. */
+	private static void usage() {
+		System.err.println("usage: ilb.Batch [-threads n] validate list...");
+		System.err.println("       ilb.Batch [-threads n] normalize list [out]");
+		System.err.println("       ilb.Batch [-threads n] convert list out");
+		System.err.println("       ilb.Batch [-threads n] scan repository out [mask]");
+		System.err.println("       ilb.Batch merge base ours theirs out");
+		System.exit(FAILED);
+	}
+
+	/**
+	 * Report every line of a list that doesn't name an image or can't be
+	 * parsed.
+	 *
+	 * @param list
+	 *            the list to check
+	 * @throws IOException
+	 *             if the list can't be read
+	 */
+	void validate(File list) throws IOException {
+		stream(list, null);
+	}
+
+	/**
+	 * Rewrite a list with all its annotations normalized, reporting the lines
+	 * that can't be.
+	 *
+	 * @param list
+	 *            the list to rewrite
+	 * @param out
+	 *            where the rewritten list is written, may be the list itself
+	 * @throws IOException
+	 *             if the list can't be read or the output written
+	 */
+	void normalize(File list, File out) throws IOException {
+		File temp = tempFor(out);
+		try {
+			try (Writer w = open(temp)) {
+				stream(list, w);
+			}
+			Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * Convert a text list to a binary list, or a binary list to a text list.
+	 *
+	 * @param list
+	 *            the list to convert, a binary list if named as one
+	 * @param out
+	 *            where the converted list is written
+	 * @throws IOException
+	 *             if the list can't be read or the output written
+	 */
+	void convert(File list, File out) throws IOException {
+		File temp = tempFor(out);
+		try {
+			if (BinaryList.isBinary(list)) {
+				try (BinaryList.Reader in = new BinaryList.Reader(list); ListWriter w = new ListWriter(
+						new BufferedOutputStream(new FileOutputStream(temp)))) {
+					for (int b = 0; b < in.blocks(); b++) {
+						BinaryList.Block block = in.block(b);
+						for (int i = 0; i < block.size(); i++)
+							if (block.isImage(i))
+								w.write(block.getString(i), block.getAnnotations(i));
+							else
+								w.writeLine(block.getString(i));
+					}
+				}
+			} else {
+				try (MappedLineReader in = new MappedLineReader(list);
+						BinaryList.Writer w = new BinaryList.Writer(temp)) {
+					String line;
+					while ((line = in.readLine()) != null)
+						w.addLine(line);
+					w.finish();
+				}
+			}
+			Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * Write a list of the images in a repository and its sub-directories, named
+	 * by their path relative to the repository, in name order.
+	 *
+	 * @param repository
+	 *            the repository to scan
+	 * @param out
+	 *            where the list is written
+	 * @param mask
+	 *            a glob image names must match
+	 * @throws IOException
+	 *             if the repository can't be read or the list written
+	 */
+	void scan(File repository, File out, String mask) throws IOException {
+		if (!repository.isDirectory())
+			throw new IOException(repository + " is not a directory.");
+		Path root = repository.toPath();
+		PathMatcher glob = root.getFileSystem().getPathMatcher("glob:" + mask);
+		ConcurrentLinkedQueue<Path> found = new ConcurrentLinkedQueue<>();
+		this.pool.invoke(new DirectoryScanner(root, glob, found, () -> false));
+
+		List<String> names = new ArrayList<>(found.size());
+		for (Path p : found)
+			names.add(root.relativize(p).toString());
+		Collections.sort(names);
+
+		File temp = tempFor(out);
+		try {
+			try (Writer w = open(temp)) {
+				for (String name : names)
+					w.write(name + "\n");
+			}
+			Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * Merge two lists edited from the same base, reporting each conflict.
+	 *
+	 * @param base
+	 *            the list both were edited from
+	 * @param ours
+	 *            our edit of the list, which wins conflicts
+	 * @param theirs
+	 *            their edit of the list
+	 * @param out
+	 *            where the merged list is written, may be one of the lists
+	 * @throws IOException
+	 *             if a list can't be read or isn't sorted by name, or the
+	 *             merged list can't be written
+	 */
+	void merge(File base, File ours, File theirs, File out) throws IOException {
+		File temp = tempFor(out);
+		ListMerge merge = new ListMerge(Annotation.min_diff);
+		try {
+			try (ListWriter w = new ListWriter(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				merge.merge(base, ours, theirs, w, (name, what) -> {
+					System.err.println(ours.getName() + ": " + name + ": " + what);
+					this.problems++;
+				});
+			}
+			Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+		System.err.println(merge.getImages() + " image(s) written, " + merge.getMerged() + " taken from "
+				+ theirs.getName() + " or merged.");
+	}
+
+	/**
+	 * Parse a list chunk by chunk in parallel, reporting the lines that can't
+	 * be parsed and, if given a writer, writing out the normalized list in file
+	 * order. Only a few chunks per thread are parsed ahead of the chunk being
+	 * written, so the list is never held in memory all at once.
+	 *
+	 * @param list
+	 *            the list to parse
+	 * @param out
+	 *            where the normalized list is written, or null to only check
+	 *            the list
+	 * @throws IOException
+	 *             if the list can't be read or the output written
+	 */
+	private void stream(File list, Writer out) throws IOException {
+		long[] bounds = MappedLineReader.split(list, CHUNK_SIZE);
+		int ahead = this.pool.getParallelism() * CHUNKS_AHEAD;
+		ArrayDeque<ForkJoinTask<Chunk>> parsing = new ArrayDeque<>();
+		int line = 0;
+		try {
+			for (int c = 0; c + 1 < bounds.length; c++) {
+				parsing.add(this.pool.submit(new Chunk(list, bounds[c], bounds[c + 1], out != null)));
+				if (parsing.size() >= ahead)
+					line = finish(list, parsing.poll().get(), line, out);
+			}
+			while (!parsing.isEmpty())
+				line = finish(list, parsing.poll().get(), line, out);
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while reading " + list + ".", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Could not read " + list + ".", e.getCause());
+		} finally {
+			for (ForkJoinTask<Chunk> t : parsing)
+				t.cancel(false);
+		}
+	}
+
+	/**
+	 * Report the problems found in a parsed chunk and write out its text.
+	 *
+	 * @param list
+	 *            the list the chunk is from
+	 * @param chunk
+	 *            the parsed chunk
+	 * @param line
+	 *            the number of lines in the list before the chunk
+	 * @param out
+	 *            where the chunk's text is written, or null
+	 * @return the number of lines in the list up to the end of the chunk
+	 * @throws IOException
+	 *             if the text can't be written
+	 */
+	private int finish(File list, Chunk chunk, int line, Writer out) throws IOException {
+		for (int i = 0; i < chunk.problemLines.size(); i++)
+			System.err.println(list.getName() + ":" + (line + chunk.problemLines.get(i).intValue()) + ": "
+					+ chunk.problems.get(i));
+		this.problems += chunk.problems.size();
+		if (out != null)
+			out.append(chunk.text);
+		return line + chunk.lines;
+	}
+
+	/**
+	 * @param f
+	 *            a file to write
+	 * @return a temporary file beside it to write to first, so the file is
+	 *         only replaced once it's written in full
+	 * @throws IOException
+	 *             if the temporary file can't be made
+	 */
+	private static File tempFor(File f) throws IOException {
+		File dir = f.getAbsoluteFile().getParentFile();
+		return File.createTempFile(f.getName() + "--", ".tmp", dir);
+	}
+
+	/**
+	 * @param f
+	 *            a file to write
+	 * @return a writer to the file, in the charset lists are read with
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	private static Writer open(File f) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), Charset.defaultCharset()));
+	}
+
+	/**
+	 * Parses the lines of one region of a list, noting the lines that don't
+	 * name an image or whose annotations are malformed, and (if asked to)
+	 * building up the normalized text of the region.
+	 */
+	private static class Chunk implements Callable<Chunk> {
+		/** the list */
+		private final File list;
+		/** where the chunk starts */
+		private final long from;
+		/** where the chunk ends */
+		private final long to;
+		/** true if the normalized text of the chunk is wanted */
+		private final boolean rewrite;
+		/** the normalized text of the chunk */
+		final StringBuilder text = new StringBuilder();
+		/** the number of lines in the chunk */
+		int lines;
+		/** the line number within the chunk of each problem, from 1 */
+		final ArrayList<Integer> problemLines = new ArrayList<>();
+		/** what's wrong with each line reported */
+		final ArrayList<String> problems = new ArrayList<>();
+
+		/**
+		 * @param list
+		 *            the list
+		 * @param from
+		 *            where the chunk starts
+		 * @param to
+		 *            where the chunk ends
+		 * @param rewrite
+		 *            true if the normalized text of the chunk is wanted
+		 */
+		Chunk(File list, long from, long to, boolean rewrite) {
+			this.list = list;
+			this.from = from;
+			this.to = to;
+			this.rewrite = rewrite;
+		}
+
+		@Override
+		public Chunk call() throws IOException {
+			try (MappedLineReader br = new MappedLineReader(this.list, Charset.defaultCharset(), this.from,
+					this.to)) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					this.lines++;
+					// blank lines are skipped by the loader, so they're
+					// dropped, comments (the base URL of a URL list) are kept
+					if (line.length() == 0)
+						continue;
+					if (line.startsWith("#")) {
+						keep(line);
+						continue;
+					}
+					int tab = line.indexOf('\t');
+					String name = tab < 0 ? line : line.substring(0, tab);
+					if (!MetaImage.IMAGE_FILTER.accept(null, name)) {
+						report(name + " is not an image");
+						keep(line);
+						continue;
+					}
+					ArrayList<Annotation> notes;
+					try {
+						notes = Annotation.parseAnnotationList(line);
+					} catch (IllegalArgumentException e) {
+						report(e.getMessage());
+						keep(line);
+						continue;
+					}
+					if (this.rewrite) {
+						this.text.append(name);
+						for (Annotation a : notes)
+							a.appendTo(this.text.append('\t'));
+						this.text.append('\n');
+					}
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Keep a line as it is in the normalized text.
+		 *
+		 * @param line
+		 *            the line
+		 */
+		private void keep(String line) {
+			if (this.rewrite)
+				this.text.append(line).append('\n');
+		}
+
+		/**
+		 * Note a problem with the current line.
+		 *
+		 * @param problem
+		 *            what's wrong with the line
+		 */
+		@SuppressWarnings("boxing")
+		private void report(String problem) {
+			this.problemLines.add(this.lines);
+			this.problems.add(problem);
+		}
+	}
+}
@@ -1,10 +1,8 @@
 package ilb;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Properties;
 
@@ -12,7 +10,12 @@ import annotations.Annotation;
 import fm.FaceFinder;
 import fm.FaceMatchJavaInterface;
 import image.editing.FaceMask;
+import struct.AtomicSave;
 import struct.MetaImage;
+import struct.ShardedList;
+import struct.TimeStampStore;
+import struct.URLDiskCache;
+import struct.URLFetcher;
 
 /**
  * Configurations provides static methods for obtaining and saving user
@@ -62,6 +65,42 @@ public class Configurations {
 	 */
 	public static final float annotation_min_diff = 0.8f;
 
+	/** default for whether list files are parsed in parallel */
+	public static final boolean dpl = false;
+
+	/** default for whether annotations are parsed lazily */
+	public static final boolean dla = false;
+
+	/** default for whether extra list annotations are packed into a store */
+	public static final boolean dpa = false;
+
+	/** default for whether list files are indexed in a binary sidecar */
+	public static final boolean dli = true;
+
+	/** default for whether repositories are scanned recursively */
+	public static final boolean drs = false;
+
+	/** default for whether repositories are watched for changes */
+	public static final boolean dwr = false;
+
+	/** default for whether images of URL lists are cached on disk */
+	public static final boolean duc = true;
+
+	/** default number of images of a URL list fetched at once */
+	public static final int dfc = 8;
+
+	/** default most megabytes of images the URL cache keeps */
+	public static final long dcs = 1024;
+
+	/** default for how much of a save is forced to disk */
+	public static final AtomicSave.Sync dsy = AtomicSave.Sync.FILE;
+
+	/** default number of shards a new sharded list is split into */
+	public static final int dsn = 16;
+
+	/** default for how the images of a new sharded list are partitioned */
+	public static final ShardedList.Partition dsp = ShardedList.Partition.HASH;
+
 	/**
 	 * Loads the initial location and size of the ImageListBrowser and sets
 	 * them.
@@ -152,6 +191,18 @@ public class Configurations {
 		boolean a = da;
 		MetaImage.SortOrder o = dO;
 		float min_diff = annotation_min_diff;
+		boolean parallel = dpl;
+		boolean lazy = dla;
+		boolean packed = dpa;
+		boolean indexed = dli;
+		boolean recursive = drs;
+		boolean watch = dwr;
+		boolean urlCache = duc;
+		int fetchers = dfc;
+		long cacheSize = dcs;
+		AtomicSave.Sync sync = dsy;
+		int shards = dsn;
+		ShardedList.Partition partition = dsp;
 		if (f.exists())
 			try (FileInputStream input = new FileInputStream(f)) {
 				prop.load(input);
@@ -186,6 +237,30 @@ public class Configurations {
 				o = MetaImage.SortOrder.parseSortOrder(prop.getProperty("sortOrder", "Unsorted"));
 				a = Boolean.parseBoolean(prop.getProperty("ascending", "true"));
 				min_diff = Float.parseFloat(prop.getProperty("annotation#min_diff", "0.8"));
+				parallel = Boolean.parseBoolean(prop.getProperty("parallelLoad", String.valueOf(dpl)));
+				lazy = Boolean.parseBoolean(prop.getProperty("lazyAnnotations", String.valueOf(dla)));
+				packed = Boolean.parseBoolean(prop.getProperty("packedAnnotations", String.valueOf(dpa)));
+				indexed = Boolean.parseBoolean(prop.getProperty("listIndex", String.valueOf(dli)));
+				recursive = Boolean.parseBoolean(prop.getProperty("recursiveScan", String.valueOf(drs)));
+				watch = Boolean.parseBoolean(prop.getProperty("watchRepository", String.valueOf(dwr)));
+				urlCache = Boolean.parseBoolean(prop.getProperty("urlCache", String.valueOf(duc)));
+				try {
+					fetchers = Integer.parseInt(prop.getProperty("urlConnections", String.valueOf(dfc)));
+				} catch (NumberFormatException e) {
+					fetchers = dfc;
+				}
+				try {
+					cacheSize = Long.parseLong(prop.getProperty("urlCacheSize", String.valueOf(dcs)));
+				} catch (NumberFormatException e) {
+					cacheSize = dcs;
+				}
+				sync = AtomicSave.Sync.parseSync(prop.getProperty("saveSync", dsy.toString()));
+				try {
+					shards = Integer.parseInt(prop.getProperty("shardCount", String.valueOf(dsn)));
+				} catch (NumberFormatException e) {
+					shards = dsn;
+				}
+				partition = ShardedList.Partition.parsePartition(prop.getProperty("shardPartition", dsp.toString()));
 
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -198,6 +273,18 @@ public class Configurations {
 		h.setOrdering(o);
 		h.setAscending(a);
 		Annotation.min_diff = min_diff;
+		ListReader.parallelLoad = parallel;
+		ListReader.lazyAnnotations = lazy;
+		ListReader.packedAnnotations = packed;
+		ListReader.listIndex = indexed;
+		ListReader.recursiveScan = recursive;
+		RepositoryWatcher.watchRepository = watch;
+		URLDiskCache.enabled = urlCache;
+		URLFetcher.connections = fetchers;
+		URLDiskCache.maxSize = cacheSize << 20;
+		AtomicSave.sync = sync;
+		ShardedList.shardCount = shards;
+		ShardedList.partition = partition;
 	}
 
 	/**
@@ -209,19 +296,13 @@ public class Configurations {
 	 *            modification times saved.
 	 */
 	private static void setTimeStamps(ImageHandler h) {
-		File time = new File("timestamps");
-		if (!time.exists())
-			time.mkdir();
 		if (h.getListFile() != null) {
 			String list = h.getListFile().getName();
-			try (BufferedWriter btime = new BufferedWriter(new FileWriter(new File(time, list)))) {
-				for (MetaImage i : h.getMasterList())
-					btime.append(String.valueOf(i.getDate()) + "\t" + i + "\n");
-				btime.flush();
-				btime.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			TimeStampStore store = h.getTimeStamps();
+			if (store == null || !store.isFor(list))
+				store = new TimeStampStore(list);
+			if (!store.holds(h.getMasterList()))
+				store.save(h.getMasterList());
 		}
 	}
 
@@ -260,6 +341,18 @@ public class Configurations {
 		prop.setProperty("sortOrder", h.getOrdering().toString());
 		prop.setProperty("ascending", String.valueOf(h.isAscending()));
 		prop.setProperty("annotation#min_diff", String.valueOf(Annotation.min_diff));
+		prop.setProperty("parallelLoad", String.valueOf(ListReader.parallelLoad));
+		prop.setProperty("lazyAnnotations", String.valueOf(ListReader.lazyAnnotations));
+		prop.setProperty("packedAnnotations", String.valueOf(ListReader.packedAnnotations));
+		prop.setProperty("listIndex", String.valueOf(ListReader.listIndex));
+		prop.setProperty("recursiveScan", String.valueOf(ListReader.recursiveScan));
+		prop.setProperty("watchRepository", String.valueOf(RepositoryWatcher.watchRepository));
+		prop.setProperty("urlCache", String.valueOf(URLDiskCache.enabled));
+		prop.setProperty("urlConnections", String.valueOf(URLFetcher.connections));
+		prop.setProperty("urlCacheSize", String.valueOf(URLDiskCache.maxSize >> 20));
+		prop.setProperty("saveSync", AtomicSave.sync.toString());
+		prop.setProperty("shardCount", String.valueOf(ShardedList.shardCount));
+		prop.setProperty("shardPartition", ShardedList.partition.toString());
 		prop.setProperty("FaceMaskScale", Float.toString(FaceMask.scale.getFloat()));
 		prop.setProperty("FaceMaskTranslucency", Float.toString(FaceMask.translucency.getFloat()));
 		if (FaceMatchJavaInterface.loaded)
@@ -1,14 +1,13 @@
 package ilb;
 
 import java.awt.event.ActionEvent;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.io.OutputStream;
 import java.util.Collections;
+import java.util.Set;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -19,10 +18,16 @@ import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileFilter;
 
 import annotations.Attribute;
+import struct.AtomicSave;
+import struct.BinaryList;
+import struct.ListLayout;
+import struct.ListWriter;
 import struct.MetaImage;
 import struct.Property;
 import struct.Property.PropertyChangeEvent;
 import struct.Property.PropertyChangeListener;
+import struct.ShardedList;
+import struct.TimeStampStore;
 import struct.URLMetaImage;
 
 /**
@@ -90,6 +95,12 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 	 * or .lst extensions.
 	 */
 	public static final String[] VALID_TEXT_EXTENSIONS = { ".txt", ".tsv", ".lst" };
+	/**
+	 * valid master lists are text lists, binary lists, see {@link BinaryList},
+	 * or sharded lists, see {@link ShardedList}.
+	 */
+	public static final String[] VALID_LIST_EXTENSIONS = { ".txt", ".tsv", ".lst", BinaryList.EXTENSION,
+			ShardedList.EXTENSION };
 	/**
 	* 
 	*/
@@ -110,6 +121,26 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 			return "txt/lst/tsv files";
 		}
 	};
+	/**
+	 * accepts text lists and binary lists
+	 */
+	public static final FileFilter listFilter = new FileFilter() {
+
+		@Override
+		public boolean accept(File arg0) {
+			if (arg0.isDirectory())
+				return true;
+			for (String ext : FileMenu.VALID_LIST_EXTENSIONS)
+				if (arg0.getName().toLowerCase().endsWith(ext))
+					return true;
+			return false;
+		}
+
+		@Override
+		public String getDescription() {
+			return "txt/lst/tsv/ilbl files";
+		}
+	};
 
 	/**
 	 * Handler supplying information about the Images being loaded, and sending
@@ -186,8 +217,8 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 			if (!getHandler().getDirectory().exists())
 				return;
 
-			JFileChooser chooser = FileMenu.browser(FileMenu.VALID_TEXT_EXTENSIONS, JFileChooser.FILES_AND_DIRECTORIES,
-					getHandler().getListFileDirecotry(), textListFilter, "Select a List to Open",
+			JFileChooser chooser = FileMenu.browser(FileMenu.VALID_LIST_EXTENSIONS, JFileChooser.FILES_AND_DIRECTORIES,
+					getHandler().getListFileDirecotry(), listFilter, "Select a List to Open",
 					"The file chosen does not exist or is not a lst file.");
 
 			if (chooser.showOpenDialog(getHandler().getImageDisplay()) == JFileChooser.APPROVE_OPTION) {
@@ -307,8 +338,8 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 		@Override
 		public void actionPerformed(ActionEvent arg0) {
 			getHandler().setDirectory(null);
-			JFileChooser chooser = browser(FileMenu.VALID_TEXT_EXTENSIONS, JFileChooser.FILES_AND_DIRECTORIES,
-					getHandler().getListFileDirecotry(), textListFilter, "Open a list of URLs", "Not a list of URLs");
+			JFileChooser chooser = browser(FileMenu.VALID_LIST_EXTENSIONS, JFileChooser.FILES_AND_DIRECTORIES,
+					getHandler().getListFileDirecotry(), listFilter, "Open a list of URLs", "Not a list of URLs");
 			if (chooser.showOpenDialog(getHandler().getImageDisplay()) == JFileChooser.APPROVE_OPTION) {
 				getHandler().setListFile(chooser.getSelectedFile());
 				getHandler().load();
@@ -376,14 +407,7 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 
 			// TODO CHECK OTHER THREADS AND CANCEL THEM.
 			getHandler().checkedSaving();
-			if (ListReader.r != null && !ListReader.r.isDone()) {
-				ListReader.r.cancel(this.enabled);
-				while (!ListReader.r
-						.isDone()) {/*
-									 * block TODO better way to block thread?
-									 */
-				}
-			}
+			ListReader.supersede();
 			getHandler().setMasterListChanged(false);
 			getHandler().getMasterList().clear();
 			getHandler().getAnnotationGroups().clear();
@@ -440,14 +464,7 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 		@Override
 		public void actionPerformed(ActionEvent e) {
 			getHandler().checkedSaving();
-			if (ListReader.r != null && !ListReader.r.isDone()) {
-				ListReader.r.cancel(this.enabled);
-				while (!ListReader.r
-						.isDone()) {/*
-									 * block TODO better way to block thread?
-									 */
-				}
-			}
+			ListReader.supersede();
 			getHandler().setMasterListChanged(false);
 			getHandler().setListFile(null);
 			getHandler().load();
@@ -496,7 +513,14 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 	}
 
 	/**
-	 * Saves the given handler's master list at its listfile
+	 * Saves the given handler's master list at its listfile. If the list is
+	 * saved to the text list it was read from and its layout still holds (see
+	 * {@link ListLayout}) only the lines of the images that changed are
+	 * rewritten, otherwise the whole list is written. A sharded list (see
+	 * {@link ShardedList}) only has the shards whose images changed written. A
+	 * list written whole is saved along with its timestamps as an
+	 * {@link AtomicSave}, written beside the files they replace and renamed
+	 * into place, the list last.
 	 * 
 	 * @param h
 	 *            the handler whose master list is to be saved
@@ -509,75 +533,147 @@ public class FileMenu extends JMenu implements PropertyChangeListener {
 	public static boolean save(final ImageHandler h, boolean original) {
 		File saveToTemp = h.getListFile();
 		if (!saveToTemp.getName().endsWith(".lst") && !saveToTemp.getName().endsWith(".tsv")
-				&& !saveToTemp.getName().endsWith(".txt"))
+				&& !saveToTemp.getName().endsWith(".txt") && !BinaryList.isBinary(saveToTemp)
+				&& !ShardedList.isManifest(saveToTemp))
 			saveToTemp = new File(saveToTemp.getParent(), saveToTemp.getName() + ".lst");
-		final File saveTo = saveToTemp;
-		File temp = new File("tmp.lst");
-		if (!temp.exists())
-			try {
-				if (!temp.createNewFile()) {
-					h.getProgressBar().message.setText("CANNOT WRITE TO THIS DIRECTORY");
-					return false;
+		final File saveTo = saveToTemp.getAbsoluteFile();
+
+		if (!saveTo.getParentFile().canWrite() && !(saveTo.exists() && saveTo.canWrite())) {
+			String error = " Could not write in " + saveTo.getParent() + ".";
+			JOptionPane.showMessageDialog(h.getImageDisplay(), error, "Permission Error", JOptionPane.YES_OPTION);
+			return false;
+		}
+
+		try (AtomicSave save = new AtomicSave()) {
+			// the timestamps record the order the images are shown in, dates
+			// changed since are already written in place by update
+			TimeStampStore stamps = h.getTimeStamps();
+			if (stamps == null || !stamps.isFor(saveTo.getName()))
+				stamps = new TimeStampStore(saveTo.getName());
+			if (!stamps.holds(h.getMasterList()))
+				stamps.save(h.getMasterList(), save);
+
+			// get original ordering from load
+			if (original)
+				Collections.sort(h.getMasterList(),
+						new MetaImage.MetaImageComparator(MetaImage.SortOrder.UNSORTED, true, null, null));
+
+			// rewrite just the changed lines if possible, otherwise write
+			// the whole file
+			boolean binary = BinaryList.isBinary(saveTo);
+			ShardedList shards = null;
+			if (ShardedList.isManifest(saveTo)) {
+				shards = h.getShardedList();
+				if (shards == null || !shards.isFor(saveTo))
+					shards = ShardedList.create(saveTo);
+			}
+			ListLayout layout = shards == null ? h.getListLayout() : null;
+			Set<MetaImage> changed = h.getChangedImages();
+			if ((layout != null || shards != null) && !binary && changed != null) {
+				// a line torn by a crash while it's rewritten is restored from
+				// the journal, so every change has to be journaled first
+				while (!h.journalEdits())
+					h.flushJournal();
+				h.flushJournal();
+			}
+			boolean inPlace = false;
+			if (shards != null)
+				shards.save(h.getMasterList(), changed, save);
+			else if (layout != null && !binary)
+				inPlace = layout.rewrite(saveTo, h.getMasterList(), changed);
+			if (shards == null && !inPlace)
+				try (FileOutputStream fos = new FileOutputStream(save.stage(saveTo))) {
+					if (binary) {
+						writeBinary(h, fos);
+						layout = null;
+					} else
+						layout = writeText(h, fos, saveTo);
 				}
-			} catch (IOException e) {
-				e.printStackTrace();
+
+			// restore ordering from before saving
+			if (original)
+				h.sort();
+
+			save.commit();
+			stamps.saved();
+			if (shards != null)
+				shards.saved();
+			if (!inPlace) {
+				if (layout != null)
+					layout.stamp();
+				h.setListLayout(layout);
 			}
+			h.setShardedList(shards);
+			h.setTimeStamps(stamps);
 
-		if (saveTo.getParentFile().canWrite() || (saveTo.exists() && saveTo.canWrite()) && temp.canWrite()) {
-			try (FileOutputStream fos = new FileOutputStream(temp);
-					OutputStreamWriter out = new OutputStreamWriter(fos)) {
-				// get original ordering from load
-				if (original)
-					Collections.sort(h.getMasterList(),
-							new MetaImage.MetaImageComparator(MetaImage.SortOrder.UNSORTED, true, null, null));
-
-				if (h.getMasterList().get(0) instanceof URLMetaImage)
-					out.write("#" + ((URLMetaImage) h.getMasterList().get(0)).getBaseURL()+"\n");
-
-				// write file
-				for (MetaImage i : h.getMasterList())
-					out.write(i + "\n");
-				out.flush();
-				out.close();
-
-				// restore ordering from before saving
-				if (original)
-					h.sort();
-
-				Files.copy(temp.toPath(), saveTo.toPath(), StandardCopyOption.REPLACE_EXISTING);
-				Files.delete(temp.toPath());
-
-				// remove autosaves of the same list file, they're now outdated
-				File[] AutoSaveFiles = new File(ILB.TMP).listFiles(new FilenameFilter() {
-					@Override
-					public boolean accept(File arg0, String arg1) {
-						return arg1.startsWith(saveTo.getName() + "--");
-					}
-				});
-				if (AutoSaveFiles != null)
-					for (File f : AutoSaveFiles)
-						f.delete();
+			// the journaled edits are all in the list now
+			h.clearJournal();
 
-				// Update list in title and memory if file saved under a new
-				// name
-				if (!saveTo.equals(h.getListFile()))
-					h.setListFile(saveTo);
+			// Update list in title and memory if file saved under a new
+			// name
+			if (!saveTo.equals(h.getListFile().getAbsoluteFile())) {
+				h.setListFile(saveTo);
+				h.startJournal();
+			}
 
-				h.getImageGroups().save();
-				h.setMasterListChanged(false);
+			h.getImageGroups().save();
+			h.setMasterListChanged(false);
 
-				return true;
-			} catch (IOException e1) {
-				System.err.println(temp.getAbsolutePath());
-				e1.printStackTrace();
-			}
-		} else {
-			String error = " Could not write in " + saveTo.getParent() + ".";
-			JOptionPane.showMessageDialog(h.getImageDisplay(), error, "Permission Error", JOptionPane.YES_OPTION);
+			return true;
+		} catch (IOException e1) {
+			System.err.println(saveTo.getAbsolutePath());
+			e1.printStackTrace();
 		}
 		return false;
 	}
 
+	/**
+	 * Write the master list as a text list.
+	 * 
+	 * @param h
+	 *            the handler whose list is written
+	 * @param os
+	 *            where to write the list
+	 * @param saveTo
+	 *            the file the list ends up in
+	 * @return where each image's line was written, to be stamped once the list
+	 *         is in place
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static ListLayout writeText(ImageHandler h, OutputStream os, File saveTo) throws IOException {
+		ListLayout layout = new ListLayout(saveTo);
+		ListWriter out = new ListWriter(new BufferedOutputStream(os));
+		if (h.getMasterList().get(0) instanceof URLMetaImage)
+			out.writeLine("#" + ((URLMetaImage) h.getMasterList().get(0)).getBaseURL());
+		for (MetaImage i : h.getMasterList()) {
+			long start = out.position();
+			out.write(i);
+			layout.add(i, start, out.position() - 1);
+		}
+		out.flush();
+		return layout;
+	}
+
+	/**
+	 * Write the master list as a binary list, see {@link BinaryList}.
+	 * 
+	 * @param h
+	 *            the handler whose list is written
+	 * @param os
+	 *            where to write the list
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void writeBinary(ImageHandler h, OutputStream os) throws IOException {
+		BinaryList.Writer out = new BinaryList.Writer(os);
+		if (h.getMasterList().get(0) instanceof URLMetaImage)
+			out.addLine("#" + ((URLMetaImage) h.getMasterList().get(0)).getBaseURL());
+		for (MetaImage i : h.getMasterList())
+			out.add(i);
+		out.finish();
+	}
+
 	/**
 	 * 
 	 * @param extensions
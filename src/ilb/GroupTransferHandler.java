@@ -10,6 +10,7 @@ import javax.activation.DataHandler;
 import javax.swing.JComponent;
 import javax.swing.TransferHandler;
 
+import struct.AnnotationGroups;
 import struct.ImageAnnotationPair;
 import struct.NLMSThumbnails;
 import struct.Property;
@@ -84,7 +85,9 @@ class GroupTransferHandler extends TransferHandler {
 		for (Thumbnail m : source.getSelectedValuesList())
 			this.gl.groupListed.move(m, newName);
 
-		getHandler().setMasterListChanged(true);
+		// moves between annotation groups note each image they retag
+		if (!(this.gl.groupListed instanceof AnnotationGroups))
+			getHandler().setMasterListChanged(true);
 		return true;
 	}
 
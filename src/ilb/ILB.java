@@ -5,13 +5,8 @@ import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -19,6 +14,7 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
 
 import struct.MetaImage;
 import struct.Property;
@@ -58,16 +54,14 @@ public class ILB extends JFrame implements PropertyChangeListener {
 	private final String config = "config.properties";
 
 	/**
-	 * A timer, every 5 minutes autosave the lst file to the file ILB.TMP
-	 * directory
+	 * A timer, every second append the edits made to the list to its journal
+	 * in the ILB.TMP directory
 	 */
-	private final Timer autosavingToTemp;
+	private final Timer journaling;
 
-	/** 5 minutes (aka 300000 ms). */
-	private static long AUTOSAVE_INTERVAL = 300000;
-	/** How to format the time stamp used in auto saves */
-	protected static final DateFormat TIME_FORMATTER = new SimpleDateFormat("YYYY-MM-dd-HH.mm");
-	/** The temp directory for autosaves */
+	/** 1 second (aka 1000 ms). */
+	private static long JOURNAL_INTERVAL = 1000;
+	/** The temp directory for journals */
 	public static final String TMP = "TMP";
 
 	/**
@@ -102,38 +96,39 @@ public class ILB extends JFrame implements PropertyChangeListener {
 			@Override
 			public void windowClosing(WindowEvent e) {
 				getHandler().checkedSaving();
+				getHandler().flushJournal();
 				Configurations.setProperties(ILB.this, getHandler(), getConfig());
 			}
 		});
 		Configurations.getDisplayProperties(this, getConfig());
 		Configurations.getHandlerProperties(getHandler(), getConfig());
 
-		// build the autosave routine
-		this.autosavingToTemp = new Timer();
-		this.autosavingToTemp.scheduleAtFixedRate(new TimerTask() {
+		// build the journaling routine, edits are snapshot on the event
+		// dispatch thread and written out on the timer's, which never holds
+		// anything the event dispatch thread waits on
+		this.journaling = new Timer();
+		this.journaling.scheduleAtFixedRate(new TimerTask() {
+
+			/** true once there's nothing left to journal this tick */
+			boolean done;
 
 			@Override
 			public void run() {
-				synchronized (ILB.this.getHandler()) {
-					File dir = new File(ILB.TMP);
-					if (!dir.exists() || !dir.isDirectory())
-						dir.mkdir();
-					String fileName = ILB.TMP + File.separator;
-					if (ILB.this.getHandler().getListFile() != null)
-						fileName += ILB.this.getHandler().getListFile().getName() + "-";
-					Date d = new Date(System.currentTimeMillis());
-					fileName += "-" + TIME_FORMATTER.format(d) + ".lst";
-					try (BufferedWriter bw = new BufferedWriter(new FileWriter(new File(fileName)))) {
-						for (MetaImage i : getHandler().getMasterList()) {
-							bw.write(i.toString());
-							bw.write("\n");
-						}
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
+				try {
+					do {
+						SwingUtilities.invokeAndWait(new Runnable() {
+							@Override
+							public void run() {
+								done = getHandler().journalEdits();
+							}
+						});
+						getHandler().flushJournal();
+					} while (!this.done);
+				} catch (InvocationTargetException | InterruptedException e) {
+					e.printStackTrace();
 				}
 			}
-		}, AUTOSAVE_INTERVAL, AUTOSAVE_INTERVAL);
+		}, JOURNAL_INTERVAL, JOURNAL_INTERVAL);
 	}
 
 	/**
@@ -8,12 +8,19 @@ import java.awt.event.ComponentListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
 
 import javax.imageio.ImageIO;
@@ -25,17 +32,22 @@ import annotations.Annotation;
 import annotations.AttributeSet;
 import image.editing.EditImage;
 import struct.AnnotationGroups;
+import struct.EditJournal;
 import struct.ArrayListModel;
 import struct.Group;
 import struct.ILBImageReader;
 import struct.ImageAnnotationPair;
 import struct.ImageGroups;
 import struct.ImageMap;
+import struct.ListLayout;
 import struct.MetaImage;
 import struct.NLMSThumbnails;
 import struct.Property;
 import struct.Property.PropertyChangeEvent;
 import struct.Property.PropertyChangeListener;
+import struct.ShardedList;
+import struct.TimeStampStore;
+import struct.URLFetcher;
 
 /**
  * ImageHandler provides a way to store meta data about many images in both list
@@ -92,6 +104,26 @@ public class ImageHandler implements PropertyChangeListener {
 	private boolean ascending;
 	/** true if an image was changed since the appliation loaded */
 	private boolean masterListChanged;
+	/**
+	 * the images changed since the list was last saved or loaded, that saving
+	 * only has to rewrite the lines of
+	 */
+	private final Set<MetaImage> changedImages = Collections.newSetFromMap(new IdentityHashMap<>());
+	/**
+	 * true if the list changed in a way that isn't tracked image by image, so
+	 * it has to be written whole when saved
+	 */
+	private boolean rewriteNeeded;
+	/** where the images' lines are in the list file, null if not known */
+	private ListLayout listLayout;
+	/** the shards of the list file, null if it isn't sharded */
+	private ShardedList shardedList;
+	/** journals the edits made to the list file, null if there's no list */
+	private volatile EditJournal journal;
+	/** the images changed together, left to journal a slice at a time */
+	private final ArrayDeque<MetaImage> journalQueue = new ArrayDeque<>();
+	/** the number of images journaled at a time after many changed at once */
+	private static final int JOURNAL_SLICE = 5000;
 	/** if the application is loading */
 	private boolean loading;
 	/** if its the first time the application has loaded since start-up */
@@ -100,6 +132,10 @@ public class ImageHandler implements PropertyChangeListener {
 	private int thumbnailSize;
 	/** the position of the display area's scrollbar 'tick' at start up */
 	private int tick;
+	/** watches the repository for changes, null if not watching */
+	private RepositoryWatcher watcher;
+	/** the access dates of the list's images, null if no list is loaded */
+	private TimeStampStore timeStamps;
 
 	/**
 	 * the worker that loads image information from directories and list files
@@ -165,7 +201,7 @@ public class ImageHandler implements PropertyChangeListener {
 		}
 		getImages().put(i, newImage);
 		newImage.flush();
-		setMasterListChanged(true);
+		setImageChanged(i);
 		i.setRotationsDegree(i.getRotationsDegree() + 90);
 		getImageDisplay().repaint();
 		firePropertyChange(Property.rotation, i);
@@ -309,8 +345,11 @@ public class ImageHandler implements PropertyChangeListener {
 	 */
 	private void propagateNameChange(String oldName, String newName) {
 		for (MetaImage image : getMasterList()) {
-			if (image.getName().equals(oldName))
+			if (image.getName().equals(oldName)) {
 				image.setName(newName);
+				getMasterList().renamed(image, oldName);
+				setImageChanged(image);
+			}
 		}
 
 		for (EditImage eI : this.getEditImages())
@@ -336,7 +375,7 @@ public class ImageHandler implements PropertyChangeListener {
 		getAnnotationGroups().removeMetaImage(i);
 		getImageGroups().removeMetaImage(i);
 		getMasterList().remove(i);
-		setMasterListChanged(true);
+		setImageRemoved(i);
 		reindex(false);
 	}
 
@@ -367,12 +406,98 @@ public class ImageHandler implements PropertyChangeListener {
 		getAnnotationGroups().clear();
 		getImageGroups().clear();
 
-		if (ListReader.r != null)
-			ListReader.r.cancel(true);
+		ListReader.supersede();
+		// don't keep fetching images of a list that's no longer shown
+		URLFetcher.stopPrefetch();
+
+		// watch before reading so nothing added during the read is missed
+		if (this.watcher != null) {
+			this.watcher.close();
+			this.watcher = null;
+		}
+		if (RepositoryWatcher.watchRepository && getListFile() == null && getDirectory() != null)
+			this.watcher = RepositoryWatcher.start(this);
+
 		ListReader.r = new ListReader(this);
 		ListReader.r.execute();
 	}
 
+	/**
+	 * Apply a batch of changes to the repository found by the
+	 * RepositoryWatcher, without loading the whole repository again.
+	 * 
+	 * @param found
+	 *            images that were added or changed, an image is added if it
+	 *            isn't in the master list already
+	 * @param reread
+	 *            new contents of the changed images that were read, to replace
+	 *            what's cached for them
+	 * @param removed
+	 *            names of images (or directories of images) that were deleted
+	 */
+	void applyRepositoryChanges(List<MetaImage> found, Map<MetaImage, BufferedImage> reread, List<String> removed) {
+		if (isLoading() || getListFile() != null)
+			return;
+
+		// a name that isn't an image is a deleted directory, which takes all
+		// of its images with it. The directories are kept sorted, less any
+		// inside another, so the one an image's name could be in is the
+		// greatest not after it, and the list is scanned once for all of them
+		Set<MetaImage> gone = Collections.newSetFromMap(new IdentityHashMap<MetaImage, Boolean>());
+		TreeSet<String> dirs = new TreeSet<>();
+		for (String name : removed) {
+			MetaImage i = getMasterList().getByName(name);
+			if (i != null)
+				gone.add(i);
+			else
+				dirs.add(name + File.separator);
+		}
+		String outer = null;
+		for (Iterator<String> it = dirs.iterator(); it.hasNext();) {
+			String dir = it.next();
+			if (outer != null && dir.startsWith(outer))
+				it.remove();
+			else
+				outer = dir;
+		}
+		if (!dirs.isEmpty())
+			for (MetaImage i : getMasterList()) {
+				String dir = dirs.floor(i.getName());
+				if (dir != null && i.getName().startsWith(dir))
+					gone.add(i);
+			}
+		if (!gone.isEmpty()) {
+			for (MetaImage i : gone) {
+				getAnnotationGroups().removeMetaImage(i);
+				getImageGroups().removeMetaImage(i);
+			}
+			// fires the removal of each run of images gone
+			getMasterList().removeIf(gone::contains);
+		}
+
+		List<MetaImage> added = new ArrayList<>();
+		for (MetaImage i : found) {
+			MetaImage known = getMasterList().getByName(i.getName());
+			if (known == null) {
+				added.add(i);
+				continue;
+			}
+			BufferedImage b = reread.get(i);
+			if (b != null)
+				getImages().put(known, b);
+			known.launchFileMetaDataLoad();
+		}
+		appendToMasterList(added);
+		for (MetaImage i : added) {
+			getAnnotationGroups().addThumbnail(AnnotationGroups.UNANNOTATED, new ImageAnnotationPair(i, null));
+			i.launchFileMetaDataLoad();
+		}
+
+		reindex(false);
+		firePropertyChange(getAnnotationGroups().getProperty(), null);
+		getImageDisplay().repaint();
+	}
+
 	/**
 	 * sort the images of this ImageHandler in the master list according to the
 	 * current ordering, ascending, and pattern values
@@ -554,17 +679,46 @@ public class ImageHandler implements PropertyChangeListener {
 	}
 
 	/**
-	 * Set the master list without rebuilding the Image and Annotation Groups
-	 * (to use when loading and making quick changes to the list, when done the
-	 * real setMasterList should be used to rebuild the Groups)
+	 * Add newly loaded images to the master list without rebuilding the Image
+	 * and Annotation Groups or resorting the images already in it, the new
+	 * images are merged into the list's current sort order (to use while
+	 * loading, when done the real setMasterList should be used to rebuild the
+	 * Groups)
 	 * 
-	 * @param list
-	 *            the list to set
+	 * @param images
+	 *            the images to add
 	 */
-	public void setMasterListPartial(ArrayListModel<MetaImage> list) {
-		this.masterList.clear();
-		this.masterList.addAll(list);
-		sort();
+	public void appendToMasterList(List<MetaImage> images) {
+		Comparator<MetaImage> c = new MetaImage.MetaImageComparator(this.ordering, this.ascending, this.pattern,
+				this.getFilter());
+		this.masterList.mergeSorted(images, c);
+	}
+
+	/**
+	 * @return the access dates and previous order of the list's images, null
+	 *         if no list has been loaded
+	 */
+	public TimeStampStore getTimeStamps() {
+		return this.timeStamps;
+	}
+
+	/**
+	 * @param store
+	 *            the access dates and previous order of the list's images
+	 */
+	void setTimeStamps(TimeStampStore store) {
+		this.timeStamps = store;
+	}
+
+	/**
+	 * Record that an image was just viewed, updating its access date on disk
+	 * 
+	 * @param i
+	 *            the image whose date changed
+	 */
+	public void dateChanged(MetaImage i) {
+		if (this.timeStamps != null)
+			this.timeStamps.update(i);
 	}
 
 	/** @return the map of how all annotations are grouped together */
@@ -709,13 +863,211 @@ public class ImageHandler implements PropertyChangeListener {
 	/**
 	 * @param masterListChanged
 	 *            , true if the list will need to be saved, false if it was just
-	 *            saved
+	 *            saved. A list changed this way is written whole when saved
+	 *            and nothing is journaled, use
+	 *            {@link #setImageChanged(MetaImage)} or
+	 *            {@link #setImagesChanged(Collection)} when images' lines
+	 *            changed, and {@link #setImageRemoved(MetaImage)} when an image
+	 *            was removed.
 	 */
 	public void setMasterListChanged(boolean masterListChanged) {
 		this.masterListChanged = masterListChanged;
+		this.rewriteNeeded = masterListChanged;
+		this.changedImages.clear();
+		if (!masterListChanged)
+			this.journalQueue.clear();
 		this.firePropertyChange(Property.displayArea, this.imageDisplay);
 	}
 
+	/**
+	 * Note an image's Annotations (or anything else saved on its line) changed,
+	 * the list needs saving but only the image's line needs rewriting.
+	 * 
+	 * @param i
+	 *            the image that changed
+	 */
+	public void setImageChanged(MetaImage i) {
+		setImageTouched(i);
+		this.masterListChanged = true;
+		this.firePropertyChange(Property.displayArea, this.imageDisplay);
+	}
+
+	/**
+	 * Note many images' Annotations changed at once, the list needs saving but
+	 * only their lines need rewriting. The images are journaled a slice at a
+	 * time (see {@link #journalEdits()}) rather than all at once.
+	 * 
+	 * @param images
+	 *            the images that changed
+	 */
+	public void setImagesChanged(Collection<MetaImage> images) {
+		this.changedImages.addAll(images);
+		if (this.journal != null)
+			this.journalQueue.addAll(images);
+		this.masterListChanged = true;
+		this.firePropertyChange(Property.displayArea, this.imageDisplay);
+	}
+
+	/**
+	 * Note an image was removed from the list, the list has to be written
+	 * whole when saved but only the removal is journaled.
+	 * 
+	 * @param i
+	 *            the image removed
+	 */
+	public void setImageRemoved(MetaImage i) {
+		this.changedImages.remove(i);
+		if (this.journal != null) {
+			// a snapshot journaled after the removal would bring it back
+			this.journalQueue.remove(i);
+			this.journal.remove(i);
+		}
+		this.masterListChanged = true;
+		this.rewriteNeeded = true;
+		this.firePropertyChange(Property.displayArea, this.imageDisplay);
+	}
+
+	/**
+	 * Note an image may have changed without asking for the list to be saved,
+	 * for images opened in an EditImage, not every edit made there reports
+	 * itself.
+	 * 
+	 * @param i
+	 *            the image that may have changed
+	 */
+	public void setImageTouched(MetaImage i) {
+		if (i == null)
+			return;
+		this.changedImages.add(i);
+		if (this.journal != null)
+			this.journal.record(i);
+	}
+
+	/**
+	 * Start journaling the edits made to the list file (see
+	 * {@link EditJournal}), any edits journaled for the list before are
+	 * dropped. The journal of the list journaled until now is flushed and left
+	 * for that list to recover.
+	 */
+	public void startJournal() {
+		startJournal(false);
+	}
+
+	/**
+	 * Start journaling the edits made to the list file (see
+	 * {@link EditJournal}). The journal of the list journaled until now is
+	 * flushed and left for that list to recover.
+	 * 
+	 * @param recovering
+	 *            true if the list's edits were just recovered from its
+	 *            journal, the journal is kept until they've been journaled
+	 *            again and flushed, otherwise it's dropped
+	 */
+	public void startJournal(boolean recovering) {
+		flushJournal();
+		this.journal = null;
+		this.journalQueue.clear();
+		if (getListFile() != null)
+			try {
+				this.journal = new EditJournal(EditJournal.fileFor(new File(ILB.TMP), getListFile()), recovering);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+	}
+
+	/**
+	 * Journal the edits not recorded as they were made: the images open for
+	 * editing, since not every edit made in an EditImage reports itself, and
+	 * the images changed together (see {@link #setImagesChanged(Collection)}).
+	 * Those are journaled a slice at a time, so the event dispatch thread is
+	 * never held for long; call this again (after flushing) until it returns
+	 * true. Must be called on the event dispatch thread.
+	 * 
+	 * @return true if there's nothing left to journal
+	 */
+	public boolean journalEdits() {
+		EditJournal j = this.journal;
+		if (j == null)
+			return true;
+		// an image removed while open would be brought back by its snapshot
+		for (EditImage e : getEditImages())
+			if (e.getMetaImage() != null
+					&& getMasterList().getByName(e.getMetaImage().getName()) == e.getMetaImage())
+				j.record(e.getMetaImage());
+		for (int k = 0; k < JOURNAL_SLICE && !this.journalQueue.isEmpty(); k++)
+			j.record(this.journalQueue.poll());
+		return this.journalQueue.isEmpty();
+	}
+
+	/** Write the edits journaled so far to disk. */
+	public void flushJournal() {
+		EditJournal j = this.journal;
+		if (j != null)
+			try {
+				j.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+	}
+
+	/** Throw away the edits journaled, once the list is saved. */
+	public void clearJournal() {
+		EditJournal j = this.journal;
+		if (j != null)
+			try {
+				j.clear();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+	}
+
+	/**
+	 * @return the images whose lines need rewriting when the list is saved,
+	 *         including those still open for editing, or null if the list has
+	 *         to be written whole
+	 */
+	public Set<MetaImage> getChangedImages() {
+		if (this.rewriteNeeded)
+			return null;
+		Set<MetaImage> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+		changed.addAll(this.changedImages);
+		for (EditImage e : getEditImages())
+			if (e.getMetaImage() != null)
+				changed.add(e.getMetaImage());
+		return changed;
+	}
+
+	/**
+	 * @return where the images' lines are in the list file, null if not known
+	 */
+	public ListLayout getListLayout() {
+		return this.listLayout;
+	}
+
+	/**
+	 * @param layout
+	 *            where the images' lines are in the list file, null if not
+	 *            known
+	 */
+	public void setListLayout(ListLayout layout) {
+		this.listLayout = layout;
+	}
+
+	/**
+	 * @return the shards of the list file, null if it isn't sharded
+	 */
+	public ShardedList getShardedList() {
+		return this.shardedList;
+	}
+
+	/**
+	 * @param shards
+	 *            the shards of the list file, null if it isn't sharded
+	 */
+	public void setShardedList(ShardedList shards) {
+		this.shardedList = shards;
+	}
+
 	/**
 	 * @param p
 	 *            the property whose listeners are to be retrieved
@@ -886,6 +1238,7 @@ public class ImageHandler implements PropertyChangeListener {
 	public void changeImageTag(MetaImage i, Annotation n, String newName, Group g) {
 		String oldName = n.getCategory().toString();
 		n.setCategory(newName);
+		setImageChanged(i);
 		getAnnotationGroups().get(oldName).remove(i);
 		List<String> cats = Annotation.getAllCategories(i.getAnnotations());
 		for (String s : cats)
@@ -910,6 +1263,8 @@ public class ImageHandler implements PropertyChangeListener {
 			return;// user canceled
 
 		getAnnotationGroups().changeKey(oldName, newName);
+		for (ImageAnnotationPair p : model)
+			setImageChanged(p.x);
 
 		sort();
 		firePropertyChange(g.getProperty(), null);
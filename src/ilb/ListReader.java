@@ -5,17 +5,33 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.ParseException;
+import java.nio.file.PathMatcher;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -25,11 +41,22 @@ import javax.swing.SwingWorker;
 
 import annotations.Annotation;
 import ilb.ViewMenu.ExtraListMenu.AddList;
+import struct.AnnotationStore;
 import struct.ArrayListModel;
+import struct.BinaryList;
+import struct.DirectoryScanner;
+import struct.EditJournal;
 import struct.ImageGroups;
 import struct.ImageMap;
+import struct.LazyAnnotationList;
+import struct.ListIndex;
+import struct.ListLayout;
+import struct.MappedLineReader;
 import struct.MetaImage;
-import struct.Pair;
+import struct.ShardedList;
+import struct.TimeStampStore;
+import struct.URLDiskCache;
+import struct.URLFetcher;
 import struct.URLMetaImage;
 
 /**
@@ -39,21 +66,67 @@ import struct.URLMetaImage;
  * <p>
  * This thread only loads meta data about images, to actually load information
  * needed to display the image see the ImageHandler's ImageMap.
+ * <p>
+ * Images are published to the Handler in batches as they are read, each batch
+ * is merged into the Handler's master list in its current sort order, so the
+ * display fills in progressively without the list being rebuilt each time.
  * 
  * @author bonifantmc
  * @see MetaImage
  * @see ImageHandler
  * @see ImageMap
  */
-public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
+public class ListReader extends SwingWorker<ArrayList<MetaImage>, MetaImage> {
 	/**
 	 * Only one ListReader should ever be running at one time, and its whichever
 	 * reader is stored here in r.
 	 */
-	public static ListReader r;
+	public static volatile ListReader r;
+	/**
+	 * the generation of the newest load, each load takes the next generation
+	 * and is superseded once the generation moves past it
+	 */
+	private static final AtomicLong GENERATION = new AtomicLong();
 
 	/** number of records to process before updating screen */
 	private static final int UPDATE_RATE = 250;
+	/** the maximum of the progress bar when progress is measured in bytes */
+	private static final int PROGRESS_SCALE = 1000;
+	/** approximate size in bytes of the chunks a list is split into, 4MB */
+	private static final long CHUNK_SIZE = 1 << 22;
+	/** the threads list file chunks are parsed on */
+	private static final ForkJoinPool PARSERS = new ForkJoinPool();
+	/**
+	 * If true list files are split into chunks at line boundaries and the
+	 * chunks are parsed in parallel, rather than parsing one line at a time on
+	 * the reader's thread.
+	 */
+	public static boolean parallelLoad = false;
+	/**
+	 * If true the annotations of extra lists are kept as text and only parsed
+	 * when an image's annotations are first looked at, see
+	 * {@link struct.LazyAnnotationList}.
+	 */
+	public static boolean lazyAnnotations = false;
+	/**
+	 * If true (and annotations aren't parsed lazily) the annotations of extra
+	 * lists are packed into an {@link struct.AnnotationStore} per chunk of the
+	 * list as they're parsed, and only rebuilt as Annotations when an image's
+	 * annotations are first looked at.
+	 */
+	public static boolean packedAnnotations = false;
+	/**
+	 * If true lists are indexed in a binary sidecar as they're read, and a list
+	 * that hasn't changed since is loaded from its sidecar instead of parsed,
+	 * see {@link struct.ListIndex}.
+	 */
+	public static boolean listIndex = true;
+	/**
+	 * If true a repository is scanned along with all of its sub-directories,
+	 * with sub-directories walked concurrently, rather than only its top
+	 * directory.
+	 */
+	public static boolean recursiveScan = false;
 	/** The ImageHandler requesting images to be loaded */
 	private final ImageHandler handler;
 	/** The list file images are read from */
@@ -67,6 +140,26 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 	 * being built
 	 */
 	private final ArrayListModel<MetaImage> result = new ArrayListModel<>();
+	/** the size in bytes of the list file being read, 0 if not reading one */
+	private long bytesTotal;
+	/** the number of bytes of the list file read so far */
+	private volatile long bytesRead;
+	/** the number of images in the result that have been published so far */
+	private int published;
+	/** the timestamps of the list being read, null until they're read */
+	private TimeStampStore timeStamps;
+	/** where the images' lines are in the text list read, null if none */
+	private ListLayout layout;
+	/** the shards of the list read, null if it isn't sharded */
+	private ShardedList shards;
+	/** the images whose edits were recovered from the list's journal */
+	private List<MetaImage> recovered = Collections.emptyList();
+	/** the images removed from the list by its journal */
+	private List<MetaImage> recoveredRemovals = Collections.emptyList();
+	/** true if the user chose to recover the edits in the list's journal */
+	private boolean recovering;
+	/** the generation of this load */
+	private final long generation;
 
 	/**
 	 * Prepares the worker before it is launched.
@@ -75,14 +168,8 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 	 *            the ImageHandler making a request for new images.
 	 */
 	ListReader(ImageHandler h) {
-		if (r != null) {
-			r.cancel(true);
-			while (!r.isDone()) {/*
-									 * TODO See if there's any better way to
-									 * wait, look at CountDownLatch.
-									 */
-			}
-		}
+		supersede();
+		this.generation = GENERATION.incrementAndGet();
 		r = this;
 		this.handler = h;
 		this.readList = getHandler().getListFile();
@@ -95,6 +182,31 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 		getHandler().getProgressBar().prog.setStringPainted(true);
 	}
 
+	/**
+	 * Stop the current load, if there is one, without waiting for it. The load
+	 * notices at its next line or chunk and stops, and anything it publishes
+	 * or finishes with after this is dropped, so a new load can start right
+	 * away. Must be called on the event dispatch thread.
+	 */
+	static void supersede() {
+		GENERATION.incrementAndGet();
+		ListReader old = r;
+		if (old == null)
+			return;
+		r = null;
+		old.cancel(false);
+		// the old load won't finish itself, so its progress is cleared here
+		old.getHandler().getProgressBar().prog.setVisible(false);
+		old.getHandler().getProgressBar().prog.setIndeterminate(false);
+		old.getHandler().getProgressBar().message.setText("");
+		old.getHandler().setLoading(false);
+	}
+
+	/** @return true if a newer load has started since this one */
+	private boolean isSuperseded() {
+		return this.generation != GENERATION.get();
+	}
+
 	/**
 	 * Loads all images from a directory (but not its sub-directories or all
 	 * images indicated from a list file (provided they are contained within a
@@ -113,8 +225,10 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 			}
 		else if (getReadDir() == null) {
 			loadFromURLs();
+			checkForAutosave();
 		} else {
 			loadFromListFile();
+			checkForAutosave();
 		}
 		return getResult();
 	}
@@ -124,56 +238,75 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 	 */
 	private void loadFromURLs() {
 		int index = 0;
-		int siz = 0;
 		String line;
 
-		// check for autosaves of the list file
-		List<File> oldSaves = Arrays.asList(new File(ILB.TMP).listFiles(new FileFilter() {
-			@Override
-			public boolean accept(File arg0) {
-				return arg0.getName().startsWith(getReadList().getName());
-			}
-		}));
-		File list = checkForAutosave(oldSaves);
+		// images are read through the JVM's cache, so it must be in place
+		// before the first image is
+		if (URLDiskCache.enabled)
+			URLDiskCache.install();
 
-		// if no autosaves selected, use default list
-		if (list == null)
-			list = getReadList();
+		File list = getReadList();
+		recoverTail(list);
 
-		String baseURL = "";
+		if (BinaryList.isBinary(list)) {
+			loadFromBinary(list, "");
+			return;
+		}
 
-		// quick count of how many images to load
-		try (BufferedReader br = new BufferedReader(new FileReader(list))) {
-			while ((line = br.readLine()) != null)
-				if (line.startsWith("#")) {
-					baseURL = line.substring(1).trim();
-				} else
-					siz++;
-		} catch (Exception e) {
-			e.printStackTrace();
+		if (ShardedList.isManifest(list)) {
+			loadFromShards(list, true);
+			return;
 		}
 
-		// use count to display progress
-		getHandler().getProgressBar().prog.setMaximum(siz);
-		getHandler().getProgressBar().prog.setValue(0);
+		boolean indexed = listIndex;
+		if (indexed && loadFromIndex(list))
+			return;
 
-		// read the images
-		try (BufferedReader br = new BufferedReader(new FileReader(list))) {
+		if (parallelLoad) {
+			loadInParallel(list, readBaseURL(list), indexed);
+			return;
+		}
+
+		String baseURL = "";
+		ListLayout layout = new ListLayout(list);
+		layout.stamp();
+
+		// read the images, reporting progress by bytes read so the list is
+		// only read once
+		try (MappedLineReader br = new MappedLineReader(list);
+				ListIndex.Writer indexer = indexed ? startIndex(list) : null) {
+			startProgress(br.size());
+			if (indexer != null)
+				indexer.hash(br);
 			while ((line = br.readLine()) != null) {
-				if (line.length() == 0 || line.startsWith("#")) {
+				if (line.startsWith("#")) {
+					baseURL = line.substring(1).trim();
 					continue;
 				}
-				if (index % UPDATE_RATE == 0)
-					publish();
+				if (line.length() == 0)
+					continue;
+				if (index % UPDATE_RATE == 0) {
+					this.bytesRead = br.position();
+					publishNew();
+				}
 				String name = line.split("[\t]")[0];
 				if (MetaImage.IMAGE_FILTER.accept(null, name)) {
 					MetaImage toAdd = new URLMetaImage(baseURL, name, index++, line, 0);
 					getResult().add(toAdd);
+					layout.add(toAdd, br.lineStart(), br.lineEnd());
+					if (indexer != null)
+						indexer.add(baseURL, toAdd, br.lineStart(), br.lineEnd());
 
 				}
-				if (isCancelled())
+				if (isSuperseded())
 					return;
 			}
+			this.bytesRead = br.size();
+			if (isSuperseded())
+				return;
+			this.layout = layout;
+			if (indexer != null)
+				indexer.commit();
 
 			// getHandler().getMasterSet().build();
 			index = readTimeStamps(index);
@@ -188,33 +321,86 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 
 	/**
 	 * Loads all images from repository/directory when no list file is provided.
-	 * Only looks at the given directory, not sub-directories thereof.
+	 * Only looks at the given directory, not sub-directories thereof, unless
+	 * {@link #recursiveScan} is set.
 	 * 
 	 */
 	private void loadFromRepository() {
+		// the number of images isn't known until the scan is over, so the
+		// progress bar only shows that the scan is underway
+		getHandler().getProgressBar().prog.setIndeterminate(true);
+		if (recursiveScan) {
+			loadRecursively();
+			return;
+		}
+
 		int index = 0;
 		// try with a stream of all files matching the glob in the
 		// repository
 
 		try (DirectoryStream<Path> stream = Files.newDirectoryStream(getReadDir().toPath(), this.getMask())) {
-			getHandler().getProgressBar().prog.setMaximum(getReadDir().listFiles().length);
-			getHandler().getProgressBar().prog.setValue(0);
 			Iterator<Path> itr = stream.iterator();
 			while (itr.hasNext()) {
 				if (index % UPDATE_RATE == 0)
-					publish();
+					publishNew();
 				File f = itr.next().toFile();
 				if (MetaImage.IMAGE_FILTER.accept(f, f.getName()))
 					getResult().add(new MetaImage(f, index++));
 
-				if (isCancelled())
+				if (isSuperseded())
 					return;
 			}
+			publishNew();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Loads all images from the repository and all of its sub-directories.
+	 * Directories are walked concurrently and the images found are added to
+	 * the result, and published, as they arrive. Images are named by their
+	 * path relative to the repository, the same as they'd be named in a list
+	 * file.
+	 */
+	private void loadRecursively() {
+		Path root = getReadDir().toPath();
+		PathMatcher glob = root.getFileSystem().getPathMatcher("glob:" + getMask());
+		ConcurrentLinkedQueue<Path> found = new ConcurrentLinkedQueue<>();
+		ForkJoinTask<Void> walk = PARSERS.submit(new DirectoryScanner(root, glob, found, this::isSuperseded));
+
+		int index = 0;
+		boolean walking = true;
+		while (walking) {
+			walking = !walk.isDone();
+			Path p;
+			while ((p = found.poll()) != null) {
+				MetaImage i = new MetaImage(p.toFile(), index++);
+				i.setName(root.relativize(p).toString());
+				getResult().add(i);
+				if (index % UPDATE_RATE == 0)
+					publishNew();
+			}
+			publishNew();
+			if (isSuperseded()) {
+				walk.cancel(true);
+				return;
+			}
+
+			// wait a moment for more images to be found
+			try {
+				walk.get(50, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// still walking
+			} catch (InterruptedException e) {
+				walk.cancel(true);
+				return;
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	/**
 	 * Loads all images from a given list file, then check for configuration
 	 * information about the files, checking for a map to build the
@@ -223,50 +409,65 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 	 */
 	private void loadFromListFile() {
 		int index = 0;
-		int siz = 0;
 		String line;
 
-		// check for autosaves of the list file
-		List<File> oldSaves = Arrays.asList(new File(ILB.TMP).listFiles(new FileFilter() {
-			@Override
-			public boolean accept(File arg0) {
-				return arg0.getName().startsWith(getReadList().getName());
-			}
-		}));
-		File list = checkForAutosave(oldSaves);
-
-		// if no autosaves selected, use default list
-		if (list == null)
-			list = getReadList();
-
-		// quick count of how many images to load
-		try (BufferedReader br = new BufferedReader(new FileReader(list))) {
-			while ((line = br.readLine()) != null)
-				siz++;
-		} catch (Exception e) {
-			e.printStackTrace();
+		File list = getReadList();
+		recoverTail(list);
+
+		if (BinaryList.isBinary(list)) {
+			loadFromBinary(list, null);
+			return;
 		}
 
-		// use count to display progress
-		getHandler().getProgressBar().prog.setMaximum(siz);
-		getHandler().getProgressBar().prog.setValue(0);
+		if (ShardedList.isManifest(list)) {
+			loadFromShards(list, false);
+			return;
+		}
 
-		// read the images
-		try (BufferedReader br = new BufferedReader(new FileReader(list))) {
+		boolean indexed = listIndex;
+		if (indexed && loadFromIndex(list))
+			return;
+
+		if (parallelLoad) {
+			loadInParallel(list, null, indexed);
+			return;
+		}
+
+		ListLayout layout = new ListLayout(list);
+		layout.stamp();
+
+		// read the images, reporting progress by bytes read so the list is
+		// only read once
+		try (MappedLineReader br = new MappedLineReader(list);
+				ListIndex.Writer indexer = indexed ? startIndex(list) : null) {
+			startProgress(br.size());
+			if (indexer != null)
+				indexer.hash(br);
 			while ((line = br.readLine()) != null) {
 				if (line.length() == 0 || line.startsWith("#"))
 					continue;
-				if (index % UPDATE_RATE == 0)
-					publish();
+				if (index % UPDATE_RATE == 0) {
+					this.bytesRead = br.position();
+					publishNew();
+				}
 				String name = line.split("[\t]")[0];
 				File f = new File(getReadDir(), name);
 				if (MetaImage.IMAGE_FILTER.accept(f, f.getName())) {
 					MetaImage toAdd = new MetaImage(f, index++, line, 0);
 					getResult().add(toAdd);
+					layout.add(toAdd, br.lineStart(), br.lineEnd());
+					if (indexer != null)
+						indexer.add(null, toAdd, br.lineStart(), br.lineEnd());
 				}
-				if (isCancelled())
+				if (isSuperseded())
 					return;
 			}
+			this.bytesRead = br.size();
+			if (isSuperseded())
+				return;
+			this.layout = layout;
+			if (indexer != null)
+				indexer.commit();
 			// getHandler().getMasterSet().build();
 			index = readTimeStamps(index);
 			ImageGroups.load(getResult(), list.getName());
@@ -278,46 +479,546 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 	}
 
 	/**
+	 * Loads all images from a list file by splitting the file into chunks at
+	 * line boundaries and parsing the chunks in parallel. Chunks are added to
+	 * the result in file order, so images get the same indexes they would if
+	 * the list was read one line at a time.
 	 * 
-	 * @param oldSaves
-	 *            a list of autosaved files
-	 * @return the most lastest autosave, if one is desired
-	 */
-	private File checkForAutosave(List<File> oldSaves) {
-		if (oldSaves.size() != 0) {
-			int response = JOptionPane.showConfirmDialog(getHandler().getImageDisplay(),
-					"Autosaves for this file were found, do you want to load that instead?");
-			if (response == JOptionPane.OK_OPTION) {
-				// sort the files from most recent to least recent
-				Collections.sort(oldSaves, new Comparator<File>() {
-
-					@Override
-					public int compare(File arg1, File arg2) {
-
-						// get the time stamp from each file
-						String t1 = arg1.getName().split("(--)|(\\.lst)|(\\.txt)")[1],
-								t2 = arg2.getName().split("(--)|(\\.lst)|(\\.txt)")[1];
-						// parse the stamps into their time (ms since the epoch
-						// 1970)
-						long time1, time2;
-						try {
-							time1 = ILB.TIME_FORMATTER.parse(t1).getTime();
-							time2 = ILB.TIME_FORMATTER.parse(t2).getTime();
-						} catch (ParseException e) {
-							// e.printStackTrace();
-							return -1;
-						}
+	 * @param list
+	 *            the list file to read
+	 * @param baseURL
+	 *            the URL images in the list are found relative to, or null if
+	 *            they are found in the repository
+	 * @param indexed
+	 *            true if the list should be indexed as it's read
+	 */
+	private void loadInParallel(File list, String baseURL, boolean indexed) {
+		ListLayout layout = new ListLayout(list);
+		layout.stamp();
+		try (ListIndex.Writer indexer = indexed ? startIndex(list) : null) {
+			long[] bounds = MappedLineReader.split(list, CHUNK_SIZE);
+			startProgress(bounds[bounds.length - 1]);
+
+			// find the lines naming images in each chunk, so the index of each
+			// chunk's first image is known before the chunk is parsed
+			List<ChunkScanner> scanners = new ArrayList<>();
+			List<ForkJoinTask<List<String>>> scans = new ArrayList<>();
+			for (int c = 0; c + 1 < bounds.length; c++) {
+				scanners.add(new ChunkScanner(list, bounds[c], bounds[c + 1], baseURL, indexer != null));
+				scans.add(PARSERS.submit(scanners.get(c)));
+			}
+
+			List<ForkJoinTask<ArrayList<MetaImage>>> parses = new ArrayList<>();
+			int index = 0;
+			for (ForkJoinTask<List<String>> scan : scans) {
+				List<String> lines = scan.get();
+				parses.add(PARSERS.submit(new ChunkParser(lines, index, baseURL)));
+				index += lines.size();
+			}
+
+			// stitch the chunks back together in file order
+			for (int c = 0; c < parses.size(); c++) {
+				if (isSuperseded()) {
+					for (ForkJoinTask<?> t : parses)
+						t.cancel(false);
+					return;
+				}
+				ArrayList<MetaImage> chunk = parses.get(c).get();
+				long[] offsets = scanners.get(c).offsets;
+				if (indexer != null)
+					indexer.hash(scanners.get(c).crc.getValue(), bounds[c + 1] - bounds[c]);
+				getResult().addAll(chunk);
+				for (int i = 0; i < chunk.size(); i++) {
+					layout.add(chunk.get(i), offsets[2 * i], offsets[2 * i + 1]);
+					if (indexer != null)
+						indexer.add(baseURL, chunk.get(i), offsets[2 * i], offsets[2 * i + 1]);
+				}
+				this.bytesRead = bounds[c + 1];
+				publishNew();
+			}
+			if (isSuperseded())
+				return;
+			this.layout = layout;
+			if (indexer != null)
+				indexer.commit();
+
+			index = readTimeStamps(index);
+			ImageGroups.load(getResult(), list.getName());
+		} catch (InterruptedException e) {
+			// cancelled while waiting on a chunk
+			return;
+		} catch (IOException | ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Loads all images of a list from the list's index, if the list has an up
+	 * to date one.
+	 * 
+	 * @param list
+	 *            the list file to load
+	 * @return true if the list was loaded (or the load cancelled), false if
+	 *         the list has to be read as text
+	 */
+	private boolean loadFromIndex(File list) {
+		try (ListIndex.Reader in = ListIndex.Reader.open(list)) {
+			if (in == null)
+				return false;
+			startProgress(in.size());
+
+			// read the whole index before adding any of it, so a malformed
+			// index can still fall back to the text
+			ListLayout layout = new ListLayout(list);
+			layout.stamp();
+			ArrayList<MetaImage> images = new ArrayList<>();
+			MetaImage i;
+			while ((i = in.next(getReadDir(), images.size())) != null) {
+				images.add(i);
+				layout.add(i, in.lineStart(), in.lineEnd());
+				if (isSuperseded())
+					return true;
+			}
+			if (isSuperseded())
+				return true;
+			getResult().addAll(images);
+			this.layout = layout;
+			this.bytesRead = in.size();
+			publishNew();
+
+			readTimeStamps(images.size());
+			ImageGroups.load(getResult(), list.getName());
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
 
-						// the greater time is presumably closer to the present
-						// (unless someone trolled the autosaves and added some
-						// more recent or in the future)
-						return Long.compare(time1, time2);
+	/**
+	 * Loads all images of a binary list, a block at a time. Images come with
+	 * their Annotations already built from the block's columns, lines the list
+	 * keeps as text are read just as they would be from a text list.
+	 * 
+	 * @param list
+	 *            the binary list to load
+	 * @param baseURL
+	 *            the URL images are found relative to until the list gives
+	 *            one, or null if they're found in the repository
+	 */
+	private void loadFromBinary(File list, String baseURL) {
+		try (BinaryList.Reader in = new BinaryList.Reader(list)) {
+			startProgress(in.size());
+			int index = 0;
+			for (int b = 0; b < in.blocks(); b++) {
+				BinaryList.Block block = in.block(b);
+				for (int i = 0; i < block.size(); i++) {
+					String line = block.getString(i);
+					if (!block.isImage(i) && line.startsWith("#")) {
+						if (baseURL != null)
+							baseURL = line.substring(1).trim();
+						continue;
 					}
-				});
-				return oldSaves.get(0);
+					if (line.length() == 0)
+						continue;
+					String name = block.isImage(i) ? line : line.split("[\t]")[0];
+					if (!isImage(name, baseURL))
+						continue;
+					MetaImage toAdd = baseURL != null ? new URLMetaImage(baseURL, name, index++, line, 0)
+							: new MetaImage(new File(getReadDir(), name), index++, line, 0);
+					if (block.isImage(i))
+						toAdd.getAnnotations().addAll(block.getAnnotations(i));
+					getResult().add(toAdd);
+				}
+				this.bytesRead = in.end(b);
+				publishNew();
+				if (isSuperseded())
+					return;
 			}
+			this.bytesRead = in.size();
+			publishNew();
+			if (isSuperseded())
+				return;
+
+			readTimeStamps(index);
+			ImageGroups.load(getResult(), list.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Loads all images of a sharded list (see {@link ShardedList}), reading
+	 * the shards in parallel. Each shard is read from its index if it has an
+	 * up to date one, otherwise as text, and its images are added to the
+	 * result in the order the manifest names the shards.
+	 * 
+	 * @param list
+	 *            the manifest of the list
+	 * @param urls
+	 *            true if the list is of URLs
+	 */
+	private void loadFromShards(File list, boolean urls) {
+		try {
+			ShardedList shards = ShardedList.read(list);
+			long total = 0;
+			for (int k = 0; k < shards.shards(); k++) {
+				ListLayout.recover(shards.getShard(k));
+				total += shards.getShard(k).length();
+			}
+			startProgress(total);
+
+			// each shard's first image takes the index after the images the
+			// manifest says come before it
+			List<ForkJoinTask<ShardLoader>> loads = new ArrayList<>();
+			int first = 0;
+			for (int k = 0; k < shards.shards(); k++) {
+				loads.add(PARSERS.submit(new ShardLoader(shards.getShard(k), urls, first)));
+				first += shards.getCount(k);
+			}
+
+			int index = 0;
+			for (int k = 0; k < loads.size(); k++) {
+				if (isSuperseded()) {
+					for (ForkJoinTask<?> t : loads)
+						t.cancel(false);
+					return;
+				}
+				ShardLoader shard = loads.get(k).get();
+				// a shard changed since the manifest was written throws off
+				// the indexes of the shards after it, they're read again
+				if (shard.first != index)
+					shard = new ShardLoader(shards.getShard(k), urls, index).call();
+				getResult().addAll(shard.images);
+				shards.setLayout(k, shard.layout);
+				index += shard.images.size();
+				this.bytesRead += shards.getShard(k).length();
+				publishNew();
+			}
+			if (isSuperseded())
+				return;
+			this.shards = shards;
+
+			readTimeStamps(index);
+			ImageGroups.load(getResult(), list.getName());
+		} catch (InterruptedException e) {
+			// cancelled while waiting on a shard
+			return;
+		} catch (IOException | ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Finish rewriting the tail of a list if a crash cut it short (see
+	 * {@link ListLayout#recover(File)}), before the list is read.
+	 * 
+	 * @param list
+	 *            the list file about to be read
+	 */
+	private static void recoverTail(File list) {
+		try {
+			ListLayout.recover(list);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param list
+	 *            the list file about to be read
+	 * @return a writer to index the list with, or null if the index can't be
+	 *         written
+	 */
+	private static ListIndex.Writer startIndex(File list) {
+		try {
+			return new ListIndex.Writer(list);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param list
+	 *            a list of URLs
+	 * @return the base URL given in the comment lines at the top of the list,
+	 *         or an empty string if there is none
+	 */
+	private static String readBaseURL(File list) {
+		String baseURL = "";
+		try (MappedLineReader br = new MappedLineReader(list)) {
+			String line;
+			while ((line = br.readLine()) != null && (line.length() == 0 || line.startsWith("#")))
+				if (line.startsWith("#"))
+					baseURL = line.substring(1).trim();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return baseURL;
+	}
+
+	/**
+	 * @param name
+	 *            the name of an image read from a list
+	 * @param baseURL
+	 *            the URL the image is found relative to, or null if it's found
+	 *            in the repository
+	 * @return true if the name is of a kind of image the ILB can display
+	 */
+	private boolean isImage(String name, String baseURL) {
+		if (baseURL != null)
+			return MetaImage.IMAGE_FILTER.accept(null, name);
+		File f = new File(getReadDir(), name);
+		return MetaImage.IMAGE_FILTER.accept(f, f.getName());
+	}
+
+	/**
+	 * Finds all lines naming an image in a region of a list file
+	 */
+	private class ChunkScanner implements Callable<List<String>> {
+		/** the list file */
+		private final File list;
+		/** where the region starts */
+		private final long from;
+		/** where the region ends */
+		private final long to;
+		/** the base URL of the list, null if not a list of URLs */
+		private final String baseURL;
+		/** where each line found starts and ends, two offsets per line */
+		long[] offsets = new long[256];
+		/** the CRC32 of the region, null if the list isn't being indexed */
+		final CRC32 crc;
+
+		/**
+		 * @param list
+		 *            the list file
+		 * @param from
+		 *            where the region starts
+		 * @param to
+		 *            where the region ends
+		 * @param baseURL
+		 *            the base URL of the list, null if not a list of URLs
+		 * @param hash
+		 *            true if the region should be hashed as it's read
+		 */
+		ChunkScanner(File list, long from, long to, String baseURL, boolean hash) {
+			this.list = list;
+			this.from = from;
+			this.to = to;
+			this.baseURL = baseURL;
+			this.crc = hash ? new CRC32() : null;
+		}
+
+		@Override
+		public List<String> call() throws IOException {
+			ArrayList<String> lines = new ArrayList<>();
+			try (MappedLineReader br = new MappedLineReader(this.list, Charset.defaultCharset(), this.from,
+					this.to)) {
+				br.checksum(this.crc);
+				String line;
+				while ((line = br.readLine()) != null) {
+					if (line.length() == 0 || line.startsWith("#"))
+						continue;
+					if (isImage(line.split("[\t]")[0], this.baseURL)) {
+						int at = 2 * lines.size();
+						if (at + 1 >= this.offsets.length)
+							this.offsets = Arrays.copyOf(this.offsets, 2 * this.offsets.length);
+						this.offsets[at] = br.lineStart();
+						this.offsets[at + 1] = br.lineEnd();
+						lines.add(line);
+					}
+					if (isSuperseded())
+						break;
+				}
+			}
+			return lines;
+		}
+	}
+
+	/**
+	 * Reads the images of one shard of a sharded list
+	 */
+	private class ShardLoader implements Callable<ShardLoader> {
+		/** the shard */
+		private final File shard;
+		/** true if the list is of URLs */
+		private final boolean urls;
+		/** the index of the shard's first image in the whole list */
+		final int first;
+		/** the images of the shard */
+		final ArrayList<MetaImage> images = new ArrayList<>();
+		/** where the images' lines are in the shard, null if it's missing */
+		ListLayout layout;
+
+		/**
+		 * @param shard
+		 *            the shard
+		 * @param urls
+		 *            true if the list is of URLs
+		 * @param first
+		 *            the index of the shard's first image in the whole list
+		 */
+		ShardLoader(File shard, boolean urls, int first) {
+			this.shard = shard;
+			this.urls = urls;
+			this.first = first;
+		}
+
+		@Override
+		public ShardLoader call() throws IOException {
+			// a shard with no images may never have been written
+			if (!this.shard.isFile())
+				return this;
+			this.layout = new ListLayout(this.shard);
+			this.layout.stamp();
+			if (listIndex && readIndex())
+				return this;
+
+			String baseURL = this.urls ? "" : null;
+			try (MappedLineReader br = new MappedLineReader(this.shard);
+					ListIndex.Writer indexer = listIndex ? startIndex(this.shard) : null) {
+				if (indexer != null)
+					indexer.hash(br);
+				String line;
+				while ((line = br.readLine()) != null) {
+					if (line.startsWith("#")) {
+						if (baseURL != null)
+							baseURL = line.substring(1).trim();
+						continue;
+					}
+					if (line.length() == 0)
+						continue;
+					String name = line.split("[\t]")[0];
+					if (!isImage(name, baseURL))
+						continue;
+					int index = this.first + this.images.size();
+					MetaImage i = baseURL != null ? new URLMetaImage(baseURL, name, index, line, 0)
+							: new MetaImage(new File(getReadDir(), name), index, line, 0);
+					this.images.add(i);
+					this.layout.add(i, br.lineStart(), br.lineEnd());
+					if (indexer != null)
+						indexer.add(baseURL, i, br.lineStart(), br.lineEnd());
+					if (isSuperseded())
+						return this;
+				}
+				if (indexer != null && !isSuperseded())
+					indexer.commit();
+			}
+			return this;
+		}
+
+		/**
+		 * Read the shard from its index, if it has an up to date one.
+		 * 
+		 * @return true if the shard was read, false if it has to be read as
+		 *         text
+		 */
+		private boolean readIndex() {
+			try (ListIndex.Reader in = ListIndex.Reader.open(this.shard)) {
+				if (in == null)
+					return false;
+				MetaImage i;
+				while ((i = in.next(getReadDir(), this.first + this.images.size())) != null) {
+					this.images.add(i);
+					this.layout.add(i, in.lineStart(), in.lineEnd());
+					if (isSuperseded())
+						return true;
+				}
+				return true;
+			} catch (IOException e) {
+				e.printStackTrace();
+				this.images.clear();
+				this.layout = new ListLayout(this.shard);
+				this.layout.stamp();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Builds the MetaImages for the image lines of one chunk of a list file
+	 */
+	private class ChunkParser implements Callable<ArrayList<MetaImage>> {
+		/** the lines naming images in the chunk */
+		private final List<String> lines;
+		/** the index of the chunk's first image in the whole list */
+		private final int first;
+		/** the base URL of the list, null if not a list of URLs */
+		private final String baseURL;
+
+		/**
+		 * @param lines
+		 *            the lines naming images in the chunk
+		 * @param first
+		 *            the index of the chunk's first image in the whole list
+		 * @param baseURL
+		 *            the base URL of the list, null if not a list of URLs
+		 */
+		ChunkParser(List<String> lines, int first, String baseURL) {
+			this.lines = lines;
+			this.first = first;
+			this.baseURL = baseURL;
+		}
+
+		@Override
+		public ArrayList<MetaImage> call() {
+			ArrayList<MetaImage> images = new ArrayList<>(this.lines.size());
+			int index = this.first;
+			for (String line : this.lines) {
+				if (isSuperseded())
+					break;
+				String name = line.split("[\t]")[0];
+				if (this.baseURL != null)
+					images.add(new URLMetaImage(this.baseURL, name, index++, line, 0));
+				else
+					images.add(new MetaImage(new File(getReadDir(), name), index++, line, 0));
+			}
+			return images;
+		}
+	}
+
+	/**
+	 * Prepare the progress bar for reading a list file, progress through a list
+	 * is measured in bytes read rather than lines so the list doesn't need to
+	 * be read an extra time just to count its lines.
+	 * 
+	 * @param bytes
+	 *            the size of the list file being read
+	 */
+	private void startProgress(long bytes) {
+		this.bytesTotal = bytes;
+		this.bytesRead = 0;
+		getHandler().getProgressBar().prog.setMaximum(PROGRESS_SCALE);
+		getHandler().getProgressBar().prog.setValue(0);
+	}
+
+	/**
+	 * Replay the edits journaled since the list was last saved (see
+	 * {@link EditJournal}) on top of the images just read, if the user wants
+	 * them back.
+	 */
+	private void checkForAutosave() {
+		File journal = EditJournal.fileFor(new File(ILB.TMP), getReadList());
+		if (isSuperseded() || !EditJournal.hasEdits(journal))
+			return;
+		int response = JOptionPane.showConfirmDialog(getHandler().getImageDisplay(),
+				"Unsaved edits to this list were found, do you want to recover them?");
+		if (response != JOptionPane.OK_OPTION)
+			return;
+		List<MetaImage> before = new ArrayList<>(getResult());
+		try {
+			this.recovered = EditJournal.replay(journal, getResult());
+			this.recovering = true;
+			if (getResult().size() != before.size()) {
+				Set<MetaImage> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+				kept.addAll(getResult());
+				before.removeIf(kept::contains);
+				this.recoveredRemovals = before;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		return null;
 	}
 
 	/**
@@ -330,49 +1031,51 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 	@SuppressWarnings("boxing")
 	public int readTimeStamps(int index) {
 		// read timestamps to reset previous list order and access dates
-		File timeFile = new File("timestamps" + File.separator + getReadList().getName());
-		HashMap<String, Pair<Long, Integer>> dateMap = new HashMap<>();
-		if (timeFile.exists())
-			try (BufferedReader tr = new BufferedReader(new FileReader(timeFile))) {
-				String time;
-				Long value;
-				String key;
-				int cnt = 0;
-				while ((time = tr.readLine()) != null) {
-					value = Long.valueOf(time.split("[\t]")[0]);
-					key = time.split("[\t]", 2)[1];
-					dateMap.put(key, new Pair<>(value, cnt++));
-				}
-				for (MetaImage i : getResult()) {
-					if (dateMap.containsKey(i.toString())) {
-						i.setDate(dateMap.get(i.toString()).x);
-						i.setIndexCur(dateMap.get(i.toString()).y);
-						i.setIndexAlt(i.getIndexCur());
-					}
-				}
-			} catch (IOException e1) {
-				e1.printStackTrace();
-			}
+		this.timeStamps = new TimeStampStore(getReadList().getName());
+		for (MetaImage i : getResult())
+			this.timeStamps.apply(i);
 		return index;
 	}
 
-	@SuppressWarnings("boxing")
+	/**
+	 * Publish the images added to the result since the last time this was
+	 * called, so they can be appended to the Handler's master list.
+	 */
+	private void publishNew() {
+		int size = getResult().size();
+		if (size == this.published)
+			return;
+		publish(getResult().subList(this.published, size).toArray(new MetaImage[size - this.published]));
+		this.published = size;
+	}
+
 	@Override
-	protected final void process(List<Void> a) {
-		if (isCancelled()) {
+	protected final void process(List<MetaImage> a) {
+		// images from a superseded load arrive after the new load has begun
+		if (isSuperseded()) {
 			return;
 		}
-		getHandler().setMasterListPartial(getResult());
+		getHandler().appendToMasterList(a);
 
-		getHandler().getProgressBar().prog.setValue(getHandler().getMasterList().size());
-		getHandler().getProgressBar().message.setText("Loaded " + getHandler().getProgressBar().prog.getValue() + " of "
-				+ getHandler().getProgressBar().prog.getMaximum() + " images.");
+		if (this.bytesTotal > 0) {
+			int read = (int) (PROGRESS_SCALE * this.bytesRead / this.bytesTotal);
+			getHandler().getProgressBar().prog.setValue(read);
+			getHandler().getProgressBar().message.setText("Loaded " + getHandler().getMasterList().size()
+					+ " images (" + read * 100 / PROGRESS_SCALE + "% of list read).");
+		} else {
+			getHandler().getProgressBar().message
+					.setText("Loaded " + getHandler().getMasterList().size() + " images so far.");
+		}
 		getHandler().getProgressBar().prog.setVisible(true);
 	}
 
 	@Override
 	protected void done() {
-		long t = System.currentTimeMillis();
+		// a newer load owns the handler now, what this one found is dropped
+		if (isSuperseded()) {
+			super.done();
+			return;
+		}
 		final JProgressBar prog = getHandler().getProgressBar().prog;
 		final JLabel message = getHandler().getProgressBar().message;
 		SwingUtilities.invokeLater(new Runnable() {
@@ -380,45 +1083,78 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 			@Override
 			public void run() {
 				prog.setVisible(false);
+				prog.setIndeterminate(false);
 				message.setText("");
 
 			}
 		});
 
-		if (this.isCancelled()) {
-			getHandler().setMasterList(new ArrayListModel<MetaImage>());
-			prog.setValue(0);
-			message.setText("Cancelled loading.");
-			getHandler().setLoading(false);
-			super.done();
-
-			return;
-		}
 		prog.setValue(prog.getMaximum());
-		message.setText("Loaded " + prog.getValue() + " of " + prog.getMaximum() + " images.");
+		message.setText("Loaded " + getResult().size() + " images.");
 
 		// set new master list
+		getHandler().setTimeStamps(this.timeStamps);
 		getHandler().setMasterList(getResult());
+		getHandler().setListLayout(this.layout);
+		getHandler().setShardedList(this.shards);
 		getHandler().reindex(true);
 		for (MetaImage i : getHandler().getMasterList())
 			i.launchFileMetaDataLoad();
 		getHandler().setLoading(false);
 		super.done();
 
+		if (getReadDir() == null && getReadList() != null && URLDiskCache.enabled)
+			prefetch(getHandler().getMasterList());
+
 		sanitizeAutosaves();
+
+		// journal the list from here on, starting with the edits recovered,
+		// the journal they were recovered from is kept until they're flushed
+		getHandler().startJournal(this.recovering);
+		for (MetaImage i : this.recoveredRemovals)
+			getHandler().setImageRemoved(i);
+		for (MetaImage i : this.recovered)
+			getHandler().setImageChanged(i);
+		if (this.recovering)
+			getHandler().flushJournal();
+	}
+
+	/**
+	 * Fetch the images of a URL list into the disk cache in the background, in
+	 * the order they're shown, so they're on disk by the time they're looked
+	 * at.
+	 * 
+	 * @param images
+	 *            the images of the list
+	 */
+	private static void prefetch(List<MetaImage> images) {
+		List<URL> urls = new ArrayList<>(images.size());
+		for (MetaImage i : images) {
+			if (!(i instanceof URLMetaImage))
+				continue;
+			try {
+				urls.add(new URL(((URLMetaImage) i).getBaseURL() + i.getName()));
+			} catch (MalformedURLException e) {
+				System.err.println(e.getMessage());
+			}
+		}
+		URLFetcher.shared().prefetch(urls);
 	}
 
 	/***
 	 * Delete unneeded autosaves
 	 */
 	private void sanitizeAutosaves() {
-		// Sanitize the old autosaves for this list since the user loaded a new
-		// list ignoring them.
+		// Sanitize the old autosaves and journal of this list, whatever the
+		// user wanted recovered from them has been by now. A journal edits
+		// were recovered from is kept until they're journaled again.
 		if (getReadList() != null) {
+			final File journal = EditJournal.fileFor(new File(ILB.TMP), getReadList());
 			File[] list = new File(ILB.TMP).listFiles(new FileFilter() {
 				@Override
 				public boolean accept(File arg0) {
-					return arg0.getName().startsWith(getReadList().getName());
+					return arg0.getName().startsWith(getReadList().getName())
+							&& !(ListReader.this.recovering && arg0.getName().equals(journal.getName()));
 				}
 			});
 
@@ -458,70 +1194,217 @@ public class ListReader extends SwingWorker<ArrayList<MetaImage>, Void> {
 	}
 
 	/**
+	 * Loads the annotations of an extra list as alternative annotations of the
+	 * images already loaded. The list is split into chunks that are parsed in
+	 * parallel, and the chunks are merged by image name in file order on the
+	 * worker. Nothing is attached to the images until the whole list is read,
+	 * then each name is looked up in the master list's name index (see
+	 * {@link ArrayListModel#getByName(String)}) and every image's slot for the
+	 * list is filled in one pass on the event dispatch thread, which owns the
+	 * master list. The slots are added, empty, before the list is read, so
+	 * the alternative lists of all images stay aligned with the extra list
+	 * files even if a list is removed while this one is read.
+	 * 
 	 * @param h
 	 *            the handler giving access to the images
 	 * @param newList
 	 *            the file containing the additional annotations
 	 * @param newlistidx
-	 *            the index of the new list in the extra lists List.
+	 *            the index of the new list in the extra lists List, the slot
+	 *            of each image's alternative annotations it fills
 	 * @param addList
 	 *            the menu that should be disabled while the worker is running.
 	 */
 	public static void loadExtraList(ImageHandler h, File newList, int newlistidx, AddList addList) {
-		SwingWorker<Void, Integer> newWorker = new SwingWorker<Void, Integer>() {
+		for (MetaImage i : h.getMasterList())
+			i.getAlternativeAnnotations().add(lazyAnnotations ? new LazyAnnotationList() : new ArrayList<Annotation>());
+
+		SwingWorker<Map<String, ArrayList<Annotation>>, Integer> newWorker = new SwingWorker<Map<String, ArrayList<Annotation>>, Integer>() {
+			/** each line of the list that doesn't parse, by its line number */
+			private final ArrayList<String> problems = new ArrayList<>();
+
+			@SuppressWarnings("boxing")
 			@Override
-			protected Void doInBackground() throws Exception {
-				try (BufferedReader br = new BufferedReader(new FileReader(newList))) {
-					for (MetaImage i : h.getMasterList())
-						i.getAlternativeAnnotations().add(new ArrayList<>());
-					int cnt = 0;
-					int percent = h.getMasterList().getSize() / 100;
-					if (percent <= 0)
-						percent = 1;
-					String line;
-
-					while ((line = br.readLine()) != null) {
-						String name = line.split("[\t]")[0];
-						MetaImage image = h.getMasterList().getByName(name);
-						if (image != null)
-							image.getAlternativeAnnotations().get(newlistidx)
-									.addAll(Annotation.parseAnnotationList(line));
-	
-						if (cnt % percent == 0) {
-							publish(cnt);
-						} 
-						cnt++;
-					}
+			protected Map<String, ArrayList<Annotation>> doInBackground() throws Exception {
+				ListLayout.recover(newList);
+				long[] bounds = MappedLineReader.split(newList, CHUNK_SIZE);
+				long total = Math.max(1, bounds[bounds.length - 1]);
+				List<ForkJoinTask<ExtraChunk>> parses = new ArrayList<>();
+				for (int c = 0; c + 1 < bounds.length; c++)
+					parses.add(PARSERS.submit(new ExtraChunk(newList, bounds[c], bounds[c + 1])));
 
+				// merge the chunks in file order, so an image named on several
+				// lines gets its annotations in the order they're listed
+				Map<String, ArrayList<Annotation>> alts = new HashMap<>();
+				int firstLine = 1;
+				for (int c = 0; c < parses.size(); c++) {
+					ExtraChunk chunk = parses.get(c).get();
+					for (int j = 0; j < chunk.badLines.size(); j++)
+						this.problems.add(newList.getName() + ":" + (firstLine + chunk.badLines.get(j)) + ": "
+								+ chunk.problems.get(j));
+					firstLine += chunk.lineCount;
+					for (int j = 0; j < chunk.names.size(); j++) {
+						String name = chunk.names.get(j);
+						ArrayList<Annotation> alt = alts.get(name);
+						if (alt == null && chunk.store != null) {
+							alts.put(name, new LazyAnnotationList(chunk.store, chunk.rows[j], chunk.rows[j + 1]));
+							continue;
+						}
+						if (alt == null) {
+							alt = lazyAnnotations ? new LazyAnnotationList() : new ArrayList<Annotation>();
+							alts.put(name, alt);
+						}
+						if (chunk.store != null)
+							alt.addAll(chunk.store.get(chunk.rows[j], chunk.rows[j + 1]));
+						else if (alt instanceof LazyAnnotationList)
+							((LazyAnnotationList) alt).appendText(chunk.lines.get(j));
+						else
+							alt.addAll(chunk.notes.get(j));
+					}
+					publish((int) (PROGRESS_SCALE * bounds[c + 1] / total));
 				}
-				return null;
+				return alts;
 			}
 
 			@SuppressWarnings("boxing")
 			@Override
 			protected final void process(List<Integer> a) {
-				for (Integer i : a) {
-					h.getProgressBar().prog.setValue(i);
-					h.getProgressBar().message.setText("Loaded " + h.getProgressBar().prog.getValue() + " of "
-							+ h.getProgressBar().prog.getMaximum() + " images.");
-					h.getProgressBar().prog.setVisible(true);
-				}
+				int read = a.get(a.size() - 1);
+				h.getProgressBar().prog.setValue(read);
+				h.getProgressBar().message
+						.setText("Read " + read * 100 / PROGRESS_SCALE + "% of " + newList.getName() + ".");
+				h.getProgressBar().prog.setVisible(true);
 			}
 
 			@Override
 			protected void done() {
-				SwingUtilities.invokeLater(new Runnable() {
-					@Override
-					public void run() {
-						h.getProgressBar().prog.setVisible(false);
-						h.getProgressBar().message.setText("");
-						addList.setEnabled(true);
+				Map<String, ArrayList<Annotation>> alts = Collections.emptyMap();
+				try {
+					alts = get();
+				} catch (InterruptedException | ExecutionException e) {
+					e.printStackTrace();
+				}
+				// an earlier list removed while this one was read moves its
+				// slot, and if this list was removed there's nothing to fill
+				int idx = newlistidx;
+				List<File> files = h.getOptionalListFiles();
+				if (idx >= files.size() || files.get(idx) != newList)
+					idx = files.indexOf(newList);
+				if (idx >= 0)
+					for (Map.Entry<String, ArrayList<Annotation>> e : alts.entrySet()) {
+						MetaImage i = h.getMasterList().getByName(e.getKey());
+						if (i != null && idx < i.getAlternativeAnnotations().size())
+							i.getAlternativeAnnotations().set(idx, e.getValue());
 					}
-				});
+				if (!this.problems.isEmpty()) {
+					for (String p : this.problems)
+						System.err.println(p);
+					JOptionPane.showMessageDialog(h.getImageDisplay(),
+							this.problems.size() + " line(s) couldn't be read and were left out, the first:\n"
+									+ this.problems.get(0),
+							"Extra list", JOptionPane.WARNING_MESSAGE);
+				}
+				h.getProgressBar().prog.setVisible(false);
+				h.getProgressBar().message.setText("");
+				addList.setEnabled(true);
+				h.getImageDisplay().repaint();
 			}
 		};
+		h.getProgressBar().prog.setMaximum(PROGRESS_SCALE);
+		h.getProgressBar().prog.setValue(0);
 		addList.setEnabled(false);
 		newWorker.execute();
 
 	}
+
+	/**
+	 * Parses one chunk of an extra list, keeping the image named on each line
+	 * (and, unless annotations are parsed lazily, the parsed annotations of
+	 * the line, packed into the chunk's store if annotations are packed).
+	 * Comments and blank lines are skipped. Every line is parsed, even if
+	 * annotations are parsed lazily, so a line that doesn't parse is left out
+	 * and recorded as a problem the same way in either case.
+	 */
+	@SuppressWarnings("serial")
+	private static class ExtraChunk extends RecursiveTask<ExtraChunk> {
+		/** the extra list */
+		private final File list;
+		/** where the chunk starts */
+		private final long from;
+		/** where the chunk ends */
+		private final long to;
+		/** the name of the image on each kept line */
+		final ArrayList<String> names = new ArrayList<>();
+		/** the kept lines, only filled if annotations are parsed lazily */
+		final ArrayList<String> lines = new ArrayList<>();
+		/** the annotations of each kept line, unless parsed lazily or packed */
+		final ArrayList<List<Annotation>> notes = new ArrayList<>();
+		/** the number of lines in the chunk */
+		int lineCount;
+		/** the line in the chunk, counting from 0, of each line left out */
+		final ArrayList<Integer> badLines = new ArrayList<>();
+		/** why each line left out doesn't parse */
+		final ArrayList<String> problems = new ArrayList<>();
+		/** the annotations of the kept lines if they're packed, else null */
+		final AnnotationStore store = !lazyAnnotations && packedAnnotations ? new AnnotationStore() : null;
+		/**
+		 * if packed, the annotations of kept line j are the rows [rows[j],
+		 * rows[j+1]) of the store
+		 */
+		int[] rows;
+
+		/**
+		 * @param list
+		 *            the extra list
+		 * @param from
+		 *            where the chunk starts
+		 * @param to
+		 *            where the chunk ends
+		 */
+		ExtraChunk(File list, long from, long to) {
+			this.list = list;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected ExtraChunk compute() {
+			try (MappedLineReader br = new MappedLineReader(this.list, Charset.defaultCharset(), this.from,
+					this.to)) {
+				ArrayList<Integer> starts = new ArrayList<>();
+				String line;
+				while ((line = br.readLine()) != null) {
+					int at = this.lineCount++;
+					if (line.length() == 0 || line.startsWith("#"))
+						continue;
+					ArrayList<Annotation> notes;
+					try {
+						notes = Annotation.parseAnnotationList(line);
+					} catch (IllegalArgumentException e) {
+						this.badLines.add(Integer.valueOf(at));
+						this.problems.add(e.getMessage());
+						continue;
+					}
+					int tab = line.indexOf('\t');
+					this.names.add(tab < 0 ? line : line.substring(0, tab));
+					if (lazyAnnotations)
+						this.lines.add(line);
+					else if (this.store != null)
+						starts.add(Integer.valueOf(this.store.addAll(notes)));
+					else
+						this.notes.add(notes);
+				}
+				if (this.store != null) {
+					this.store.trimToSize();
+					this.rows = new int[starts.size() + 1];
+					for (int j = 0; j < starts.size(); j++)
+						this.rows[j] = starts.get(j).intValue();
+					this.rows[starts.size()] = this.store.size();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return this;
+		}
+	}
 }
@@ -0,0 +1,298 @@
+package ilb;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import struct.MetaImage;
+
+/**
+ * Watches the repository an ImageHandler is showing and applies images being
+ * added, removed, or changed to the handler as they happen, instead of the
+ * whole repository having to be loaded again.
+ * <p>
+ * Changes are collected until the repository has been quiet for
+ * {@value #QUIET}ms (or for at most {@value #MAX_DELAY}ms while changes keep
+ * coming) and are then applied together on the event dispatch thread. A file
+ * is judged by its state when the batch is applied rather than by the events
+ * seen for it, so a file that is created then written to several times is
+ * added once, and a file created and deleted within a batch is ignored.
+ * <p>
+ * Only repositories are watched, not list files, since the images of a list
+ * are whatever the list says they are. If {@link ListReader#recursiveScan} is
+ * set sub-directories are watched as well, including ones created after the
+ * watch begins. If the watch service loses track of events the repository is
+ * loaded again from scratch.
+ *
+ * @author bonifantmc
+ *
+ */
+public class RepositoryWatcher implements Runnable, Closeable {
+	/** how long the repository must be quiet before changes are applied, ms */
+	private static final long QUIET = 500;
+	/** the longest changes are held before they're applied, ms */
+	private static final long MAX_DELAY = 3000;
+
+	/** If true repositories are watched for changes once loaded */
+	public static boolean watchRepository = false;
+
+	/** the handler showing the repository */
+	private final ImageHandler handler;
+	/** the repository */
+	private final Path root;
+	/** true if sub-directories are watched too */
+	private final boolean recursive;
+	/** the mask image names must match */
+	private final PathMatcher glob;
+	/** the service the repository is watched with */
+	private final WatchService service;
+	/** the directory each key watches */
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+	/**
+	 * the paths changed since the last batch was applied, true if the path
+	 * was only modified (not created or deleted)
+	 */
+	private final Map<Path, Boolean> pending = new LinkedHashMap<>();
+	/** true if events were lost since the last batch was applied */
+	private boolean overflow;
+	/** set once the watch is over */
+	private volatile boolean closed;
+
+	/**
+	 * Begin watching the repository of a handler.
+	 *
+	 * @param h
+	 *            the handler to watch for
+	 * @return the watcher, or null if the repository can't be watched
+	 */
+	static RepositoryWatcher start(ImageHandler h) {
+		try {
+			RepositoryWatcher w = new RepositoryWatcher(h);
+			Thread t = new Thread(w, "Repository Watcher");
+			t.setDaemon(true);
+			t.start();
+			return w;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param h
+	 *            the handler to watch for
+	 * @throws IOException
+	 *             if the repository can't be watched
+	 */
+	private RepositoryWatcher(ImageHandler h) throws IOException {
+		this.handler = h;
+		this.root = h.getDirectory().toPath();
+		this.recursive = ListReader.recursiveScan;
+		String mask = h.getPattern() == null ? "*" : h.getPattern();
+		this.glob = this.root.getFileSystem().getPathMatcher("glob:" + mask);
+		this.service = this.root.getFileSystem().newWatchService();
+		if (this.recursive)
+			registerTree(this.root, false);
+		else
+			register(this.root);
+	}
+
+	/**
+	 * @param dir
+	 *            a directory to watch
+	 * @throws IOException
+	 *             if the directory can't be watched
+	 */
+	private void register(Path dir) throws IOException {
+		this.keys.put(dir.register(this.service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+	}
+
+	/**
+	 * Watch a directory and all of its sub-directories
+	 *
+	 * @param dir
+	 *            the directory
+	 * @param created
+	 *            true if the directory was just created, in which case any
+	 *            files already in it are treated as created too (they may have
+	 *            been put there before the directory was watched)
+	 * @throws IOException
+	 *             if the directories can't be walked
+	 */
+	private void registerTree(Path dir, final boolean created) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+				register(d);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (created)
+					RepositoryWatcher.this.pending.put(file, Boolean.FALSE);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				e.printStackTrace();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		long first = 0;
+		while (!this.closed) {
+			WatchKey key;
+			try {
+				if (this.pending.isEmpty() && !this.overflow)
+					key = this.service.take();
+				else
+					key = this.service.poll(QUIET, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			if (key != null) {
+				collect(key);
+				if (first == 0)
+					first = System.currentTimeMillis();
+				// keep collecting while changes are still coming
+				if (System.currentTimeMillis() - first < MAX_DELAY)
+					continue;
+			}
+			if (flush())
+				first = 0;
+		}
+	}
+
+	/**
+	 * Add the events of a key to the pending changes.
+	 *
+	 * @param key
+	 *            a key with events
+	 */
+	private void collect(WatchKey key) {
+		Path dir = this.keys.get(key);
+		for (WatchEvent<?> e : key.pollEvents()) {
+			if (e.kind() == OVERFLOW || dir == null) {
+				this.overflow = true;
+				continue;
+			}
+			Path p = dir.resolve((Path) e.context());
+			if (this.recursive && e.kind() == ENTRY_CREATE && Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+				try {
+					registerTree(p, true);
+				} catch (IOException ex) {
+					ex.printStackTrace();
+				}
+				continue;
+			}
+			Boolean modifiedOnly = this.pending.get(p);
+			boolean modified = e.kind() == ENTRY_MODIFY && (modifiedOnly == null || modifiedOnly.booleanValue());
+			this.pending.put(p, Boolean.valueOf(modified));
+		}
+		if (!key.reset())
+			this.keys.remove(key);
+	}
+
+	/**
+	 * Work out what the pending changes mean for the handler's images and
+	 * apply them on the event dispatch thread.
+	 *
+	 * @return true if the pending changes were applied, false if they're being
+	 *         held until the handler is done loading
+	 */
+	private boolean flush() {
+		if (this.handler.isLoading())
+			return false;
+
+		if (this.overflow) {
+			this.overflow = false;
+			this.pending.clear();
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					RepositoryWatcher.this.handler.load();
+				}
+			});
+			return true;
+		}
+
+		final List<MetaImage> found = new ArrayList<>();
+		final Map<MetaImage, BufferedImage> reread = new HashMap<>();
+		final List<String> removed = new ArrayList<>();
+		for (Entry<Path, Boolean> change : this.pending.entrySet()) {
+			Path p = change.getKey();
+			String name = this.root.relativize(p).toString();
+			if (Files.isRegularFile(p)) {
+				File f = p.toFile();
+				if (!this.glob.matches(p.getFileName()) || !MetaImage.IMAGE_FILTER.accept(f, f.getName()))
+					continue;
+				MetaImage i = new MetaImage(f, 0);
+				if (this.recursive)
+					i.setName(name);
+				found.add(i);
+				// read changed images here so the display isn't held up
+				if (change.getValue().booleanValue())
+					try {
+						BufferedImage b = i.readImage();
+						if (b != null)
+							reread.put(i, b);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+			} else if (!Files.exists(p, LinkOption.NOFOLLOW_LINKS))
+				removed.add(name);
+		}
+		this.pending.clear();
+
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (!RepositoryWatcher.this.closed)
+					RepositoryWatcher.this.handler.applyRepositoryChanges(found, reread, removed);
+			}
+		});
+		return true;
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		try {
+			this.service.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
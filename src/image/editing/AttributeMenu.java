@@ -463,7 +463,7 @@ public class AttributeMenu extends JPanel implements MetaImageChangeListener {
 				}
 
 				this.a.fireListener();
-				editImage.getHandler().setMasterListChanged(true);
+				editImage.getHandler().setImageChanged(editImage.getMetaImage());
 				// AttributeMenu.this.editImage.pack();
 			}
 		}
@@ -651,7 +651,7 @@ public class AttributeMenu extends JPanel implements MetaImageChangeListener {
 									box.setSelected(true);
 
 						}
-						editImage.getHandler().setMasterListChanged(true);
+						editImage.getHandler().setImageChanged(editImage.getMetaImage());
 						AttributeCheckBoxGroup.this.annot.fireListener();
 					}
 				});
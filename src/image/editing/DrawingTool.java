@@ -152,7 +152,7 @@ public class DrawingTool extends MouseAdapter {
 	public void cleanMasterSet() {
 		getEditImage().h.sort();
 		getEditImage().repaint();
-		getEditImage().h.setMasterListChanged(true);
+		getEditImage().h.setImageChanged(getEditImage().getMetaImage());
 	}
 
 	/**
@@ -240,6 +240,10 @@ public class EditImage extends JFrame {
 			a.isDragEdgeVisible = false;
 		}
 		this.metaImage.setDate(System.currentTimeMillis());
+		this.getHandler().dateChanged(this.metaImage);
+		// not every edit made here reports itself, so the image left is saved
+		// as if it changed
+		this.getHandler().setImageTouched(this.metaImage);
 		this.getHandler().firePropertyChange(Property.tally, null);
 
 		this.metaImage = i;
@@ -17,6 +17,7 @@ import java.util.regex.Pattern;
 import javax.swing.JMenuItem;
 
 import annotations.Annotation;
+import annotations.Category;
 import fm.FaceMatchImageMatchForm;
 import ilb.ImageHandler;
 
@@ -59,15 +60,21 @@ public class AnnotationGroups implements Group {
 
 		clear();
 
+		// categories are interned, so each category's group is looked up by
+		// its label only once, the first time it's seen
+		HashMap<Category, NLMSThumbnails> groups = new HashMap<>();
 		for (MetaImage m : h.getMasterList())
 			if (m.getAnnotations().size() == 0)
 				addThumbnail(UNANNOTATED, new ImageAnnotationPair(m, null));
 			else
-				for (Annotation a : m.getAnnotations())
-					if (a.getCategory().toString().equals(UNTAGGED))
-						addThumbnail(UNTAGGED, new ImageAnnotationPair(m, a));
-					else
-						addThumbnail(a.getCategory().toString(), new ImageAnnotationPair(m, a));
+				for (Annotation a : m.getAnnotations()) {
+					NLMSThumbnails group = groups.get(a.getCategory());
+					if (group == null) {
+						group = get(a.getCategory().toString());
+						groups.put(a.getCategory(), group);
+					}
+					group.add(new ImageAnnotationPair(m, a));
+				}
 
 		System.out.println("annotation group build done: " + (System.currentTimeMillis() - t) + "ms");
 		h.firePropertyChange(getProperty(), null);
@@ -87,8 +94,10 @@ public class AnnotationGroups implements Group {
 		if (prefix < 0)
 			return;
 
+		ArrayList<MetaImage> tagged = new ArrayList<>();
 		for (MetaImage i : h.getMasterList())
 			if (i.getAnnotations().size() > 0) {
+				tagged.add(i);
 				String id;
 				if (prefix > i.getName().length())
 					id = i.getName().substring(0, i.getName().length());
@@ -96,11 +105,11 @@ public class AnnotationGroups implements Group {
 					id = i.getName().substring(0, prefix);
 
 				if (i.getAnnotations().size() == 1) {
-					i.getAnnotations().get(0).getCategory().setIDString(id);
+					i.getAnnotations().get(0).setCategory(id);
 				} else {
 					int cnt = 0;
 					for (Annotation a : i.getAnnotations()) {
-						a.getCategory().setIDString(id + "." + cnt);
+						a.setCategory(id + "." + cnt);
 						cnt++;
 					}
 
@@ -108,7 +117,7 @@ public class AnnotationGroups implements Group {
 			}
 
 		build();
-		h.setMasterListChanged(true);
+		h.setImagesChanged(tagged);
 		h.firePropertyChange(Property.imageGroups, null);
 
 	}
@@ -129,8 +138,10 @@ public class AnnotationGroups implements Group {
 		// regex and the MetaImage's name.
 		Pattern p = Pattern.compile(regex);
 
+		ArrayList<MetaImage> tagged = new ArrayList<>();
 		for (MetaImage i : h.getMasterList())
 			if (i.getAnnotations().size() > 0) {
+				tagged.add(i);
 				String prefix = i.getGroupsString(p);
 
 				if (i.getAnnotations().size() > 1) {
@@ -144,7 +155,7 @@ public class AnnotationGroups implements Group {
 			}
 		// rebuild the set
 		build();
-		h.setMasterListChanged(true);
+		h.setImagesChanged(tagged);
 		h.firePropertyChange(Property.imageGroups, null);
 	}
 
@@ -306,6 +317,7 @@ public class AnnotationGroups implements Group {
 	public void buildFromRankings() {
 
 		// find each image's best match
+		ArrayList<MetaImage> tagged = new ArrayList<>();
 		for (MetaImage i : this.h.getMasterList()) {
 			for (int j = 0; j < i.getAnnotations().size(); j++) {
 
@@ -326,10 +338,12 @@ public class AnnotationGroups implements Group {
 					continue;
 				// set the category of i to it's best match
 				i.getAnnotations().get(j).setCategory(bestMatch.x.getName() + "-" + bestMatch.index);
+				if (tagged.isEmpty() || tagged.get(tagged.size() - 1) != i)
+					tagged.add(i);
 			}
 		}
 		build();
-		this.h.setMasterListChanged(true);
+		this.h.setImagesChanged(tagged);
 
 	}
 
@@ -394,8 +408,12 @@ public class AnnotationGroups implements Group {
 	 */
 	public void changeKey(String oldName, String newName) {
 		NLMSThumbnails list = this.map.remove(oldName);
-		for (Thumbnail i : list)
-			Annotation.renameTag(oldName, newName, i.getAnnotations());
+		Category oldTag = Category.find(oldName, 'd');
+		if (oldTag != null) {
+			Category newTag = Category.of(newName, 'd');
+			for (Thumbnail i : list)
+				Annotation.renameTag(oldTag, newTag, i.getAnnotations());
+		}
 		this.map.put(newName, list);
 
 	}
@@ -412,7 +430,8 @@ public class AnnotationGroups implements Group {
 		ImageAnnotationPair p = (ImageAnnotationPair) m;
 		get(newKey);
 		this.map.get(p.y.getCategory().toString()).remove(p);
-		p.y.getCategory().setIDString(newKey);
+		p.y.setCategory(newKey);
+		h.setImageChanged(p.x);
 		this.map.get(newKey).add(p);
 		h.firePropertyChange(Property.annotationGroups, null);
 		h.firePropertyChange(Property.displayArea, null);
@@ -421,9 +440,13 @@ public class AnnotationGroups implements Group {
 	@Override
 	public void nearDupSort(String nearDupOutput) {
 		// void out old grouping
+		ArrayList<MetaImage> tagged = new ArrayList<>();
 		for (MetaImage i : this.h.getMasterList())
-			for (Annotation a : i.getAnnotations())
-				a.getCategory().setIDString(null);
+			if (i.getAnnotations().size() > 0) {
+				tagged.add(i);
+				for (Annotation a : i.getAnnotations())
+					a.setCategory(Category.UNTAGGED);
+			}
 
 		// convert string result to adjacency lists of metaimages
 		ArrayList<ArrayList<MetaImage>> groups = new ArrayList<>();
@@ -440,7 +463,7 @@ public class AnnotationGroups implements Group {
 		}
 		build();
 
-		h.setMasterListChanged(true);
+		h.setImagesChanged(tagged);
 		h.firePropertyChange(Property.imageGroups, null);
 	}
 
@@ -456,24 +479,24 @@ public class AnnotationGroups implements Group {
 	 */
 	private void addAndassignID(ArrayList<ArrayList<MetaImage>> groups, ArrayList<MetaImage> toAdd) {
 		int id = groups.size();
-		String ID = Integer.toString(id);
+		Category ID = Category.of(Integer.toString(id), 'd');
 		groups.add(toAdd);
 		ArrayList<MetaImage> alsoAdd = new ArrayList<>();
 		for (MetaImage image : toAdd) {
 			for (Annotation a : image.getAnnotations()) {
-				if (a.getCategory().toString() != null) {
+				if (a.getCategory() != Category.UNTAGGED) {
 					int oldID = Integer.parseInt(a.getCategory().toString());
 					ArrayList<MetaImage> oldList = groups.get(oldID);
 					alsoAdd.addAll(oldList);
 					oldList.clear();
 				}
 
-				a.getCategory().setIDString(ID);
+				a.setCategory(ID);
 			}
 		}
 		for (MetaImage image : alsoAdd)
 			for (Annotation a : image.getAnnotations())
-				a.getCategory().setIDString(ID);
+				a.setCategory(ID);
 	}
 
 	/**
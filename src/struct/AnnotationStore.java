@@ -0,0 +1,533 @@
+package struct;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import annotations.Annotation;
+import annotations.Attribute;
+import annotations.AttributeSet;
+import annotations.Feature;
+
+/**
+ * Holds the Annotations of a list packed into parallel arrays of primitives,
+ * rather than as Annotation objects, so a list with millions of Annotations
+ * fits in memory and scans over them (by Feature, Attribute, category, etc)
+ * read a few dense arrays instead of chasing pointers through objects.
+ * <p>
+ * Each Annotation is a row of the store: its Feature, its rectangle (the
+ * position relative to its parent, as it's written in a list file), the mask
+ * of each of its Attributes (see {@link AttributeSet}), its category and breed
+ * (as ids into the store's own table of names), its roll, pitch, and yaw, and
+ * the row of its parent. Sub-Annotations are stored right after their parent,
+ * so the rows of an Annotation and all of its sub-Annotations are contiguous,
+ * [row, {@link #getEnd(int)}).
+ * <p>
+ * Annotations are rebuilt from the store as needed with {@link #get(int)},
+ * changes to a rebuilt Annotation aren't written back to the store. A store
+ * isn't safe to add to from more than one thread at a time.
+ *
+ * @author bonifantmc
+ *
+ */
+public class AnnotationStore {
+	/** the Attributes of an Annotation, in the order their masks are stored */
+	static final AttributeSet[] ATTRIBUTES = { Attribute.SkinTone, Attribute.Gender, Attribute.Age,
+			Attribute.Wounds, Attribute.Occlusions, Attribute.Kind };
+	/** the Features, by the ordinal stored for them */
+	private static final Feature[] FEATURES = Feature.values();
+
+	/** the number of rows in the store */
+	private int size;
+	/** the Feature ordinal of each row */
+	private byte[] feature;
+	/** the x of each row, relative to its parent */
+	private int[] x;
+	/** the y of each row, relative to its parent */
+	private int[] y;
+	/** the width of each row */
+	private int[] width;
+	/** the height of each row */
+	private int[] height;
+	/** the Attribute masks of each row, {@link #ATTRIBUTES} per row */
+	private long[] masks;
+	/**
+	 * the order an Attribute's tags were selected in, by the index of its mask
+	 * in masks, for the few selected in another order than their tags', see
+	 * {@link AttributeSet#order(String...)}
+	 */
+	private final HashMap<Integer, byte[]> orders = new HashMap<>();
+	/** the id of each row's category */
+	private int[] category;
+	/** the id of each row's breed */
+	private int[] breed;
+	/** the roll of each row */
+	private float[] roll;
+	/** the pitch of each row */
+	private float[] pitch;
+	/** the yaw of each row */
+	private float[] yaw;
+	/** the row of each row's parent, -1 if it has none */
+	private int[] parent;
+	/** the row just past each row's last sub-Annotation */
+	private int[] end;
+
+	/** the category and breed names, by id */
+	private final ArrayList<String> names = new ArrayList<>();
+	/** the id of each category and breed name */
+	private final HashMap<String, Integer> ids = new HashMap<>();
+
+	/** Make an empty store. */
+	public AnnotationStore() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            the number of Annotations to make room for
+	 */
+	public AnnotationStore(int capacity) {
+		allocate(Math.max(1, capacity));
+	}
+
+	/**
+	 * Resize all the rows' arrays.
+	 *
+	 * @param capacity
+	 *            the number of rows to make room for
+	 */
+	private void allocate(int capacity) {
+		if (this.feature == null) {
+			this.feature = new byte[0];
+			this.x = this.y = this.width = this.height = new int[0];
+			this.masks = new long[0];
+			this.category = this.breed = this.parent = this.end = new int[0];
+			this.roll = this.pitch = this.yaw = new float[0];
+		}
+		this.feature = Arrays.copyOf(this.feature, capacity);
+		this.x = Arrays.copyOf(this.x, capacity);
+		this.y = Arrays.copyOf(this.y, capacity);
+		this.width = Arrays.copyOf(this.width, capacity);
+		this.height = Arrays.copyOf(this.height, capacity);
+		this.masks = Arrays.copyOf(this.masks, capacity * ATTRIBUTES.length);
+		this.category = Arrays.copyOf(this.category, capacity);
+		this.breed = Arrays.copyOf(this.breed, capacity);
+		this.roll = Arrays.copyOf(this.roll, capacity);
+		this.pitch = Arrays.copyOf(this.pitch, capacity);
+		this.yaw = Arrays.copyOf(this.yaw, capacity);
+		this.parent = Arrays.copyOf(this.parent, capacity);
+		this.end = Arrays.copyOf(this.end, capacity);
+	}
+
+	/** Shrink the store's arrays to the rows it holds. */
+	public void trimToSize() {
+		if (this.size < this.feature.length)
+			allocate(Math.max(1, this.size));
+	}
+
+	/** @return the number of Annotations in the store, counting sub-Annotations */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Add the Annotations of a list, with their sub-Annotations.
+	 *
+	 * @param notes
+	 *            the Annotations to add
+	 * @return the row of the first Annotation added, the Annotations added are
+	 *         the rows from it up to the store's new {@link #size()}
+	 */
+	public int addAll(List<Annotation> notes) {
+		int first = this.size;
+		for (Annotation a : notes)
+			add(a, -1);
+		return first;
+	}
+
+	/**
+	 * Add an Annotation along with its sub-Annotations.
+	 *
+	 * @param a
+	 *            the Annotation
+	 * @param up
+	 *            the row of its parent, -1 if it has none
+	 * @return the row it was added at
+	 */
+	private int add(Annotation a, int up) {
+		if (this.size == this.feature.length)
+			allocate(this.size * 2);
+		int i = this.size++;
+		Annotation p = a.getParent();
+		this.feature[i] = (byte) a.getId().ordinal();
+		this.x[i] = (int) (p == null ? a.x : a.x - p.x);
+		this.y[i] = (int) (p == null ? a.y : a.y - p.y);
+		this.width[i] = (int) a.width;
+		this.height[i] = (int) a.height;
+		int m = i * ATTRIBUTES.length;
+		Attribute[] attributes = attributes(a);
+		for (int k = 0; k < ATTRIBUTES.length; k++) {
+			this.masks[m + k] = attributes[k].getMask();
+			if (attributes[k].getOrder() != null)
+				this.orders.put(Integer.valueOf(m + k), attributes[k].getOrder());
+		}
+		this.category[i] = id(a.getCategory().toString());
+		this.breed[i] = id(a.getBreed().toString());
+		this.roll[i] = a.getRoll();
+		this.pitch[i] = a.getPitch();
+		this.yaw[i] = a.getYaw();
+		this.parent[i] = up;
+		for (Annotation s : a.getSubannotes())
+			add(s, i);
+		this.end[i] = this.size;
+		return i;
+	}
+
+	/**
+	 * @param name
+	 *            a category or breed name
+	 * @return its id, giving it one if it doesn't have one yet
+	 */
+	private int id(String name) {
+		Integer id = this.ids.get(name);
+		if (id == null) {
+			id = Integer.valueOf(this.names.size());
+			this.names.add(name);
+			this.ids.put(name, id);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * Rebuild the Annotations of a range of rows, along with their
+	 * sub-Annotations.
+	 *
+	 * @param from
+	 *            the row of the first Annotation, which must have no parent
+	 * @param to
+	 *            the row just past the last Annotation's last sub-Annotation
+	 * @return the Annotations in the range that have no parent, in order
+	 */
+	public ArrayList<Annotation> get(int from, int to) {
+		ArrayList<Annotation> ret = new ArrayList<>();
+		for (int i = from; i < to; i = this.end[i])
+			ret.add(build(i, null));
+		return ret;
+	}
+
+	/**
+	 * @param row
+	 *            the row of an Annotation with no parent
+	 * @return the Annotation rebuilt, with its sub-Annotations
+	 */
+	public Annotation get(int row) {
+		return build(row, null);
+	}
+
+	/**
+	 * @param i
+	 *            a row
+	 * @param up
+	 *            the rebuilt parent of the row, or null
+	 * @return the Annotation of the row, with its sub-Annotations
+	 */
+	private Annotation build(int i, Annotation up) {
+		Annotation a = new Annotation(FEATURES[this.feature[i]], this.x[i], this.y[i], this.width[i],
+				this.height[i], up, Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED, Attribute.UNMARKED,
+				Attribute.UNMARKED, Attribute.UNMARKED, this.names.get(this.breed[i]),
+				this.names.get(this.category[i]));
+		int m = i * ATTRIBUTES.length;
+		Attribute[] attributes = attributes(a);
+		for (int k = 0; k < ATTRIBUTES.length; k++) {
+			attributes[k].setMask(this.masks[m + k]);
+			attributes[k].setOrder(this.orders.get(Integer.valueOf(m + k)));
+		}
+		a.setRoll(this.roll[i]);
+		a.setPitch(this.pitch[i]);
+		a.setYaw(this.yaw[i]);
+		for (int s = i + 1; s < this.end[i]; s = this.end[s])
+			build(s, a);
+		return a;
+	}
+
+	/**
+	 * @param a
+	 *            an Annotation
+	 * @return its Attributes, in the order of {@link #ATTRIBUTES}
+	 */
+	private static Attribute[] attributes(Annotation a) {
+		return new Attribute[] { a.getSkin(), a.getGender(), a.getAge(), a.getWound(), a.getOcclusions(),
+				a.getKind() };
+	}
+
+	// Columns *****************************************************************
+
+	/**
+	 * Write the store's rows one column at a time, followed by its category
+	 * and breed names, as a block of a {@link BinaryList}. Each Attribute's
+	 * masks are written as a column of their own, followed by the orders of
+	 * the few selections not in their tags' order, and roll, pitch, and yaw as
+	 * the bits of their floats.
+	 *
+	 * @param out
+	 *            where to write the store
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	void write(DataOutputStream out) throws IOException {
+		int n = this.size;
+		out.writeInt(n);
+		out.write(this.feature, 0, n);
+		for (int[] column : new int[][] { this.x, this.y, this.width, this.height })
+			BinaryList.writeInts(out, column, n);
+		for (int k = 0; k < ATTRIBUTES.length; k++)
+			BinaryList.writeLongs(out, this.masks, k, ATTRIBUTES.length, n);
+		out.writeInt(this.orders.size());
+		for (Map.Entry<Integer, byte[]> e : this.orders.entrySet()) {
+			out.writeInt(e.getKey().intValue());
+			out.writeByte(e.getValue().length);
+			out.write(e.getValue());
+		}
+		for (int[] column : new int[][] { this.category, this.breed })
+			BinaryList.writeInts(out, column, n);
+		for (float[] column : new float[][] { this.roll, this.pitch, this.yaw }) {
+			int[] bits = new int[n];
+			for (int i = 0; i < n; i++)
+				bits[i] = Float.floatToRawIntBits(column[i]);
+			BinaryList.writeInts(out, bits, n);
+		}
+		for (int[] column : new int[][] { this.parent, this.end })
+			BinaryList.writeInts(out, column, n);
+		out.writeInt(this.names.size());
+		for (String name : this.names)
+			BinaryList.writeString(out, name);
+	}
+
+	/**
+	 * Read a store written by {@link #write(DataOutputStream)}.
+	 *
+	 * @param in
+	 *            where to read the store from
+	 * @param remap
+	 *            for each Attribute, the mask each bit of a stored mask stands
+	 *            for now, or null for an Attribute whose tags haven't changed
+	 *            since the store was written. A selection left with no tags
+	 *            is read as unmarked.
+	 * @param ordered
+	 *            true if the store was written with the orders of its
+	 *            selections, false if it's from a list written before they
+	 *            were kept
+	 * @return the store
+	 * @throws IOException
+	 *             if the store is malformed
+	 */
+	static AnnotationStore read(ByteBuffer in, long[][] remap, boolean ordered) throws IOException {
+		int n = in.getInt();
+		if (n < 0 || n > in.remaining())
+			throw new IOException("malformed annotation block, " + n + " rows");
+		AnnotationStore s = new AnnotationStore(n);
+		s.size = n;
+		in.get(s.feature, 0, n);
+		for (int i = 0; i < n; i++)
+			if (s.feature[i] < 0 || s.feature[i] >= FEATURES.length)
+				throw new IOException("malformed annotation block, unknown feature " + s.feature[i]);
+		for (int[] column : new int[][] { s.x, s.y, s.width, s.height })
+			BinaryList.readInts(in, column, n);
+		for (int k = 0; k < ATTRIBUTES.length; k++)
+			BinaryList.readLongs(in, s.masks, k, ATTRIBUTES.length, n);
+		int orders = ordered ? in.getInt() : 0;
+		if (orders < 0 || orders > n * ATTRIBUTES.length)
+			throw new IOException("malformed annotation block, " + orders + " orders");
+		for (int i = 0; i < orders; i++) {
+			int m = in.getInt();
+			byte[] order = new byte[in.get() & 0xFF];
+			in.get(order);
+			if (m < 0 || m >= n * ATTRIBUTES.length)
+				throw new IOException("malformed annotation block, bad order " + m);
+			for (byte t : order)
+				if (t < 0 || t >= AttributeSet.MAX_TAGS)
+					throw new IOException("malformed annotation block, bad order " + m);
+			s.orders.put(Integer.valueOf(m), order);
+		}
+		for (int[] column : new int[][] { s.category, s.breed })
+			BinaryList.readInts(in, column, n);
+		int[] bits = new int[n];
+		for (float[] column : new float[][] { s.roll, s.pitch, s.yaw }) {
+			BinaryList.readInts(in, bits, n);
+			for (int i = 0; i < n; i++)
+				column[i] = Float.intBitsToFloat(bits[i]);
+		}
+		for (int[] column : new int[][] { s.parent, s.end })
+			BinaryList.readInts(in, column, n);
+		int names = in.getInt();
+		for (int i = 0; i < names; i++) {
+			String name = BinaryList.readString(in);
+			s.names.add(name);
+			s.ids.putIfAbsent(name, Integer.valueOf(i));
+		}
+		for (int i = 0; i < n; i++)
+			if (s.category[i] < 0 || s.category[i] >= names || s.breed[i] < 0 || s.breed[i] >= names
+					|| s.end[i] <= i || s.end[i] > n)
+				throw new IOException("malformed annotation block, bad row " + i);
+
+		if (remap != null)
+			for (int k = 0; k < ATTRIBUTES.length; k++)
+				if (remap[k] != null)
+					for (int i = k; i < n * ATTRIBUTES.length; i += ATTRIBUTES.length) {
+						long mask = 0;
+						for (long m = s.masks[i]; m != 0; m &= m - 1)
+							mask |= remap[k][Long.numberOfTrailingZeros(m)];
+						s.masks[i] = mask == 0 && s.masks[i] != 0 ? ATTRIBUTES[k].unmarked() : mask;
+						byte[] order = s.orders.remove(Integer.valueOf(i));
+						if (order != null && (order = remap(order, remap[k])) != null)
+							s.orders.put(Integer.valueOf(i), order);
+					}
+		return s;
+	}
+
+	/**
+	 * @param order
+	 *            the order of a stored selection's tags, by their stored bits
+	 * @param remap
+	 *            the mask each stored bit stands for now
+	 * @return the order by the bits they stand for now, the tags that no
+	 *         longer stand for any left out, or null if none are left
+	 */
+	private static byte[] remap(byte[] order, long[] remap) {
+		byte[] ret = new byte[order.length];
+		int n = 0;
+		for (byte t : order)
+			if (remap[t] != 0)
+				ret[n++] = (byte) Long.numberOfTrailingZeros(remap[t]);
+		return n == 0 ? null : Arrays.copyOf(ret, n);
+	}
+
+	// Row access ************************************************************
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its Feature
+	 */
+	public Feature getFeature(int row) {
+		return FEATURES[this.feature[row]];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its x, relative to its parent
+	 */
+	public int getX(int row) {
+		return this.x[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its y, relative to its parent
+	 */
+	public int getY(int row) {
+		return this.y[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its width
+	 */
+	public int getWidth(int row) {
+		return this.width[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its height
+	 */
+	public int getHeight(int row) {
+		return this.height[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @param rules
+	 *            one of the Attributes every Annotation has
+	 * @return the row's mask for that Attribute, 0 if it isn't one of them
+	 */
+	public long getMask(int row, AttributeSet rules) {
+		for (int k = 0; k < ATTRIBUTES.length; k++)
+			if (ATTRIBUTES[k] == rules)
+				return this.masks[row * ATTRIBUTES.length + k];
+		return 0;
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its category
+	 */
+	public String getCategory(int row) {
+		return this.names.get(this.category[row]);
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its breed
+	 */
+	public String getBreed(int row) {
+		return this.names.get(this.breed[row]);
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its roll
+	 */
+	public float getRoll(int row) {
+		return this.roll[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its pitch
+	 */
+	public float getPitch(int row) {
+		return this.pitch[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return its yaw
+	 */
+	public float getYaw(int row) {
+		return this.yaw[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return the row of its parent, -1 if it has none
+	 */
+	public int getParent(int row) {
+		return this.parent[row];
+	}
+
+	/**
+	 * @param row
+	 *            a row
+	 * @return the row just past its last sub-Annotation
+	 */
+	public int getEnd(int row) {
+		return this.end[row];
+	}
+}
@@ -1,7 +1,14 @@
 package struct;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import javax.swing.ListModel;
 import javax.swing.event.EventListenerList;
@@ -111,6 +118,7 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 	@Override
 	public void add(int index, E element) {
 		super.add(index, element);
+		indexName(element, index);
 		fireIntervalAdded(index, index);
 	}
 
@@ -125,6 +133,7 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 	public boolean add(E e) {
 		int newIndex = size();
 		boolean add = super.add(e);
+		indexName(e);
 		fireIntervalAdded(newIndex, newIndex);
 		return add;
 	}
@@ -152,6 +161,9 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 	public boolean addAll(int index, Collection<? extends E> c) {
 		boolean changed = super.addAll(index, c);
 		if (changed) {
+			int at = index;
+			for (E e : c)
+				indexName(e, at++);
 			int lastIndex = index + c.size() - 1;
 			fireIntervalAdded(index, lastIndex);
 		}
@@ -177,12 +189,86 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 		int firstIndex = size();
 		boolean changed = super.addAll(c);
 		if (changed) {
+			for (E e : c)
+				indexName(e);
 			int lastIndex = firstIndex + c.size() - 1;
 			fireIntervalAdded(firstIndex, lastIndex);
 		}
 		return changed;
 	}
 
+	/**
+	 * Merges the elements of the specified Collection into this list, which is
+	 * assumed to already be sorted by the specified Comparator. Elements
+	 * already in the list keep their relative order and new elements are
+	 * placed after any equal elements, so the list stays sorted. Listeners are
+	 * sent a single interval added event for the growth of the list, and a
+	 * single contents changed event for the elements that moved to make room.
+	 * If all new elements sort after the last element of the list they are
+	 * simply appended and nothing is moved.
+	 * 
+	 * @param c
+	 *            the elements to be merged into this list.
+	 * @param cmp
+	 *            the Comparator this list is sorted by.
+	 * @return {@code true} if this list changed as a result of the call.
+	 * @throws NullPointerException
+	 *             if the specified collection is null.
+	 * @edit additional method by Chase Bonifant, not included in Karsten
+	 *       Lentzsch's original version
+	 */
+	public boolean mergeSorted(Collection<? extends E> c, Comparator<? super E> cmp) {
+		if (c.isEmpty())
+			return false;
+		ArrayList<E> added = new ArrayList<>(c);
+		added.sort(cmp);
+
+		// everything before the first new element's spot stays put
+		int oldSize = size();
+		int first = upperBound(added.get(0), cmp);
+		if (first == oldSize)
+			return addAll(added);
+
+		ArrayList<E> tail = new ArrayList<>(subList(first, oldSize));
+		super.removeRange(first, oldSize);
+		ensureCapacity(oldSize + added.size());
+		int[] at = new int[added.size()];
+		int i = 0, j = 0;
+		while (i < tail.size() || j < added.size())
+			if (j == added.size() || (i < tail.size() && cmp.compare(tail.get(i), added.get(j)) <= 0))
+				super.add(tail.get(i++));
+			else {
+				at[j] = size();
+				super.add(added.get(j++));
+			}
+		for (j = 0; j < at.length; j++)
+			indexName(added.get(j), at[j]);
+
+		fireIntervalAdded(oldSize, size() - 1);
+		fireContentsChanged(first, oldSize - 1);
+		return true;
+	}
+
+	/**
+	 * @param e
+	 *            an element
+	 * @param cmp
+	 *            the Comparator this list is sorted by
+	 * @return the index of the first element of this list that sorts after e,
+	 *         or the size of the list if there is none.
+	 */
+	private int upperBound(E e, Comparator<? super E> cmp) {
+		int lo = 0, hi = size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cmp.compare(get(mid), e) <= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
 	/**
 	 * Removes all of the elements from this list. The list will be empty after
 	 * this call returns.
@@ -194,6 +280,8 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 
 		int oldLastIndex = size() - 1;
 		super.clear();
+		if (this.names != null)
+			this.names.clear();
 		fireIntervalRemoved(0, oldLastIndex);
 	}
 
@@ -211,6 +299,7 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 	@Override
 	public E remove(int index) {
 		E removedElement = super.remove(index);
+		unindexName(removedElement);
 		fireIntervalRemoved(index, index);
 		return removedElement;
 	}
@@ -255,6 +344,9 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 	 */
 	@Override
 	protected void removeRange(int fromIndex, int toIndex) {
+		if (this.names != null)
+			for (E e : subList(fromIndex, toIndex))
+				unindexName(e);
 		super.removeRange(fromIndex, toIndex);
 		fireIntervalRemoved(fromIndex, toIndex - 1);
 	}
@@ -275,10 +367,102 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 	@Override
 	public E set(int index, E element) {
 		E previousElement = super.set(index, element);
+		unindexName(previousElement);
+		indexName(element, index);
 		fireContentsChanged(index, index);
 		return previousElement;
 	}
 
+	/**
+	 * Sorts the list, the name index is dropped and rebuilt by the next
+	 * {@link #getByName(String)}.
+	 * 
+	 * @param c
+	 *            the Comparator to sort by
+	 */
+	@Override
+	public void sort(Comparator<? super E> c) {
+		this.names = null;
+		super.sort(c);
+	}
+
+	/**
+	 * Removes all elements matching the filter in one pass, firing a
+	 * ListDataEvent for each run of adjacent elements removed. The runs are
+	 * fired last to first, so each run's indexes are still those of the list
+	 * once the runs after it are gone. The name index is dropped and rebuilt
+	 * by the next {@link #getByName(String)}.
+	 * 
+	 * @param filter
+	 *            the test elements to remove pass
+	 * @return true if any elements were removed
+	 */
+	@Override
+	public boolean removeIf(Predicate<? super E> filter) {
+		Objects.requireNonNull(filter);
+		int n = size();
+		// test them all first, so a filter that throws leaves the list whole
+		BitSet removed = new BitSet(n);
+		for (int i = 0; i < n; i++)
+			if (filter.test(get(i)))
+				removed.set(i);
+		if (removed.isEmpty())
+			return false;
+
+		this.names = null;
+		int kept = 0;
+		for (int i = removed.nextClearBit(0); i < n; i = removed.nextClearBit(i + 1))
+			super.set(kept++, get(i));
+		super.removeRange(kept, n);
+		for (int end = removed.length(); end > 0;) {
+			int start = removed.previousClearBit(end - 1) + 1;
+			fireIntervalRemoved(start, end - 1);
+			end = removed.previousSetBit(start - 1) + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all elements in the collection, see
+	 * {@link #removeIf(Predicate)}.
+	 * 
+	 * @param c
+	 *            the elements to remove
+	 * @return true if any elements were removed
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		Objects.requireNonNull(c);
+		return removeIf(c::contains);
+	}
+
+	/**
+	 * Removes all elements not in the collection, see
+	 * {@link #removeIf(Predicate)}.
+	 * 
+	 * @param c
+	 *            the elements to keep
+	 * @return true if any elements were removed
+	 */
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		Objects.requireNonNull(c);
+		return removeIf(e -> !c.contains(e));
+	}
+
+	/**
+	 * Replaces every element, the name index is dropped and rebuilt by the
+	 * next {@link #getByName(String)}.
+	 * 
+	 * @param operator
+	 *            gives the replacement of each element
+	 */
+	@Override
+	public void replaceAll(UnaryOperator<E> operator) {
+		this.names = null;
+		super.replaceAll(operator);
+	}
+
 	// ListModel Field ********************************************************
 
 	/**
@@ -467,21 +651,170 @@ public class ArrayListModel<E> extends ArrayList<E> implements ListModel<E> {
 		return this.listenerList;
 	}
 
+	// Name Index ************************************************************
+
+	/**
+	 * Maps the name of each Nameable element to that element, or to a
+	 * {@link NameBucket} if more than one element has the name. Built the
+	 * first time {@link #getByName(String)} is called and kept up to date by
+	 * every change to the list from then on, null until then so lists that are
+	 * never searched by name don't pay for it.
+	 */
+	private transient HashMap<String, Object> names;
+
+	/**
+	 * The elements sharing a name, in the order they are in the list
+	 */
+	private static class NameBucket extends ArrayList<Object> {
+		/** bucket of elements with the same name */
+		NameBucket() {
+			super(2);
+		}
+
+		/**
+		 * @param list
+		 *            the list the elements are in
+		 * @param at
+		 *            a position in the list
+		 * @return the number of elements of the bucket before that position
+		 */
+		int before(List<?> list, int at) {
+			int n = 0;
+			for (int i = 0; i < at && n < size(); i++)
+				for (Object o : this)
+					if (o == list.get(i)) {
+						n++;
+						break;
+					}
+			return n;
+		}
+	}
+
+	/**
+	 * Add an element appended to the list to the name index, if there is one
+	 * 
+	 * @param e
+	 *            the element added to the end of the list
+	 */
+	private void indexName(E e) {
+		indexName(e, size() - 1);
+	}
+
+	/**
+	 * Add an element to the name index, if there is one, after the elements
+	 * of the same name before it in the list
+	 * 
+	 * @param e
+	 *            the element added to the list
+	 * @param at
+	 *            its position in the list
+	 */
+	private void indexName(E e, int at) {
+		if (this.names == null || !(e instanceof Nameable))
+			return;
+		String name = ((Nameable) e).getName();
+		Object o = this.names.putIfAbsent(name, e);
+		if (o == null)
+			return;
+		NameBucket b;
+		if (o instanceof NameBucket)
+			b = (NameBucket) o;
+		else {
+			b = new NameBucket();
+			b.add(o);
+			this.names.put(name, b);
+		}
+		// appending is by far the most common, and needs no search
+		b.add(at >= size() - 1 ? b.size() : b.before(this, at), e);
+	}
+
+	/**
+	 * Remove an element from the name index, if there is one
+	 * 
+	 * @param e
+	 *            the element removed from the list
+	 */
+	private void unindexName(E e) {
+		if (this.names != null && e instanceof Nameable)
+			unindexName(e, ((Nameable) e).getName());
+	}
+
+	/**
+	 * Remove an element from the name index under the given name
+	 * 
+	 * @param e
+	 *            the element
+	 * @param name
+	 *            the name the element is indexed by
+	 */
+	private void unindexName(Object e, String name) {
+		Object o = this.names.get(name);
+		if (o == e) {
+			this.names.remove(name);
+		} else if (o instanceof NameBucket) {
+			NameBucket b = (NameBucket) o;
+			for (int i = 0; i < b.size(); i++)
+				if (b.get(i) == e) {
+					b.remove(i);
+					break;
+				}
+			if (b.size() == 1)
+				this.names.put(name, b.get(0));
+		}
+	}
+
+	/**
+	 * Must be called after an element of this list is renamed, so that it can
+	 * still be found by its new name.
+	 * 
+	 * @param e
+	 *            the renamed element
+	 * @param oldName
+	 *            the name the element had before
+	 * @edit additional method by Chase Bonifant, not included in Karsten
+	 *       Lentzsch's original version
+	 */
+	public void renamed(E e, String oldName) {
+		if (this.names == null || !(e instanceof Nameable))
+			return;
+		unindexName(e, oldName);
+		// only an element sharing its new name needs its place in the list
+		int at = size() - 1;
+		if (this.names.containsKey(((Nameable) e).getName())) {
+			at = 0;
+			while (at < size() - 1 && get(at) != e)
+				at++;
+		}
+		indexName(e, at);
+	}
+
 	/**
 	 * If the List has Nameable objects stored in it, then this can search the
-	 * list for an object with a given name, and return that object
+	 * list for an object with a given name, and return that object.
+	 * <p>
+	 * The first search builds an index of the list's elements by name, so
+	 * this and every later search take constant time. If an element is
+	 * renamed {@link #renamed(Object, String)} must be called to keep the
+	 * index up to date.
 	 * 
 	 * @param name
 	 *            the name of the object to search the list for
-	 * @return the first Nameable object whose name matches the given input in
-	 *         this list, if one exists, otherwise null
+	 * @return the Nameable object whose name matches the given input in this
+	 *         list, if one exists, otherwise null. If several do, the first of
+	 *         them in the list
 	 * @edit additional method by Chase Bonifant, not included in Karsten
 	 *       Lentzsch's original version
 	 */
+	@SuppressWarnings("unchecked")
 	public E getByName(String name) {
-		for (E o : this)
-			if (o instanceof Nameable && ((Nameable) o).getName().equals(name))
-				return o;
-		return null;
+		if (this.names == null) {
+			this.names = new HashMap<>(Math.max(16, size() * 4 / 3 + 1));
+			for (E e : this)
+				indexName(e);
+		}
+		Object o = this.names.get(name);
+		if (o instanceof NameBucket)
+			return (E) ((NameBucket) o).get(0);
+		return (E) o;
 	}
 }
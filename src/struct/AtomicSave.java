@@ -0,0 +1,174 @@
+package struct;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Saves a set of files as one, so a crash part way through a save leaves each
+ * file either as it was or as it was saved, never half written.
+ * <p>
+ * Each file is written to a temporary file beside it (list.lst is written to
+ * list.lst.tmp in the same directory, see {@link #stage(File)}). Once they've
+ * all been written {@link #commit()} forces them to disk, as {@link #sync}
+ * says, and renames each over the file it replaces, in the order they were
+ * staged. A rename within a directory is atomic, so the data is written once
+ * and the old file stays whole until the new one takes its place. Stage the
+ * file the others depend on last, its rename is the point the save happens.
+ * <p>
+ * Closing the save without committing it deletes the temporary files, the
+ * files they were to replace are left untouched.
+ *
+ * @author bonifantmc
+ *
+ */
+public class AtomicSave implements Closeable {
+	/** the extension added to a file's name to name its temporary file */
+	public static final String EXTENSION = ".tmp";
+
+	/** How much of a save is forced to disk before it's committed */
+	public enum Sync {
+		/**
+		 * nothing is forced, the operating system writes the files when it
+		 * likes, a crash can lose the save but the rename still never exposes
+		 * a torn file on file systems that order data before metadata
+		 */
+		NEVER,
+		/** each file is forced to disk before it's renamed into place */
+		FILE,
+		/**
+		 * each file is forced before it's renamed, and its directory after,
+		 * so the save survives a crash as soon as commit returns
+		 */
+		DIRECTORY;
+
+		/**
+		 * @param s
+		 *            the name of a policy
+		 * @return the policy with that name, or FILE if there's none
+		 */
+		public static Sync parseSync(String s) {
+			for (Sync y : values())
+				if (y.name().equalsIgnoreCase(s))
+					return y;
+			return FILE;
+		}
+	}
+
+	/** the policy saves follow */
+	public static Sync sync = Sync.FILE;
+
+	/** the temporary files, in the order they were staged */
+	private final ArrayList<File> temps = new ArrayList<>();
+	/** the file each temporary file replaces */
+	private final ArrayList<File> targets = new ArrayList<>();
+	/** true once the save has been committed */
+	private boolean committed;
+
+	/**
+	 * @param target
+	 *            a file
+	 * @return the temporary file the file is written to before it's renamed
+	 *         into place
+	 */
+	public static File tempFor(File target) {
+		File abs = target.getAbsoluteFile();
+		return new File(abs.getParentFile(), abs.getName() + EXTENSION);
+	}
+
+	/**
+	 * Add a file to the save.
+	 *
+	 * @param target
+	 *            the file to be replaced
+	 * @return the temporary file to write the new file to
+	 */
+	public File stage(File target) {
+		File tmp = tempFor(target);
+		this.temps.add(tmp);
+		this.targets.add(target.getAbsoluteFile());
+		return tmp;
+	}
+
+	/**
+	 * Drop a file from the save, deleting what was written to its temporary
+	 * file, when it turns out the file doesn't need replacing after all.
+	 *
+	 * @param target
+	 *            a file staged in the save
+	 * @throws IOException
+	 *             if the temporary file can't be deleted
+	 */
+	public void discard(File target) throws IOException {
+		int k = this.targets.indexOf(target.getAbsoluteFile());
+		if (k < 0)
+			return;
+		this.targets.remove(k);
+		Files.deleteIfExists(this.temps.remove(k).toPath());
+	}
+
+	/**
+	 * Force the staged files to disk, as {@link #sync} says, and rename each
+	 * into place.
+	 *
+	 * @throws IOException
+	 *             if a file can't be forced or renamed, the files already
+	 *             renamed stay saved
+	 */
+	public void commit() throws IOException {
+		Sync s = sync;
+		if (s != Sync.NEVER)
+			for (File tmp : this.temps)
+				force(tmp, false);
+		for (int k = 0; k < this.temps.size(); k++) {
+			File tmp = this.temps.get(k), target = this.targets.get(k);
+			try {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		if (s == Sync.DIRECTORY)
+			for (File target : this.targets)
+				force(target.getParentFile(), true);
+		this.committed = true;
+	}
+
+	/**
+	 * Force a file to disk.
+	 *
+	 * @param f
+	 *            the file
+	 * @param directory
+	 *            true if the file is a directory, some platforms can't open a
+	 *            directory to force it and then it's left to the platform
+	 * @throws IOException
+	 *             if the file can't be forced
+	 */
+	private static void force(File f, boolean directory) throws IOException {
+		try (FileChannel ch = FileChannel.open(f.toPath(),
+				directory ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+			ch.force(true);
+		} catch (IOException e) {
+			if (!directory)
+				throw e;
+		}
+	}
+
+	/**
+	 * Delete the temporary files if the save wasn't committed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.committed)
+			return;
+		for (File tmp : this.temps)
+			Files.deleteIfExists(tmp.toPath());
+	}
+}
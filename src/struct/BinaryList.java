@@ -0,0 +1,793 @@
+package struct;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import annotations.Annotation;
+import annotations.AttributeSet;
+
+/**
+ * A binary list file (list.ilbl), holding the same lines as a text list but
+ * with each image's Annotations already parsed and laid out in typed columns,
+ * so a list is loaded with a few bulk reads per block rather than parsed line
+ * by line.
+ * <p>
+ * The file starts with a header identifying the format and version, followed
+ * by the tags of each Attribute as they were when the file was written, so the
+ * Attribute masks stored can be mapped onto the tags of the running ILB if
+ * they've changed since. A tag removed since is dropped from the selections
+ * it was in, a selection left with no tags is read as unmarked.
+ * <p>
+ * The lines of the list come next, in blocks of up to {@value #BLOCK_LINES}
+ * lines. Each block stands on its own and holds, one column at a time (each
+ * column of numbers written in as few bytes a value as fit the column, or as a
+ * single value if all its values are the same):
+ * <ul>
+ * <li>the kind of each line, {@value #IMAGE} for an image whose line is
+ * exactly its name followed by its tab separated Annotations as the ILB writes
+ * them, {@value #TEXT} for any other line (comments, blank lines, lines that
+ * don't parse or aren't written the way the ILB writes them), which is kept
+ * verbatim</li>
+ * <li>the block's string table: the end of each line's string (an image's
+ * name, or a text line) in the block's UTF-8 text, followed by the text</li>
+ * <li>the first Annotation row of each line, and the row past its last</li>
+ * <li>the Annotations of the block's images, as an {@link AnnotationStore}'s
+ * columns</li>
+ * </ul>
+ * After the blocks comes the block index, the offset, length in bytes, and
+ * number of lines of each block, and last a trailer giving where the index
+ * starts, the number of blocks, and {@value #MAGIC} again, so a reader can
+ * seek straight to any block, and a file that was cut short is never mistaken
+ * for a complete one.
+ * <p>
+ * Converting a text list to a binary list and back gives back the same text,
+ * for a list with '\n' line ends (as the ILB saves lists).
+ *
+ * @author bonifantmc
+ *
+ */
+public class BinaryList {
+	/** the extension of a binary list */
+	public static final String EXTENSION = ".ilbl";
+	/** identifies a file as a binary list, "ILBL" */
+	private static final int MAGIC = 0x494C424C;
+	/**
+	 * the version of the format, bump whenever the layout changes. Version 1
+	 * didn't keep the order of selections not in their tags' order, it's
+	 * still read.
+	 */
+	private static final int VERSION = 2;
+	/** the most lines a block holds */
+	public static final int BLOCK_LINES = 4096;
+	/** the size of the trailer at the end of the file */
+	private static final int TRAILER = Long.BYTES + Integer.BYTES + Integer.BYTES;
+	/** kind of a line that is an image and its Annotations */
+	private static final byte IMAGE = 0;
+	/** kind of a line kept as text */
+	private static final byte TEXT = 1;
+
+	/** static class, no constructor needed */
+	private BinaryList() {
+	}
+
+	/**
+	 * @param f
+	 *            a list file
+	 * @return true if the file is named as a binary list
+	 */
+	public static boolean isBinary(File f) {
+		return f.getName().toLowerCase().endsWith(EXTENSION);
+	}
+
+	/**
+	 * Writes a binary list, a block at a time. The file is only complete once
+	 * {@link #finish()} is called.
+	 */
+	public static class Writer implements Closeable {
+		/** the stream writing the file */
+		private final DataOutputStream out;
+		/** the number of bytes written so far */
+		private long position;
+		/** the offset of each block written */
+		private final ArrayList<Long> offsets = new ArrayList<>();
+		/** the length of each block written */
+		private final ArrayList<Integer> lengths = new ArrayList<>();
+		/** the number of lines of each block written */
+		private final ArrayList<Integer> counts = new ArrayList<>();
+
+		/** the kind of each line of the block being built */
+		private byte[] kinds = new byte[BLOCK_LINES];
+		/** the end of each line's string in the block's text */
+		private int[] ends = new int[BLOCK_LINES];
+		/** the first Annotation row of each line, and the row past the last */
+		private int[] rows = new int[BLOCK_LINES + 1];
+		/** the number of lines in the block being built */
+		private int lines;
+		/** the block's text */
+		private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+		/** the block's Annotations */
+		private AnnotationStore store = new AnnotationStore();
+		/** the block being encoded */
+		private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+		/** the line an image's line is checked against, reused */
+		private final StringBuilder line = new StringBuilder();
+
+		/**
+		 * @param f
+		 *            the file to write
+		 * @throws IOException
+		 *             if the file can't be created
+		 */
+		public Writer(File f) throws IOException {
+			this(new FileOutputStream(f));
+		}
+
+		/**
+		 * @param os
+		 *            where to write the list
+		 * @throws IOException
+		 *             if the header can't be written
+		 */
+		public Writer(OutputStream os) throws IOException {
+			this.out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+			this.out.writeInt(AnnotationStore.ATTRIBUTES.length);
+			for (AttributeSet rules : AnnotationStore.ATTRIBUTES) {
+				List<String> tags = rules.values();
+				this.out.writeInt(tags.size());
+				for (String tag : tags)
+					writeString(this.out, tag);
+			}
+			this.position = this.out.size();
+		}
+
+		/**
+		 * Add an image to the list.
+		 *
+		 * @param i
+		 *            the image
+		 * @throws IOException
+		 *             if writing fails
+		 */
+		public void add(MetaImage i) throws IOException {
+			add(i.getName(), i.getAnnotations());
+		}
+
+		/**
+		 * Add an image to the list.
+		 *
+		 * @param name
+		 *            the image's name
+		 * @param notes
+		 *            its Annotations
+		 * @throws IOException
+		 *             if writing fails
+		 */
+		public void add(String name, List<Annotation> notes) throws IOException {
+			this.store.addAll(notes);
+			addString(IMAGE, name);
+		}
+
+		/**
+		 * Add a line of a text list. A line naming an image is kept as the
+		 * image and its Annotations if writing them back gives the same line,
+		 * anything else is kept as text.
+		 *
+		 * @param s
+		 *            the line, without its line end
+		 * @throws IOException
+		 *             if writing fails
+		 */
+		public void addLine(String s) throws IOException {
+			if (s.length() != 0 && !s.startsWith("#")) {
+				int tab = s.indexOf('\t');
+				String name = tab < 0 ? s : s.substring(0, tab);
+				try {
+					ArrayList<Annotation> notes = Annotation.parseAnnotationList(s);
+					this.line.setLength(0);
+					this.line.append(name);
+					for (Annotation a : notes)
+						a.appendTo(this.line.append('\t'));
+					if (s.contentEquals(this.line)) {
+						add(name, notes);
+						return;
+					}
+				} catch (IllegalArgumentException e) {
+					// kept as text
+				}
+			}
+			addString(TEXT, s);
+		}
+
+		/**
+		 * Finish a line of the block being built, its Annotations (if any)
+		 * having been added to the block's store.
+		 *
+		 * @param kind
+		 *            the kind of line
+		 * @param s
+		 *            the line's string
+		 * @throws IOException
+		 *             if writing fails
+		 */
+		private void addString(byte kind, String s) throws IOException {
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			this.text.write(b, 0, b.length);
+			this.kinds[this.lines] = kind;
+			this.ends[this.lines] = this.text.size();
+			this.rows[++this.lines] = this.store.size();
+			if (this.lines == BLOCK_LINES)
+				writeBlock();
+		}
+
+		/**
+		 * Write out the block being built and start a new one.
+		 *
+		 * @throws IOException
+		 *             if writing fails
+		 */
+		private void writeBlock() throws IOException {
+			if (this.lines == 0)
+				return;
+			this.block.reset();
+			DataOutputStream b = new DataOutputStream(this.block);
+			int n = this.lines;
+			b.writeInt(n);
+			b.write(this.kinds, 0, n);
+			writeInts(b, this.ends, n);
+			b.writeInt(this.text.size());
+			this.text.writeTo(b);
+			writeInts(b, this.rows, n + 1);
+			this.store.write(b);
+			b.flush();
+
+			this.offsets.add(Long.valueOf(this.position));
+			this.lengths.add(Integer.valueOf(this.block.size()));
+			this.counts.add(Integer.valueOf(n));
+			this.block.writeTo(this.out);
+			this.position += this.block.size();
+
+			this.lines = 0;
+			this.text.reset();
+			this.store = new AnnotationStore();
+		}
+
+		/**
+		 * Write out the last block, the block index, and the trailer.
+		 *
+		 * @throws IOException
+		 *             if writing fails
+		 */
+		public void finish() throws IOException {
+			writeBlock();
+			long index = this.position;
+			for (int b = 0; b < this.offsets.size(); b++) {
+				this.out.writeLong(this.offsets.get(b).longValue());
+				this.out.writeInt(this.lengths.get(b).intValue());
+				this.out.writeInt(this.counts.get(b).intValue());
+			}
+			this.out.writeLong(index);
+			this.out.writeInt(this.offsets.size());
+			this.out.writeInt(MAGIC);
+			this.out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Reads a binary list a block at a time, each block is read on its own so
+	 * any block can be read without reading those before it. Blocks are read
+	 * into a buffer that's reused for each block rather than memory mapped, so
+	 * nothing keeps the file open once the reader is closed.
+	 */
+	public static class Reader implements Closeable {
+		/** the file */
+		private final RandomAccessFile file;
+		/** the buffer blocks are read into, grown to fit the largest block */
+		private ByteBuffer buf = ByteBuffer.allocate(0);
+		/** the offset of each block */
+		private final long[] offsets;
+		/** the length of each block */
+		private final int[] lengths;
+		/** the number of lines of each block */
+		private final int[] counts;
+		/**
+		 * for each Attribute, the mask each stored bit stands for now, or null
+		 * if its tags haven't changed
+		 */
+		private final long[][] remap;
+		/** the version of the format the file was written in */
+		private final int version;
+
+		/**
+		 * @param f
+		 *            the binary list to read
+		 * @throws IOException
+		 *             if the file can't be read or isn't a binary list
+		 */
+		public Reader(File f) throws IOException {
+			this.file = new RandomAccessFile(f, "r");
+			try {
+				FileChannel ch = this.file.getChannel();
+				long size = ch.size();
+				if (size < 3 * Integer.BYTES + TRAILER)
+					throw new IOException("not a binary list: " + f);
+				ByteBuffer trailer = read(ch, size - TRAILER, TRAILER);
+				long index = trailer.getLong();
+				int blocks = trailer.getInt();
+				if (trailer.getInt() != MAGIC || blocks < 0 || index < 0
+						|| index + (long) blocks * (Long.BYTES + 2 * Integer.BYTES) != size - TRAILER)
+					throw new IOException("not a complete binary list: " + f);
+
+				ByteBuffer idx = read(ch, index, (int) (size - TRAILER - index));
+				this.offsets = new long[blocks];
+				this.lengths = new int[blocks];
+				this.counts = new int[blocks];
+				for (int b = 0; b < blocks; b++) {
+					this.offsets[b] = idx.getLong();
+					this.lengths[b] = idx.getInt();
+					this.counts[b] = idx.getInt();
+				}
+
+				long headerSize = blocks == 0 ? index : this.offsets[0];
+				if (headerSize > Integer.MAX_VALUE)
+					throw new IOException("malformed binary list: " + f);
+				ByteBuffer header = read(ch, 0, (int) headerSize);
+				if (header.getInt() != MAGIC)
+					throw new IOException("not a binary list: " + f);
+				this.version = header.getInt();
+				if (this.version < 1 || this.version > VERSION)
+					throw new IOException("unsupported binary list version " + this.version + ": " + f);
+				this.remap = readAttributes(header);
+			} catch (IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+				this.file.close();
+				throw e instanceof IOException ? (IOException) e : new IOException("malformed binary list: " + f, e);
+			}
+		}
+
+		/**
+		 * @param ch
+		 *            the file's channel
+		 * @param pos
+		 *            the offset to read from
+		 * @param len
+		 *            the number of bytes to read
+		 * @return the bytes read
+		 * @throws IOException
+		 *             if the file ends first
+		 */
+		private static ByteBuffer read(FileChannel ch, long pos, int len) throws IOException {
+			ByteBuffer b = ByteBuffer.allocate(len);
+			ListLayout.readFully(ch, b, pos);
+			b.flip();
+			return b;
+		}
+
+		/**
+		 * @param in
+		 *            the header, positioned at the Attributes' tags
+		 * @return for each Attribute, the mask each stored bit stands for now,
+		 *         or null if its tags are the same as when the list was
+		 *         written. A tag of the list that's no longer a tag of its
+		 *         Attribute stands for no bit, and is reported.
+		 * @throws IOException
+		 *             if the Attributes can't be read
+		 */
+		private static long[][] readAttributes(ByteBuffer in) throws IOException {
+			AttributeSet[] sets = AnnotationStore.ATTRIBUTES;
+			if (in.getInt() != sets.length)
+				throw new IOException("binary list has a different set of attributes");
+			long[][] remap = new long[sets.length][];
+			boolean changed = false;
+			for (int k = 0; k < sets.length; k++) {
+				int n = in.getInt();
+				if (n < 0 || n > AttributeSet.MAX_TAGS)
+					throw new IOException("binary list has " + n + " tags for " + sets[k]);
+				String[] tags = new String[n];
+				for (int t = 0; t < n; t++)
+					tags[t] = readString(in);
+				if (Arrays.asList(tags).equals(sets[k].values()))
+					continue;
+				remap[k] = new long[AttributeSet.MAX_TAGS];
+				for (int t = 0; t < n; t++) {
+					if (!sets[k].contains(tags[t]))
+						System.err.println("binary list: " + tags[t] + " is no longer a tag of " + sets[k]
+								+ ", it's dropped from the selections it was in");
+					remap[k][t] = sets[k].mask(tags[t]);
+				}
+				changed = true;
+			}
+			return changed ? remap : null;
+		}
+
+		/** @return the number of blocks in the list */
+		public int blocks() {
+			return this.offsets.length;
+		}
+
+		/**
+		 * @param b
+		 *            a block
+		 * @return the number of lines in it
+		 */
+		public int lines(int b) {
+			return this.counts[b];
+		}
+
+		/**
+		 * @param b
+		 *            a block
+		 * @return the offset in the file just past the block
+		 */
+		public long end(int b) {
+			return this.offsets[b] + this.lengths[b];
+		}
+
+		/** @return the size of the file in bytes */
+		public long size() {
+			try {
+				return this.file.length();
+			} catch (IOException e) {
+				return 0;
+			}
+		}
+
+		/**
+		 * @param b
+		 *            a block
+		 * @return the block read
+		 * @throws IOException
+		 *             if the block can't be read or is malformed
+		 */
+		public Block block(int b) throws IOException {
+			if (this.lengths[b] < 0)
+				throw new IOException("malformed binary list block " + b);
+			if (this.buf.capacity() < this.lengths[b])
+				this.buf = ByteBuffer.allocate(this.lengths[b]);
+			ByteBuffer in = this.buf;
+			in.clear();
+			in.limit(this.lengths[b]);
+			ListLayout.readFully(this.file.getChannel(), in, this.offsets[b]);
+			in.flip();
+			try {
+				return new Block(in, this.counts[b], this.remap, this.version);
+			} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+					| NegativeArraySizeException e) {
+				throw new IOException("malformed binary list block " + b, e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.file.close();
+		}
+	}
+
+	/**
+	 * The lines of one block of a binary list.
+	 */
+	public static class Block {
+		/** the kind of each line */
+		private final byte[] kinds;
+		/** the end of each line's string in text */
+		private final int[] ends;
+		/** the block's UTF-8 text */
+		private final byte[] text;
+		/** the first Annotation row of each line, and the row past the last */
+		private final int[] rows;
+		/** the block's Annotations */
+		private final AnnotationStore store;
+
+		/**
+		 * @param in
+		 *            the block
+		 * @param n
+		 *            the number of lines the index says it has
+		 * @param remap
+		 *            for each Attribute, the mask each stored bit stands for
+		 *            now, or null if unchanged
+		 * @param version
+		 *            the version of the format the block was written in
+		 * @throws IOException
+		 *             if the block is malformed
+		 */
+		Block(ByteBuffer in, int n, long[][] remap, int version) throws IOException {
+			if (in.getInt() != n)
+				throw new IOException("binary list block doesn't match its index");
+			this.kinds = new byte[n];
+			in.get(this.kinds);
+			this.ends = new int[n];
+			readInts(in, this.ends, n);
+			this.text = new byte[in.getInt()];
+			in.get(this.text);
+			this.rows = new int[n + 1];
+			readInts(in, this.rows, n + 1);
+			this.store = AnnotationStore.read(in, remap, version > 1);
+			if (this.rows[0] != 0)
+				throw new IOException("malformed binary list block");
+			for (int i = 0; i < n; i++)
+				if (this.ends[i] < start(i) || this.ends[i] > this.text.length || this.rows[i + 1] < this.rows[i]
+						|| this.rows[i + 1] > this.store.size())
+					throw new IOException("malformed binary list line " + i);
+		}
+
+		/** @return the number of lines in the block */
+		public int size() {
+			return this.kinds.length;
+		}
+
+		/**
+		 * @param i
+		 *            a line
+		 * @return true if the line is an image and its Annotations, false if
+		 *         it's kept as text
+		 */
+		public boolean isImage(int i) {
+			return this.kinds[i] == IMAGE;
+		}
+
+		/**
+		 * @param i
+		 *            a line
+		 * @return the start of its string in the text
+		 */
+		private int start(int i) {
+			return i == 0 ? 0 : this.ends[i - 1];
+		}
+
+		/**
+		 * @param i
+		 *            a line
+		 * @return the image's name if the line is an image, otherwise the line
+		 */
+		public String getString(int i) {
+			return new String(this.text, start(i), this.ends[i] - start(i), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param i
+		 *            a line
+		 * @return the Annotations of the line's image, empty if it's kept as
+		 *         text
+		 */
+		public ArrayList<Annotation> getAnnotations(int i) {
+			return this.store.get(this.rows[i], this.rows[i + 1]);
+		}
+
+		/**
+		 * @param i
+		 *            a line
+		 * @return the line as it's written in a text list
+		 */
+		public String getLine(int i) {
+			if (!isImage(i))
+				return getString(i);
+			StringBuilder ret = new StringBuilder(getString(i));
+			try {
+				for (Annotation a : getAnnotations(i))
+					a.appendTo(ret.append('\t'));
+			} catch (IOException e) {
+				// a StringBuilder never throws
+				throw new AssertionError(e);
+			}
+			return ret.toString();
+		}
+
+		/** @return the Annotations of the block's images */
+		public AnnotationStore getStore() {
+			return this.store;
+		}
+
+		/**
+		 * @param i
+		 *            a line
+		 * @return the first row of the line's Annotations in the block's store
+		 */
+		public int getFirstRow(int i) {
+			return this.rows[i];
+		}
+
+		/**
+		 * @param i
+		 *            a line
+		 * @return the row just past the line's Annotations in the block's store
+		 */
+		public int getEndRow(int i) {
+			return this.rows[i + 1];
+		}
+	}
+
+	// Encoding ****************************************************************
+
+	/**
+	 * Write a column of ints in as few bytes per value as fit all of them, see
+	 * {@link #writeLongs(DataOutputStream, long[], int, int, int)}.
+	 *
+	 * @param out
+	 *            where to write
+	 * @param column
+	 *            the column
+	 * @param n
+	 *            the number of values to write
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	static void writeInts(DataOutputStream out, int[] column, int n) throws IOException {
+		long[] values = new long[n];
+		for (int i = 0; i < n; i++)
+			values[i] = column[i];
+		writeLongs(out, values, 0, 1, n);
+	}
+
+	/**
+	 * @param in
+	 *            where to read from
+	 * @param column
+	 *            the column to fill
+	 * @param n
+	 *            the number of values to read
+	 * @throws IOException
+	 *             if a value doesn't fit in an int
+	 */
+	static void readInts(ByteBuffer in, int[] column, int n) throws IOException {
+		int width = in.get();
+		if (width == 0) {
+			long v = in.getLong();
+			if (v != (int) v)
+				throw new IOException("malformed int column");
+			Arrays.fill(column, 0, n, (int) v);
+			return;
+		}
+		switch (width) {
+		case 1:
+			for (int i = 0; i < n; i++)
+				column[i] = in.get();
+			break;
+		case 2:
+			for (int i = 0; i < n; i++)
+				column[i] = in.getShort();
+			break;
+		case 4:
+			in.asIntBuffer().get(column, 0, n);
+			in.position(in.position() + n * Integer.BYTES);
+			break;
+		default:
+			throw new IOException("malformed int column, " + width + " bytes a value");
+		}
+	}
+
+	/**
+	 * Write a column of longs, taking every stride-th value from an array. A
+	 * column whose values are all the same is written as that value alone,
+	 * otherwise each value is written in 1, 2, 4, or 8 bytes, the fewest that
+	 * fit every value of the column.
+	 *
+	 * @param out
+	 *            where to write
+	 * @param a
+	 *            the array holding the column
+	 * @param from
+	 *            the index of the column's first value
+	 * @param stride
+	 *            the distance between the column's values
+	 * @param n
+	 *            the number of values to write
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	static void writeLongs(DataOutputStream out, long[] a, int from, int stride, int n) throws IOException {
+		boolean constant = true;
+		int width = 1;
+		for (int i = 0, j = from; i < n; i++, j += stride) {
+			long v = a[j];
+			constant &= v == a[from];
+			if (v != (byte) v)
+				width = Math.max(width, v == (short) v ? 2 : v == (int) v ? 4 : 8);
+		}
+		if (constant) {
+			out.writeByte(0);
+			out.writeLong(n == 0 ? 0 : a[from]);
+			return;
+		}
+		out.writeByte(width);
+		for (int i = 0, j = from; i < n; i++, j += stride) {
+			switch (width) {
+			case 1:
+				out.writeByte((int) a[j]);
+				break;
+			case 2:
+				out.writeShort((int) a[j]);
+				break;
+			case 4:
+				out.writeInt((int) a[j]);
+				break;
+			default:
+				out.writeLong(a[j]);
+			}
+		}
+	}
+
+	/**
+	 * @param in
+	 *            where to read from
+	 * @param a
+	 *            the array to fill every stride-th value of
+	 * @param from
+	 *            the index of the column's first value
+	 * @param stride
+	 *            the distance between the column's values
+	 * @param n
+	 *            the number of values to read
+	 * @throws IOException
+	 *             if the column is malformed
+	 */
+	static void readLongs(ByteBuffer in, long[] a, int from, int stride, int n) throws IOException {
+		int width = in.get();
+		long v = width == 0 ? in.getLong() : 0;
+		for (int i = 0, j = from; i < n; i++, j += stride) {
+			switch (width) {
+			case 0:
+				a[j] = v;
+				break;
+			case 1:
+				a[j] = in.get();
+				break;
+			case 2:
+				a[j] = in.getShort();
+				break;
+			case 4:
+				a[j] = in.getInt();
+				break;
+			case 8:
+				a[j] = in.getLong();
+				break;
+			default:
+				throw new IOException("malformed long column, " + width + " bytes a value");
+			}
+		}
+	}
+
+	/**
+	 * @param out
+	 *            where to write
+	 * @param s
+	 *            the string to write
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * @param in
+	 *            where to read from
+	 * @return the next string
+	 */
+	static String readString(ByteBuffer in) {
+		byte[] b = new byte[in.getInt()];
+		in.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,78 @@
+package struct;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Finds all images in a directory matching a mask, forking a new scanner for
+ * each sub-directory, so a repository's directories are walked concurrently
+ * when the scanner is run on a ForkJoinPool. Symbolic links to directories are
+ * not followed, so a link back up the tree can't make the scan go on forever.
+ * <p>
+ * Images are put in a queue as they're found, the order they're found in
+ * isn't fixed.
+ *
+ * @author bonifantmc
+ *
+ */
+@SuppressWarnings("serial")
+public class DirectoryScanner extends RecursiveAction {
+	/** the directory to scan */
+	private final Path dir;
+	/** the mask image names must match */
+	private final PathMatcher glob;
+	/** where images are put as they're found */
+	private final Queue<Path> found;
+	/** true once the scan should stop */
+	private final BooleanSupplier stop;
+
+	/**
+	 * @param dir
+	 *            the directory to scan
+	 * @param glob
+	 *            the mask image names must match
+	 * @param found
+	 *            where images are put as they're found, must be safe to add
+	 *            to from several threads
+	 * @param stop
+	 *            checked as the scan goes, once it's true the scan stops
+	 */
+	public DirectoryScanner(Path dir, PathMatcher glob, Queue<Path> found, BooleanSupplier stop) {
+		this.dir = dir;
+		this.glob = glob;
+		this.found = found;
+		this.stop = stop;
+	}
+
+	@Override
+	protected void compute() {
+		List<DirectoryScanner> subdirs = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir)) {
+			for (Path p : stream) {
+				if (this.stop.getAsBoolean())
+					return;
+				if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+					subdirs.add(new DirectoryScanner(p, this.glob, this.found, this.stop));
+					continue;
+				}
+				File f = p.toFile();
+				if (this.glob.matches(p.getFileName()) && MetaImage.IMAGE_FILTER.accept(f, f.getName()))
+					this.found.add(p);
+			}
+		} catch (IOException e) {
+			// an unreadable directory shouldn't stop the rest of the scan
+			e.printStackTrace();
+		}
+		invokeAll(subdirs);
+	}
+}
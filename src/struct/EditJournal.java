@@ -0,0 +1,450 @@
+package struct;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import annotations.Annotation;
+
+/**
+ * An append-only journal of the edits made to a list since it was last saved
+ * (list.lst is journaled in dir/list.lst.journal), so edits survive the ILB
+ * closing without the list being saved.
+ * <p>
+ * Each record is one line. Rather than the steps of an edit (an Annotation
+ * added, moved, or removed, an Attribute or category changed) a record holds
+ * what the edit left behind, so replaying a record never depends on the ones
+ * before it:
+ * <ul>
+ * <li>'=' followed by an image's whole line as it was after the edit</li>
+ * <li>'-' followed by the name of an image removed from the list</li>
+ * </ul>
+ * Recording an edit only takes a snapshot of the image: its Annotations are
+ * copied into the columns of an {@link AnnotationStore}, which costs about as
+ * much as the Annotations are long and needs no lock the flushing thread holds
+ * for more than a moment. {@link #flush()} swaps the snapshots taken for an
+ * empty batch, then turns them into lines and appends them to the journal
+ * (forced to disk before flush returns) without blocking anyone recording
+ * more edits. A record the same as an image's latest is dropped.
+ * <p>
+ * A record cut short by a crash has no new line and is ignored when the
+ * journal is replayed. Once the journal holds several times more than the
+ * latest record of each image it's compacted down to just those records.
+ * Images are matched to records by name, if a list names an image more than
+ * once the first of them takes the record, and an image removed from the list
+ * stays removed unless a later record of its line adds it back.
+ *
+ * @author bonifantmc
+ *
+ */
+public class EditJournal implements Closeable {
+	/** the extension added to a list's file name to name its journal */
+	public static final String EXTENSION = ".journal";
+	/** marks a record of an image's line */
+	private static final char LINE = '=';
+	/** marks a record of an image's removal */
+	private static final char REMOVED = '-';
+	/** journals smaller than this are never compacted, 1MB */
+	private static final long COMPACT_AT = 1 << 20;
+
+	/** the journal file */
+	private final File file;
+	/**
+	 * held while the journal file is written, so flushes, compactions, and
+	 * clearing take turns, never held while recording
+	 */
+	private final Object writing = new Object();
+	/** the snapshots taken since the last flush, guarded by this */
+	private Batch pending = new Batch(0);
+	/** bumped each time the journal is cleared, guarded by this */
+	private int generation;
+
+	// the rest is only touched while holding writing
+
+	/** the latest record of each image journaled */
+	private final HashMap<String, Latest> latest = new HashMap<>();
+	/** the number of bytes in the latest records */
+	private long live;
+	/** the size of the journal file */
+	private long written;
+	/** the line being written */
+	private final StringBuilder line = new StringBuilder(256);
+
+	/**
+	 * Start a new, empty journal, replacing any journal already in the file.
+	 *
+	 * @param file
+	 *            the journal file
+	 * @throws IOException
+	 *             if the old journal can't be deleted
+	 */
+	public EditJournal(File file) throws IOException {
+		this(file, false);
+	}
+
+	/**
+	 * Start journaling to a file, keeping the records already in it if asked
+	 * to. A journal being recovered from is kept until the recovered edits
+	 * have been recorded again and flushed, later records win when the
+	 * journal is replayed so the old ones do no harm, and a crash before the
+	 * flush still leaves them to recover.
+	 *
+	 * @param file
+	 *            the journal file
+	 * @param keep
+	 *            true to append to the records already in the file, false to
+	 *            replace them
+	 * @throws IOException
+	 *             if the old journal can't be deleted, or read if it's kept
+	 */
+	public EditJournal(File file, boolean keep) throws IOException {
+		this.file = file;
+		if (!keep)
+			Files.deleteIfExists(file.toPath());
+		else if (file.isFile())
+			this.written = dropPartial(file);
+	}
+
+	/**
+	 * Cut a record left without its new line by a crash off the end of a
+	 * journal, so the records appended after it aren't joined to it.
+	 *
+	 * @param file
+	 *            a journal file
+	 * @return the size of the journal, its complete records
+	 * @throws IOException
+	 *             if the journal can't be read or cut
+	 */
+	private static long dropPartial(File file) throws IOException {
+		long complete = 0;
+		long size;
+		try (MappedLineReader in = new MappedLineReader(file)) {
+			while (in.readLine() != null && in.lineEnd() < in.size())
+				complete = in.position();
+			size = in.size();
+		}
+		if (complete < size)
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(complete);
+			}
+		return complete;
+	}
+
+	/**
+	 * @param dir
+	 *            the directory journals are kept in
+	 * @param list
+	 *            a list file
+	 * @return the file the list's edits are journaled in
+	 */
+	public static File fileFor(File dir, File list) {
+		return new File(dir, list.getName() + EXTENSION);
+	}
+
+	/** @return the journal file */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Take a snapshot of an image's line as it is now, to be journaled at the
+	 * next flush. Should be called from the thread that edits the image.
+	 *
+	 * @param i
+	 *            the image edited
+	 */
+	public synchronized void record(MetaImage i) {
+		this.pending.add(i.getName(), i.getAnnotations());
+	}
+
+	/**
+	 * Record an image's removal from the list.
+	 *
+	 * @param i
+	 *            the image removed
+	 */
+	public synchronized void remove(MetaImage i) {
+		this.pending.add(i.getName(), null);
+	}
+
+	/**
+	 * Append the records of the snapshots taken since the last flush to the
+	 * journal and force them to disk.
+	 *
+	 * @throws IOException
+	 *             if the journal can't be written
+	 */
+	public void flush() throws IOException {
+		Batch b;
+		synchronized (this) {
+			if (this.pending.size() == 0)
+				return;
+			b = this.pending;
+			this.pending = new Batch(this.generation);
+		}
+		synchronized (this.writing) {
+			// snapshots taken before the journal was cleared are in the list
+			synchronized (this) {
+				if (b.generation != this.generation)
+					return;
+			}
+			write(b);
+			if (this.written > COMPACT_AT && this.written > 4 * this.live)
+				compact();
+		}
+	}
+
+	/**
+	 * Append the records of a batch of snapshots to the journal.
+	 *
+	 * @param b
+	 *            the snapshots
+	 * @throws IOException
+	 *             if the journal can't be written
+	 */
+	private void write(Batch b) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(this.file, true);
+				ListWriter w = new ListWriter(new BufferedOutputStream(fos))) {
+			for (int k = 0; k < b.size(); k++) {
+				String name = b.names.get(k);
+				boolean removed = b.from[k] < 0;
+				this.line.setLength(0);
+				this.line.append(removed ? REMOVED : LINE).append(name);
+				if (!removed)
+					for (Annotation a : b.store.get(b.from[k], b.to[k]))
+						a.appendTo(this.line.append('\t'));
+
+				long hash = Fnv.hash(this.line);
+				Latest old = this.latest.get(name);
+				// a line after a removal is of an image added back, it
+				// replaces the removal like any later record
+				if (old != null && old.hash == hash)
+					continue;
+				long start = w.position();
+				w.writeLine(this.line);
+				int length = (int) (w.position() - start);
+				this.live += length - (old == null ? 0 : old.length);
+				this.latest.put(name, new Latest(hash, length));
+			}
+			w.flush();
+			fos.getChannel().force(false);
+			this.written += w.position();
+		}
+	}
+
+	/**
+	 * Rewrite the journal as just the latest record of each image, found by
+	 * reading the journal twice. The new journal replaces the old one in a
+	 * single rename, so a crash leaves either one whole.
+	 *
+	 * @throws IOException
+	 *             if the journal can't be rewritten
+	 */
+	private void compact() throws IOException {
+		// the number of the last record of each image
+		HashMap<String, Integer> last = new HashMap<>();
+		int n = 0;
+		try (MappedLineReader in = new MappedLineReader(this.file)) {
+			String record;
+			while ((record = in.readLine()) != null)
+				last.put(nameOf(record), Integer.valueOf(n++));
+		}
+
+		File tmp = new File(this.file.getPath() + ".tmp");
+		try (MappedLineReader in = new MappedLineReader(this.file);
+				FileOutputStream fos = new FileOutputStream(tmp);
+				ListWriter w = new ListWriter(new BufferedOutputStream(fos))) {
+			String record;
+			for (int k = 0; (record = in.readLine()) != null; k++)
+				if (last.get(nameOf(record)).intValue() == k)
+					w.writeLine(record);
+			w.flush();
+			fos.getChannel().force(false);
+			this.written = w.position();
+		}
+		Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Throw away every record, once the list is saved they're all in it.
+	 *
+	 * @throws IOException
+	 *             if the journal can't be deleted
+	 */
+	public void clear() throws IOException {
+		synchronized (this) {
+			this.generation++;
+			this.pending = new Batch(this.generation);
+		}
+		synchronized (this.writing) {
+			this.latest.clear();
+			this.live = 0;
+			this.written = 0;
+			Files.deleteIfExists(this.file.toPath());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	/**
+	 * @param record
+	 *            a record of the journal
+	 * @return the name of the image the record is of
+	 */
+	private static String nameOf(String record) {
+		int tab = record.indexOf('\t');
+		return record.substring(1, record.charAt(0) == LINE && tab > 0 ? tab : record.length());
+	}
+
+	/**
+	 * @param file
+	 *            a journal file
+	 * @return true if the journal holds any records
+	 */
+	public static boolean hasEdits(File file) {
+		return file.isFile() && file.length() > 0;
+	}
+
+	/**
+	 * Replay a journal on top of the images of the list it journals, each
+	 * image's latest record wins.
+	 *
+	 * @param file
+	 *            the journal
+	 * @param images
+	 *            the images of the list, images removed in the journal are
+	 *            removed from it
+	 * @return the images whose lines were replaced
+	 * @throws IOException
+	 *             if the journal can't be read
+	 */
+	public static List<MetaImage> replay(File file, List<MetaImage> images) throws IOException {
+		// only the latest complete record of each image matters
+		Map<String, String> records = new HashMap<>();
+		try (MappedLineReader in = new MappedLineReader(file)) {
+			String record;
+			while ((record = in.readLine()) != null) {
+				// a record without its new line was cut short
+				if (in.lineEnd() == in.size())
+					break;
+				if (record.length() < 2 || (record.charAt(0) != LINE && record.charAt(0) != REMOVED))
+					continue;
+				records.put(nameOf(record), record);
+			}
+		}
+
+		HashMap<String, MetaImage> byName = new HashMap<>();
+		for (MetaImage i : images)
+			byName.putIfAbsent(i.getName(), i);
+
+		ArrayList<MetaImage> replaced = new ArrayList<>();
+		ArrayList<MetaImage> removed = new ArrayList<>();
+		for (Map.Entry<String, String> e : records.entrySet()) {
+			MetaImage i = byName.get(e.getKey());
+			if (i == null)
+				continue;
+			String record = e.getValue();
+			if (record.charAt(0) == REMOVED) {
+				removed.add(i);
+				continue;
+			}
+			try {
+				ArrayList<Annotation> notes = Annotation.parseAnnotationList(record.substring(1));
+				i.getAnnotations().clear();
+				i.getAnnotations().addAll(notes);
+				replaced.add(i);
+			} catch (IllegalArgumentException ex) {
+				// a malformed record is skipped, the image keeps its saved line
+				ex.printStackTrace();
+			}
+		}
+		if (!removed.isEmpty()) {
+			Set<MetaImage> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+			gone.addAll(removed);
+			images.removeIf(gone::contains);
+		}
+		return replaced;
+	}
+
+	/**
+	 * Snapshots of edited images, their names and their Annotations packed
+	 * into the columns of a store.
+	 */
+	private static class Batch {
+		/** the generation of the journal the snapshots were taken in */
+		final int generation;
+		/** the Annotations of the images */
+		final AnnotationStore store = new AnnotationStore(64);
+		/** the name of each image */
+		final ArrayList<String> names = new ArrayList<>();
+		/** the first row of each image's Annotations, -1 if it was removed */
+		int[] from = new int[16];
+		/** the row just past each image's Annotations */
+		int[] to = new int[16];
+
+		/**
+		 * @param generation
+		 *            the generation of the journal the snapshots are taken in
+		 */
+		Batch(int generation) {
+			this.generation = generation;
+		}
+
+		/**
+		 * @param name
+		 *            the image's name
+		 * @param notes
+		 *            its Annotations, or null if the image was removed
+		 */
+		void add(String name, List<Annotation> notes) {
+			int k = this.names.size();
+			if (k == this.from.length) {
+				this.from = Arrays.copyOf(this.from, 2 * k);
+				this.to = Arrays.copyOf(this.to, 2 * k);
+			}
+			this.names.add(name);
+			this.from[k] = notes == null ? -1 : this.store.addAll(notes);
+			this.to[k] = this.store.size();
+		}
+
+		/** @return the number of snapshots */
+		int size() {
+			return this.names.size();
+		}
+	}
+
+	/** What's known of the latest record of an image */
+	private static class Latest {
+		/** the hash of the record */
+		final long hash;
+		/** the record's length in bytes */
+		final int length;
+
+		/**
+		 * @param hash
+		 *            the hash of the record
+		 * @param length
+		 *            the record's length in bytes
+		 */
+		Latest(long hash, int length) {
+			this.hash = hash;
+			this.length = length;
+		}
+	}
+}
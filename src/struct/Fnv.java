@@ -0,0 +1,33 @@
+package struct;
+
+/**
+ * The 64 bit FNV-1a hash of text, the one hash the timestamps, the edit
+ * journal, and sharded lists key images' names and lines by.
+ *
+ * @author bonifantmc
+ *
+ */
+final class Fnv {
+	/** the FNV-1a offset basis */
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	/** the FNV-1a prime */
+	private static final long PRIME = 0x100000001b3L;
+
+	/** static class, no constructor needed */
+	private Fnv() {
+	}
+
+	/**
+	 * @param s
+	 *            some text
+	 * @return the 64 bit FNV-1a hash of the text's chars
+	 */
+	static long hash(CharSequence s) {
+		long h = OFFSET;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= PRIME;
+		}
+		return h;
+	}
+}
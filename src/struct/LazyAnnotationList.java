@@ -0,0 +1,351 @@
+package struct;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import annotations.Annotation;
+
+/**
+ * A list of Annotations that holds on to the text of its annotations, as it
+ * was read from a list file, and only parses them the first time the list is
+ * looked at.
+ * <p>
+ * Most images of a large list are never opened or drawn with their
+ * annotations, so building every Annotation (along with its Attributes,
+ * Categories, and sub-Annotations) while loading wastes both time and memory.
+ * Until it is materialized this list only keeps the annotation part of its
+ * line (the image name is dropped) as UTF-8 bytes, and a line without any
+ * annotations keeps nothing at all.
+ * <p>
+ * A LazyAnnotationList can also be backed by a range of an
+ * {@link AnnotationStore}, in which case the Annotations are rebuilt from the
+ * store rather than parsed.
+ * <p>
+ * Every method that reads or changes the list parses the text first, so a
+ * LazyAnnotationList can be used anywhere an ArrayListModel of Annotations is
+ * expected. Text that can't be parsed is reported and leaves the list empty,
+ * rather than throwing from whatever happened to look at the list first.
+ *
+ * @author bonifantmc
+ *
+ */
+@SuppressWarnings("serial")
+public class LazyAnnotationList extends ArrayListModel<Annotation> {
+	/** the text still to be parsed, null once parsing has started */
+	private byte[] text;
+	/** the store holding the annotations, null if not backed by a store */
+	private AnnotationStore store;
+	/** the first row of the store holding the list's annotations */
+	private int from;
+	/** the row just past the list's annotations */
+	private int to;
+	/** true once the text has been parsed into the list */
+	private volatile boolean materialized;
+
+	/**
+	 * An empty list to be filled by {@link #appendText(String)}, the text
+	 * appended is kept unparsed until the list is first looked at.
+	 */
+	public LazyAnnotationList() {
+		super(0);
+		this.text = new byte[0];
+	}
+
+	/**
+	 * @param line
+	 *            a line of a list file, the image name followed by its tab
+	 *            separated annotations
+	 */
+	public LazyAnnotationList(String line) {
+		super(0);
+		appendText(line);
+		this.materialized = this.text == null;
+	}
+
+	/**
+	 * @param store
+	 *            the store holding the annotations
+	 * @param from
+	 *            the first row of the store holding the annotations
+	 * @param to
+	 *            the row just past the annotations
+	 */
+	public LazyAnnotationList(AnnotationStore store, int from, int to) {
+		super(0);
+		if (from < to) {
+			this.store = store;
+			this.from = from;
+			this.to = to;
+		}
+		this.materialized = this.store == null;
+	}
+
+	/**
+	 * Add the annotations of another line to this list. If the list hasn't
+	 * been materialized yet the line is kept as text with the rest, otherwise
+	 * it's parsed and added immediately.
+	 *
+	 * @param line
+	 *            a line of a list file, the image name followed by its tab
+	 *            separated annotations
+	 */
+	public synchronized void appendText(String line) {
+		int tab = line.indexOf('\t');
+		if (tab < 0 || line.indexOf('[', tab) < 0)
+			return;
+		// a list backed by a store can't hold text as well
+		if (this.store != null)
+			materialize();
+		if (this.materialized) {
+			super.addAll(Annotation.parseAnnotationList(line));
+			return;
+		}
+		byte[] add = line.substring(tab).getBytes(StandardCharsets.UTF_8);
+		if (this.text == null) {
+			this.text = add;
+		} else {
+			byte[] joined = new byte[this.text.length + add.length];
+			System.arraycopy(this.text, 0, joined, 0, this.text.length);
+			System.arraycopy(add, 0, joined, this.text.length, add.length);
+			this.text = joined;
+		}
+	}
+
+	/** @return true if the annotations have been parsed or rebuilt */
+	public boolean isMaterialized() {
+		return this.materialized;
+	}
+
+	/**
+	 * Parse the annotation text, or rebuild the annotations from the store,
+	 * into the list, if it hasn't been already.
+	 */
+	public void materialize() {
+		if (this.materialized)
+			return;
+		synchronized (this) {
+			// text is null if already parsed, or if this is a call made while
+			// the list is being filled
+			if (this.materialized || (this.text == null && this.store == null))
+				return;
+			if (this.store != null) {
+				AnnotationStore s = this.store;
+				this.store = null;
+				super.addAll(s.get(this.from, this.to));
+				this.materialized = true;
+				return;
+			}
+			String line = new String(this.text, StandardCharsets.UTF_8);
+			this.text = null;
+			try {
+				if (line.length() > 0)
+					super.addAll(Annotation.parseAnnotationList(line));
+			} catch (IllegalArgumentException e) {
+				e.printStackTrace();
+			}
+			this.materialized = true;
+		}
+	}
+
+	// Parse before any access ************************************************
+
+	@Override
+	public int size() {
+		materialize();
+		return super.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		materialize();
+		return super.isEmpty();
+	}
+
+	@Override
+	public Annotation get(int index) {
+		materialize();
+		return super.get(index);
+	}
+
+	@Override
+	public Annotation set(int index, Annotation element) {
+		materialize();
+		return super.set(index, element);
+	}
+
+	@Override
+	public boolean add(Annotation e) {
+		materialize();
+		return super.add(e);
+	}
+
+	@Override
+	public void add(int index, Annotation element) {
+		materialize();
+		super.add(index, element);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Annotation> c) {
+		materialize();
+		return super.addAll(c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends Annotation> c) {
+		materialize();
+		return super.addAll(index, c);
+	}
+
+	@Override
+	public void clear() {
+		materialize();
+		super.clear();
+	}
+
+	@Override
+	public Annotation remove(int index) {
+		materialize();
+		return super.remove(index);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		materialize();
+		return super.remove(o);
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		materialize();
+		super.removeRange(fromIndex, toIndex);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		materialize();
+		return super.removeAll(c);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		materialize();
+		return super.retainAll(c);
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super Annotation> filter) {
+		materialize();
+		return super.removeIf(filter);
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<Annotation> operator) {
+		materialize();
+		super.replaceAll(operator);
+	}
+
+	@Override
+	public void sort(Comparator<? super Annotation> c) {
+		materialize();
+		super.sort(c);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		materialize();
+		return super.contains(o);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		materialize();
+		return super.containsAll(c);
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		materialize();
+		return super.indexOf(o);
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		materialize();
+		return super.lastIndexOf(o);
+	}
+
+	@Override
+	public Iterator<Annotation> iterator() {
+		materialize();
+		return super.iterator();
+	}
+
+	@Override
+	public ListIterator<Annotation> listIterator() {
+		materialize();
+		return super.listIterator();
+	}
+
+	@Override
+	public ListIterator<Annotation> listIterator(int index) {
+		materialize();
+		return super.listIterator(index);
+	}
+
+	@Override
+	public List<Annotation> subList(int fromIndex, int toIndex) {
+		materialize();
+		return super.subList(fromIndex, toIndex);
+	}
+
+	@Override
+	public Spliterator<Annotation> spliterator() {
+		materialize();
+		return super.spliterator();
+	}
+
+	@Override
+	public void forEach(Consumer<? super Annotation> action) {
+		materialize();
+		super.forEach(action);
+	}
+
+	@Override
+	public Object[] toArray() {
+		materialize();
+		return super.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		materialize();
+		return super.toArray(a);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		materialize();
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		materialize();
+		return super.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		materialize();
+		return super.toString();
+	}
+}
@@ -0,0 +1,656 @@
+package struct;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import annotations.Annotation;
+import annotations.Attribute;
+import annotations.Feature;
+
+/**
+ * A binary sidecar for a list file (list.lst is indexed by list.lst.ilbidx)
+ * that holds the images of the list already parsed, so reopening a list that
+ * hasn't changed doesn't have to parse any text.
+ * <p>
+ * The sidecar starts with a header identifying the format and version and the
+ * list it was written from: the list's size, last modified time, and a CRC32
+ * of its contents. A sidecar is only used if all three match the list,
+ * otherwise the list is read as text and a new sidecar written alongside it.
+ * <p>
+ * After the header come the records, in the order the images appear in the
+ * list, each starting with a tag byte:
+ * <ul>
+ * <li>{@value #BASE}, a change to the base URL images are found relative to,
+ * followed by the URL</li>
+ * <li>{@value #IMAGE}, an image: where its line starts and ends in the list
+ * (see {@link ListLayout}), its name, width, height, and its Annotations</li>
+ * <li>{@value #END}, the end of the records, followed by {@value #MAGIC} again
+ * so a sidecar that was cut short is never mistaken for a complete one</li>
+ * </ul>
+ * Each Annotation is written as its Feature, its position relative to its
+ * parent and its size, the values of each of its Attributes, its category,
+ * breed, roll, pitch, and yaw, followed by its sub-Annotations. Strings are
+ * written as their length in bytes followed by their UTF-8 bytes.
+ *
+ * @author bonifantmc
+ *
+ */
+public class ListIndex {
+	/** the extension added to a list's file name to name its sidecar */
+	public static final String EXTENSION = ".ilbidx";
+	/** identifies a file as a list index, "ILBX" */
+	private static final int MAGIC = 0x494C4258;
+	/** the version of the format, bump whenever the layout changes */
+	private static final int VERSION = 2;
+	/** tag of the record marking the end of the records */
+	private static final byte END = 0;
+	/** tag of an image record */
+	private static final byte IMAGE = 1;
+	/** tag of a base URL record */
+	private static final byte BASE = 2;
+	/** the size of the buffer files are read through, 1MB */
+	private static final int WINDOW = 1 << 20;
+	/** where the CRC32 of the list is in the header */
+	private static final int HASH_AT = 24;
+	/** the CRC32 polynomial, reversed */
+	private static final long CRC_POLY = 0xedb88320L;
+
+	/** static class, no constructor needed */
+	private ListIndex() {
+	}
+
+	/**
+	 * @param list
+	 *            a list file
+	 * @return the sidecar the list's index is kept in
+	 */
+	public static File sidecarOf(File list) {
+		return new File(list.getPath() + EXTENSION);
+	}
+
+	/**
+	 * @param list
+	 *            a list file
+	 * @return the CRC32 of the list's contents
+	 * @throws IOException
+	 *             if the list can't be read
+	 */
+	static long hash(File list) throws IOException {
+		CRC32 crc = new CRC32();
+		try (RandomAccessFile raf = new RandomAccessFile(list, "r"); FileChannel ch = raf.getChannel()) {
+			long size = ch.size();
+			ByteBuffer buf = ByteBuffer.allocate((int) Math.min(WINDOW, size));
+			for (long pos = 0; pos < size; pos += buf.limit()) {
+				buf.clear();
+				buf.limit((int) Math.min(WINDOW, size - pos));
+				ListLayout.readFully(ch, buf, pos);
+				buf.flip();
+				crc.update(buf);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * @param crc1
+	 *            the CRC32 of some bytes
+	 * @param crc2
+	 *            the CRC32 of the bytes that follow them
+	 * @param len2
+	 *            the number of bytes that follow them
+	 * @return the CRC32 of all the bytes, without reading them again (zlib's
+	 *         crc32_combine)
+	 */
+	static long combine(long crc1, long crc2, long len2) {
+		if (len2 <= 0)
+			return crc1;
+		// odd shifts a CRC by one zero bit, even by two, then squared in turn
+		// to shift by each power of two zero bytes
+		long[] even = new long[32], odd = new long[32];
+		odd[0] = CRC_POLY;
+		for (int n = 1; n < 32; n++)
+			odd[n] = 1L << (n - 1);
+		square(even, odd);
+		square(odd, even);
+		do {
+			square(even, odd);
+			if ((len2 & 1) != 0)
+				crc1 = times(even, crc1);
+			len2 >>= 1;
+			if (len2 == 0)
+				break;
+			square(odd, even);
+			if ((len2 & 1) != 0)
+				crc1 = times(odd, crc1);
+			len2 >>= 1;
+		} while (len2 != 0);
+		return crc1 ^ crc2;
+	}
+
+	/**
+	 * @param mat
+	 *            a 32x32 matrix over GF(2), a column per bit
+	 * @param vec
+	 *            a 32 bit vector
+	 * @return the matrix times the vector
+	 */
+	private static long times(long[] mat, long vec) {
+		long sum = 0;
+		for (int i = 0; vec != 0; i++, vec >>= 1)
+			if ((vec & 1) != 0)
+				sum ^= mat[i];
+		return sum;
+	}
+
+	/**
+	 * @param square
+	 *            set to the matrix squared
+	 * @param mat
+	 *            a 32x32 matrix over GF(2)
+	 */
+	private static void square(long[] square, long[] mat) {
+		for (int n = 0; n < 32; n++)
+			square[n] = times(mat, mat[n]);
+	}
+
+	/**
+	 * Writes the index of a list as the list is read. Records are written to a
+	 * temporary file that only replaces the list's sidecar once
+	 * {@link #commit()} is called, so a load that's cancelled or fails never
+	 * leaves a partial index behind.
+	 * <p>
+	 * The list is hashed from the bytes read to parse it, see
+	 * {@link #hash(MappedLineReader)} and {@link #hash(long, long)}, an index
+	 * whose hash doesn't cover the whole list isn't committed.
+	 * <p>
+	 * An index is only an aid to loading, so failing to write one is reported
+	 * but otherwise ignored.
+	 */
+	public static class Writer implements Closeable {
+		/** the sidecar being written */
+		private final File sidecar;
+		/** where the records are written until committed */
+		private final File tmp;
+		/** the stream writing to tmp */
+		private final DataOutputStream out;
+		/** the size of the list */
+		private final long length;
+		/** the CRC32 of the list's bytes hashed so far */
+		private long crc;
+		/** the number of the list's bytes hashed so far */
+		private long hashed;
+		/** the reader hashing the rest of the list as it reads, or null */
+		private MappedLineReader reader;
+		/** the checksum the reader updates */
+		private CRC32 reading;
+		/** where the reader was when it started hashing */
+		private long readFrom;
+		/** the base URL of the last image added */
+		private String base;
+		/** true if writing failed and the index should be abandoned */
+		private boolean failed;
+		/** true once the index has replaced the sidecar */
+		private boolean committed;
+
+		/**
+		 * Start a new index for a list, the list must not change while its
+		 * index is written.
+		 *
+		 * @param list
+		 *            the list being read
+		 * @throws IOException
+		 *             if the index can't be created
+		 */
+		public Writer(File list) throws IOException {
+			this.sidecar = sidecarOf(list);
+			// each load writes its own temporary file, so overlapping loads of
+			// the same list never write over each other's
+			this.tmp = File.createTempFile(this.sidecar.getName(), ".tmp",
+					this.sidecar.getAbsoluteFile().getParentFile());
+			this.length = list.length();
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.tmp), 1 << 16));
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+			this.out.writeLong(this.length);
+			this.out.writeLong(list.lastModified());
+			// the hash is filled in once the whole list has been read
+			this.out.writeLong(0);
+		}
+
+		/**
+		 * Hash the rest of the list, from where a reader is, as the reader
+		 * reads it.
+		 *
+		 * @param in
+		 *            a reader of the list
+		 */
+		public void hash(MappedLineReader in) {
+			this.reader = in;
+			this.readFrom = in.position();
+			this.reading = new CRC32();
+			in.checksum(this.reading);
+		}
+
+		/**
+		 * Hash the next region of the list, hashed elsewhere.
+		 *
+		 * @param regionCrc
+		 *            the CRC32 of the region
+		 * @param regionLength
+		 *            the size of the region
+		 */
+		public void hash(long regionCrc, long regionLength) {
+			this.crc = combine(this.crc, regionCrc, regionLength);
+			this.hashed += regionLength;
+		}
+
+		/**
+		 * Add the next image of the list to the index.
+		 *
+		 * @param baseURL
+		 *            the URL the image is relative to, or null if the image is
+		 *            found in a repository
+		 * @param i
+		 *            the image
+		 * @param start
+		 *            the offset in the list the image's line starts at
+		 * @param end
+		 *            the offset in the list just past the image's line, not
+		 *            counting its terminator
+		 */
+		public void add(String baseURL, MetaImage i, long start, long end) {
+			if (this.failed)
+				return;
+			try {
+				if (!Objects.equals(baseURL, this.base)) {
+					this.out.writeByte(BASE);
+					writeString(this.out, baseURL);
+					this.base = baseURL;
+				}
+				this.out.writeByte(IMAGE);
+				this.out.writeLong(start);
+				this.out.writeLong(end);
+				writeString(this.out, i.getName());
+				this.out.writeInt(i.getWidth());
+				this.out.writeInt(i.getHeight());
+				ArrayListModel<Annotation> notes = i.getAnnotations();
+				this.out.writeInt(notes.size());
+				for (Annotation a : notes)
+					writeAnnotation(this.out, a);
+			} catch (IOException e) {
+				e.printStackTrace();
+				this.failed = true;
+			}
+		}
+
+		/**
+		 * Finish the index and replace the list's sidecar with it, if the
+		 * whole list was hashed.
+		 */
+		public void commit() {
+			if (this.reader != null) {
+				hash(this.reading.getValue(), this.reader.position() - this.readFrom);
+				this.reader.checksum(null);
+				this.reader = null;
+			}
+			if (this.failed || this.hashed != this.length)
+				return;
+			try {
+				this.out.writeByte(END);
+				this.out.writeInt(MAGIC);
+				this.out.close();
+				try (RandomAccessFile raf = new RandomAccessFile(this.tmp, "rw")) {
+					raf.seek(HASH_AT);
+					raf.writeLong(this.crc);
+				}
+				Files.move(this.tmp.toPath(), this.sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				this.committed = true;
+			} catch (IOException e) {
+				e.printStackTrace();
+				this.failed = true;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.committed)
+				return;
+			this.out.close();
+			Files.deleteIfExists(this.tmp.toPath());
+		}
+	}
+
+	/**
+	 * Reads the images of a list back from its sidecar, through a buffer
+	 * that's refilled from the sidecar's channel as the records are read. The
+	 * sidecar isn't memory mapped, so nothing keeps it open once the reader is
+	 * closed and it can be replaced by the next index written.
+	 */
+	public static class Reader implements Closeable {
+		/** the sidecar */
+		private final RandomAccessFile file;
+		/** the sidecar's channel */
+		private final FileChannel channel;
+		/** the size of the sidecar */
+		private final long size;
+		/** the bytes of the sidecar read but not yet used */
+		private ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+		/** the offset in the sidecar of the buffer's first byte */
+		private long bufStart;
+		/** the base URL of the images being read, null for a repository */
+		private String base;
+		/** where the line of the last image read starts in the list */
+		private long lineStart;
+		/** where the line of the last image read ends in the list */
+		private long lineEnd;
+
+		/**
+		 * @param sidecar
+		 *            the sidecar to read
+		 * @throws IOException
+		 *             if the sidecar can't be opened
+		 */
+		private Reader(File sidecar) throws IOException {
+			this.file = new RandomAccessFile(sidecar, "r");
+			try {
+				this.channel = this.file.getChannel();
+				this.size = this.channel.size();
+			} catch (IOException e) {
+				this.file.close();
+				throw e;
+			}
+			this.buf.limit(0);
+		}
+
+		/**
+		 * Make sure the buffer holds at least the given number of bytes past
+		 * its position, reading more of the sidecar if it doesn't.
+		 *
+		 * @param n
+		 *            the number of bytes about to be read
+		 * @return the buffer
+		 * @throws IOException
+		 *             if the sidecar ends first
+		 */
+		private ByteBuffer need(int n) throws IOException {
+			if (this.buf.remaining() >= n)
+				return this.buf;
+			if (n < 0 || this.bufStart + this.buf.position() + n > this.size)
+				throw new EOFException("malformed list index, cut short");
+			this.bufStart += this.buf.position();
+			if (this.buf.capacity() < n) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(n, 2 * this.buf.capacity()));
+				bigger.put(this.buf);
+				this.buf = bigger;
+			} else
+				this.buf.compact();
+			this.buf.limit((int) Math.min(this.buf.capacity(), this.size - this.bufStart));
+			ListLayout.readFully(this.channel, this.buf, this.bufStart + this.buf.position());
+			this.buf.flip();
+			return this.buf;
+		}
+
+		/**
+		 * @return the next byte of the sidecar
+		 * @throws IOException
+		 *             if the sidecar ends first
+		 */
+		byte get() throws IOException {
+			return need(Byte.BYTES).get();
+		}
+
+		/**
+		 * @return the next int of the sidecar
+		 * @throws IOException
+		 *             if the sidecar ends first
+		 */
+		int getInt() throws IOException {
+			return need(Integer.BYTES).getInt();
+		}
+
+		/**
+		 * @return the next long of the sidecar
+		 * @throws IOException
+		 *             if the sidecar ends first
+		 */
+		long getLong() throws IOException {
+			return need(Long.BYTES).getLong();
+		}
+
+		/**
+		 * @return the next float of the sidecar
+		 * @throws IOException
+		 *             if the sidecar ends first
+		 */
+		float getFloat() throws IOException {
+			return need(Float.BYTES).getFloat();
+		}
+
+		/**
+		 * @return the next string of the sidecar, may be null
+		 * @throws IOException
+		 *             if the sidecar ends first
+		 */
+		String getString() throws IOException {
+			int len = getInt();
+			if (len < 0)
+				return null;
+			byte[] b = new byte[len];
+			need(len).get(b);
+			return new String(b, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Open the index of a list, if it has an up to date one.
+		 *
+		 * @param list
+		 *            the list file
+		 * @return a reader positioned at the list's first record, or null if
+		 *         the list has no sidecar or the sidecar doesn't match the list
+		 * @throws IOException
+		 *             if the list or sidecar can't be read
+		 */
+		public static Reader open(File list) throws IOException {
+			File sidecar = sidecarOf(list);
+			if (!sidecar.isFile() || sidecar.length() < 37)
+				return null;
+			Reader r = new Reader(sidecar);
+			boolean ok;
+			try {
+				ByteBuffer tail = ByteBuffer.allocate(5);
+				ListLayout.readFully(r.channel, tail, r.size - 5);
+				ok = r.getInt() == MAGIC && r.getInt() == VERSION && r.getLong() == list.length()
+						&& r.getLong() == list.lastModified() && tail.getInt(1) == MAGIC && tail.get(0) == END
+						&& r.getLong() == hash(list);
+			} catch (IOException e) {
+				r.close();
+				throw e;
+			}
+			if (!ok) {
+				r.close();
+				return null;
+			}
+			return r;
+		}
+
+		/**
+		 * @param dir
+		 *            the repository the images are found in, ignored if the
+		 *            list is of URLs
+		 * @param index
+		 *            the index to give the image
+		 * @return the next image of the list, or null if there are no more
+		 * @throws IOException
+		 *             if the sidecar is malformed
+		 */
+		public MetaImage next(File dir, int index) throws IOException {
+			try {
+				byte tag = get();
+				while (tag == BASE) {
+					this.base = getString();
+					tag = get();
+				}
+				if (tag == END)
+					return null;
+				if (tag != IMAGE)
+					throw new IOException("malformed list index, unknown record " + tag);
+
+				this.lineStart = getLong();
+				this.lineEnd = getLong();
+				String name = getString();
+				MetaImage i = this.base == null ? new MetaImage(new File(dir, name), index, name, 0)
+						: new URLMetaImage(this.base, name, index, name, 0);
+				int w = getInt(), h = getInt();
+				if (w > 0 && h > 0) {
+					i.setWidth(w);
+					i.setHeight(h);
+				}
+				int n = getInt();
+				ArrayList<Annotation> notes = new ArrayList<>(Math.max(0, n));
+				for (int j = 0; j < n; j++)
+					notes.add(readAnnotation(this, null));
+				i.getAnnotations().addAll(notes);
+				return i;
+			} catch (IllegalArgumentException | NegativeArraySizeException e) {
+				throw new IOException("malformed list index", e);
+			}
+		}
+
+		/**
+		 * @return the offset in the list where the line of the last image read
+		 *         starts
+		 */
+		public long lineStart() {
+			return this.lineStart;
+		}
+
+		/**
+		 * @return the offset in the list just past the line of the last image
+		 *         read, not counting its terminator
+		 */
+		public long lineEnd() {
+			return this.lineEnd;
+		}
+
+		/** @return the number of bytes of the sidecar read so far */
+		public long position() {
+			return this.bufStart + this.buf.position();
+		}
+
+		/** @return the size of the sidecar in bytes */
+		public long size() {
+			return this.size;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.file.close();
+		}
+	}
+
+	// Encoding ****************************************************************
+
+	/**
+	 * @param out
+	 *            where to write
+	 * @param s
+	 *            the string to write, may be null
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * @param out
+	 *            where to write
+	 * @param a
+	 *            the Annotation to write along with its sub-Annotations
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void writeAnnotation(DataOutputStream out, Annotation a) throws IOException {
+		writeString(out, a.getId().getIdString());
+		Annotation p = a.getParent();
+		out.writeInt((int) (p == null ? a.x : a.x - p.x));
+		out.writeInt((int) (p == null ? a.y : a.y - p.y));
+		out.writeInt((int) a.width);
+		out.writeInt((int) a.height);
+		for (Attribute att : new Attribute[] { a.getSkin(), a.getGender(), a.getAge(), a.getWound(),
+				a.getOcclusions(), a.getKind() }) {
+			String[] values = att.values();
+			out.writeInt(values.length);
+			for (String v : values)
+				writeString(out, v);
+		}
+		writeString(out, a.getCategory().toString());
+		writeString(out, a.getBreed().toString());
+		out.writeFloat(a.getRoll());
+		out.writeFloat(a.getPitch());
+		out.writeFloat(a.getYaw());
+		ArrayList<Annotation> subs = a.getSubannotes();
+		out.writeInt(subs.size());
+		for (Annotation s : subs)
+			writeAnnotation(out, s);
+	}
+
+	/**
+	 * @param in
+	 *            where to read from
+	 * @param parent
+	 *            the Annotation being read is a sub-Annotation of, or null
+	 * @return the next Annotation along with its sub-Annotations
+	 * @throws IOException
+	 *             if the sidecar ends first
+	 */
+	private static Annotation readAnnotation(Reader in, Annotation parent) throws IOException {
+		Feature id = Feature.parseFeature(in.getString());
+		int x = in.getInt(), y = in.getInt(), w = in.getInt(), h = in.getInt();
+		String[][] attributes = new String[6][];
+		for (int i = 0; i < attributes.length; i++) {
+			attributes[i] = new String[in.getInt()];
+			for (int j = 0; j < attributes[i].length; j++)
+				attributes[i][j] = in.getString();
+		}
+		String category = in.getString();
+		String breed = in.getString();
+
+		String unmarked = null;
+		Annotation a = new Annotation(id, x, y, w, h, parent, unmarked, unmarked, unmarked, unmarked, unmarked,
+				unmarked, breed, category);
+		a.setSkin(attributes[0]);
+		a.setGender(attributes[1]);
+		a.setAge(attributes[2]);
+		a.setWound(attributes[3]);
+		a.setOcclusions(attributes[4]);
+		a.setKind(attributes[5]);
+		a.setRoll(in.getFloat());
+		a.setPitch(in.getFloat());
+		a.setYaw(in.getFloat());
+		int subs = in.getInt();
+		for (int i = 0; i < subs; i++)
+			readAnnotation(in, a);
+		return a;
+	}
+}
@@ -0,0 +1,411 @@
+package struct;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where each image's line lies in a text list file, taken as the list is read
+ * or written, so saving the list back to the same file can rewrite just the
+ * lines of the images that changed rather than the whole file.
+ * <p>
+ * A layout holds for the file as it was when the layout was taken, so the
+ * file's size and last modified time are recorded with it (see
+ * {@link #stamp()}), and for the images in the order they appear in the file.
+ * {@link #rewrite(File, List, Set)} only rewrites lines when nothing else
+ * changed the file and no image was added, removed, or moved, otherwise the
+ * list has to be written whole. A changed line that encodes to as many bytes
+ * as its old line is rewritten where it is. A line that grows or shrinks
+ * shifts every line after it, so then the file is rewritten from the first
+ * changed line to its end.
+ * <p>
+ * Only an image's own text is ever rewritten, comment lines, blank lines, and
+ * line terminators are left as they are in the file. Lines rewritten in place
+ * aren't renamed into place as an {@link AtomicSave} is, a crash can leave one
+ * half rewritten, but it keeps its length and its image's name, so the
+ * image's record in the {@link EditJournal} (cleared only once the rewrite is
+ * forced to disk, as {@link AtomicSave#sync} says) replaces it on the next
+ * load. A rewritten tail is written whole to a file beside the list before
+ * the list is touched, so a crash while it's copied into the list is finished
+ * by {@link #recover(File)} on the next load.
+ *
+ * @author bonifantmc
+ *
+ */
+public class ListLayout {
+	/** the extension added to a list's file name to name its tail file */
+	public static final String TAIL = ".tail";
+	/** marks both ends of a tail file, "ILBT" */
+	private static final int TAIL_MAGIC = 0x494C4254;
+	/** the size of a tail file's header: magic, offset, and length */
+	private static final int TAIL_HEAD = 20;
+
+	/** the list file */
+	private final File file;
+	/** the charset the list is written in */
+	private final Charset charset;
+	/** the size of the list file when the layout was stamped */
+	private long size = -1;
+	/** the last modified time of the list file when the layout was stamped */
+	private long modified;
+	/** the images in the order their lines appear in the list */
+	private MetaImage[] images = new MetaImage[256];
+	/** where each image's line starts */
+	private long[] starts = new long[256];
+	/** where each image's line ends, not counting its terminator */
+	private long[] ends = new long[256];
+	/** the number of images in the layout */
+	private int count;
+
+	/**
+	 * @param file
+	 *            the list file, written in the platform's default charset
+	 */
+	public ListLayout(File file) {
+		this(file, Charset.defaultCharset());
+	}
+
+	/**
+	 * @param file
+	 *            the list file
+	 * @param cs
+	 *            the charset the list is written in
+	 */
+	public ListLayout(File file, Charset cs) {
+		this.file = file.getAbsoluteFile();
+		this.charset = cs;
+	}
+
+	/**
+	 * Add the next image of the list to the layout.
+	 *
+	 * @param i
+	 *            the image
+	 * @param start
+	 *            the offset in the file the image's line starts at
+	 * @param end
+	 *            the offset in the file just past the image's line, not
+	 *            counting its terminator
+	 */
+	public void add(MetaImage i, long start, long end) {
+		if (this.count == this.images.length) {
+			int grown = this.count * 2;
+			this.images = Arrays.copyOf(this.images, grown);
+			this.starts = Arrays.copyOf(this.starts, grown);
+			this.ends = Arrays.copyOf(this.ends, grown);
+		}
+		this.images[this.count] = i;
+		this.starts[this.count] = start;
+		this.ends[this.count] = end;
+		this.count++;
+	}
+
+	/**
+	 * Record the list file's current size and last modified time, the layout
+	 * only holds for the file while both are unchanged. Stamp the layout before
+	 * reading the list, or after it's been written.
+	 */
+	public void stamp() {
+		this.size = this.file.length();
+		this.modified = this.file.lastModified();
+	}
+
+	/** @return the number of images in the layout */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * @param target
+	 *            a list file
+	 * @return true if the layout is of the given file as it is now
+	 */
+	public boolean holdsFor(File target) {
+		return this.size >= 0 && this.file.equals(target.getAbsoluteFile()) && target.length() == this.size
+				&& target.lastModified() == this.modified;
+	}
+
+	/**
+	 * @param order
+	 *            the images of a list, in order
+	 * @return true if the layout is of exactly those images, in that order
+	 */
+	public boolean matches(List<MetaImage> order) {
+		if (order.size() != this.count)
+			return false;
+		for (int k = 0; k < this.count; k++)
+			if (order.get(k) != this.images[k])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Save a list by rewriting just the lines of the images that changed, if
+	 * the layout still holds. Every changed line is encoded before any is
+	 * written. If each keeps its length the lines are rewritten where they
+	 * are, otherwise the file is rewritten from the first changed line on
+	 * (see {@link #rewriteTail(int[], int, byte[], long[])}), unless that's
+	 * more than half the file and writing the list whole costs about as much.
+	 *
+	 * @param target
+	 *            the file the list is saved to
+	 * @param order
+	 *            the images of the list, in the order they're saved
+	 * @param changed
+	 *            the images whose lines need rewriting, or null if the list
+	 *            changed in a way that can only be saved by writing it whole
+	 * @return true if the list was saved, false if it has to be written whole
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public boolean rewrite(File target, List<MetaImage> order, Set<MetaImage> changed) throws IOException {
+		if (changed == null || !holdsFor(target) || !matches(order))
+			return false;
+
+		// encode the changed lines one after another, noting which image each
+		// belongs to
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		ListWriter w = new ListWriter(buf, this.charset);
+		int[] slots = new int[Math.min(changed.size(), this.count)];
+		long[] at = new long[slots.length + 1];
+		int n = 0;
+		boolean fit = true;
+		for (int k = 0; k < this.count && n < slots.length; k++) {
+			if (!changed.contains(this.images[k]))
+				continue;
+			w.write(this.images[k]);
+			// the line's new line isn't rewritten, the file keeps its own
+			fit &= w.position() - 1 - at[n] == this.ends[k] - this.starts[k];
+			slots[n] = k;
+			at[++n] = w.position();
+		}
+		if (n == 0)
+			return true;
+
+		byte[] lines = buf.toByteArray();
+		if (!fit) {
+			if (2 * (this.size - this.starts[slots[0]]) > this.size)
+				return false;
+			rewriteTail(slots, n, lines, at);
+			stamp();
+			return true;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw"); FileChannel ch = raf.getChannel()) {
+			for (int j = 0; j < n; j++) {
+				ByteBuffer b = ByteBuffer.wrap(lines, (int) at[j], (int) (at[j + 1] - 1 - at[j]));
+				long pos = this.starts[slots[j]];
+				while (b.hasRemaining())
+					pos += ch.write(b, pos);
+			}
+			if (AtomicSave.sync != AtomicSave.Sync.NEVER)
+				ch.force(false);
+		}
+		stamp();
+		return true;
+	}
+
+	/**
+	 * Rewrite the list from the line of the first changed image to its end,
+	 * moving the lines after a line that grew or shrank. The new tail is
+	 * written to the list's tail file (see {@link #tailOf(File)}) and forced
+	 * first, then copied over the list, so a crash while the list is rewritten
+	 * leaves the whole tail to be put back by {@link #recover(File)}. The
+	 * offsets of the moved lines are updated.
+	 *
+	 * @param slots
+	 *            the changed images, in the order their lines appear
+	 * @param n
+	 *            the number of changed images
+	 * @param lines
+	 *            the new lines of the changed images, one after another
+	 * @param at
+	 *            where each new line starts in lines, and where the last ends
+	 * @throws IOException
+	 *             if the list or tail file can't be written
+	 */
+	private void rewriteTail(int[] slots, int n, byte[] lines, long[] at) throws IOException {
+		File tail = tailOf(this.file);
+		int first = slots[0];
+		long from = this.starts[first];
+		long[] newStarts = new long[this.count - first];
+		long[] newEnds = new long[this.count - first];
+		try (FileChannel in = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(tail.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer head = ByteBuffer.allocate(TAIL_HEAD);
+			head.putInt(TAIL_MAGIC).putLong(from).putLong(0);
+			head.flip();
+			writeFully(out, head);
+			long pos = from, old = from;
+			for (int k = first, j = 0; k < this.count; k++) {
+				// the terminators and comments before the line are kept
+				pos += copy(in, old, this.starts[k] - old, out);
+				newStarts[k - first] = pos;
+				if (j < n && slots[j] == k) {
+					ByteBuffer b = ByteBuffer.wrap(lines, (int) at[j], (int) (at[j + 1] - 1 - at[j]));
+					pos += b.remaining();
+					writeFully(out, b);
+					j++;
+				} else
+					pos += copy(in, this.starts[k], this.ends[k] - this.starts[k], out);
+				newEnds[k - first] = pos;
+				old = this.ends[k];
+			}
+			pos += copy(in, old, in.size() - old, out);
+			ByteBuffer end = ByteBuffer.allocate(4);
+			end.putInt(0, TAIL_MAGIC);
+			writeFully(out, end);
+			// the length goes in last, so a tail cut short is never complete
+			ByteBuffer len = ByteBuffer.allocate(8);
+			len.putLong(0, pos - from);
+			for (long p = 12; len.hasRemaining();)
+				p += out.write(len, p);
+			if (AtomicSave.sync != AtomicSave.Sync.NEVER)
+				out.force(false);
+		}
+		apply(tail, this.file);
+		System.arraycopy(newStarts, 0, this.starts, first, newStarts.length);
+		System.arraycopy(newEnds, 0, this.ends, first, newEnds.length);
+	}
+
+	/**
+	 * @param list
+	 *            a list file
+	 * @return the file the list's tail is written to while it's rewritten
+	 */
+	public static File tailOf(File list) {
+		File abs = list.getAbsoluteFile();
+		return new File(abs.getParentFile(), abs.getName() + TAIL);
+	}
+
+	/**
+	 * Finish a tail rewrite cut short by a crash. A complete tail file is
+	 * copied over the list, an incomplete one was cut short before the list
+	 * was touched and is deleted. Call before the list is read.
+	 *
+	 * @param list
+	 *            a list file
+	 * @throws IOException
+	 *             if the tail can't be copied or deleted
+	 */
+	public static void recover(File list) throws IOException {
+		File tail = tailOf(list);
+		if (!tail.isFile())
+			return;
+		if (isComplete(tail))
+			apply(tail, list);
+		else
+			Files.deleteIfExists(tail.toPath());
+	}
+
+	/**
+	 * @param tail
+	 *            a tail file
+	 * @return true if the tail file was written in full
+	 * @throws IOException
+	 *             if the tail file can't be read
+	 */
+	private static boolean isComplete(File tail) throws IOException {
+		try (FileChannel ch = FileChannel.open(tail.toPath(), StandardOpenOption.READ)) {
+			if (ch.size() < TAIL_HEAD + 4)
+				return false;
+			ByteBuffer head = ByteBuffer.allocate(TAIL_HEAD), end = ByteBuffer.allocate(4);
+			readFully(ch, head, 0);
+			readFully(ch, end, ch.size() - 4);
+			return head.getInt(0) == TAIL_MAGIC && end.getInt(0) == TAIL_MAGIC
+					&& head.getLong(12) == ch.size() - TAIL_HEAD - 4;
+		}
+	}
+
+	/**
+	 * Copy a complete tail file over its list, cut the list off after it, and
+	 * delete the tail file.
+	 *
+	 * @param tail
+	 *            the tail file
+	 * @param list
+	 *            the list it's the tail of
+	 * @throws IOException
+	 *             if the list can't be written
+	 */
+	private static void apply(File tail, File list) throws IOException {
+		try (FileChannel in = FileChannel.open(tail.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(list.toPath(), StandardOpenOption.WRITE)) {
+			ByteBuffer head = ByteBuffer.allocate(TAIL_HEAD);
+			readFully(in, head, 0);
+			long from = head.getLong(4), length = head.getLong(12);
+			for (long done = 0; done < length;) {
+				long moved = out.transferFrom(in.position(TAIL_HEAD + done), from + done, length - done);
+				if (moved <= 0)
+					throw new IOException("tail cut short " + tail);
+				done += moved;
+			}
+			out.truncate(from + length);
+			if (AtomicSave.sync != AtomicSave.Sync.NEVER)
+				out.force(false);
+		}
+		Files.delete(tail.toPath());
+	}
+
+	/**
+	 * @param in
+	 *            the channel to copy from
+	 * @param pos
+	 *            where to start copying
+	 * @param length
+	 *            the number of bytes to copy
+	 * @param out
+	 *            the channel to copy to, at its position
+	 * @return length
+	 * @throws IOException
+	 *             if copying fails
+	 */
+	private static long copy(FileChannel in, long pos, long length, FileChannel out) throws IOException {
+		for (long done = 0; done < length;)
+			done += in.transferTo(pos + done, length - done, out);
+		return length;
+	}
+
+	/**
+	 * @param ch
+	 *            the channel to write to, at its position
+	 * @param b
+	 *            the bytes to write
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+		while (b.hasRemaining())
+			ch.write(b);
+	}
+
+	/**
+	 * @param ch
+	 *            the channel to read from
+	 * @param b
+	 *            the buffer to fill, from its position to its limit
+	 * @param pos
+	 *            the offset in the file to start reading at, read into the
+	 *            buffer's position
+	 * @throws IOException
+	 *             if the channel ends first
+	 */
+	static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+		long at = pos - b.position();
+		while (b.hasRemaining()) {
+			int r = ch.read(b, at + b.position());
+			if (r < 0)
+				throw new EOFException("file cut short at " + (at + b.position()));
+		}
+	}
+}
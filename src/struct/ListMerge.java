@@ -0,0 +1,460 @@
+package struct;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import annotations.Annotation;
+
+/**
+ * A three-way merge of lists, for a list copied to several annotators and
+ * edited by each: base is the list as it was copied, ours and theirs the two
+ * edited copies. Whatever only one side changed is taken from that side, what
+ * both changed the same way is taken once, and what both changed differently
+ * is a conflict, reported and resolved in favor of ours.
+ * <p>
+ * Lists are merged image by image, and where both sides changed an image, box
+ * by box. The boxes (top level Annotations, each with its sub-Annotations) of
+ * two versions of an image are matched by geometry, as
+ * {@link annotations.AnnotationDifference} matches them: two boxes are the
+ * same box if their intersection over union is at least the threshold given,
+ * each box matched to at most one other, closest first. A box can then be
+ * changed (its text differs from the box it's matched to in base), added (it
+ * has no match in base), or removed (its match in base has no match on that
+ * side). Conflicts are:
+ * <ul>
+ * <li>an image, or a box, removed on one side and changed on the other</li>
+ * <li>a box changed differently on the two sides</li>
+ * <li>a box added on both sides, in the same place, differently</li>
+ * <li>an image changed on both sides whose line can't be parsed</li>
+ * </ul>
+ * The lists must be sorted by image name (as String.compareTo orders them),
+ * so they're merged in a single pass over all three at once, holding only the
+ * current line of each, and a list of any length merges in bounded memory.
+ * Lines are compared as text before any is parsed, only images changed on
+ * both sides are parsed at all. Comments are taken from ours, blank lines are
+ * dropped.
+ *
+ * @author bonifantmc
+ *
+ */
+public class ListMerge {
+	/** Told of each conflict found while merging */
+	public interface Conflicts {
+		/**
+		 * @param name
+		 *            the name of the image the conflict is in
+		 * @param what
+		 *            what the conflict is
+		 */
+		public void conflict(String name, String what);
+	}
+
+	/** the least intersection over union of two boxes that are the same box */
+	private final double minMatch;
+	/** the number of images written */
+	private int images;
+	/** the number of images taken from theirs or merged from both sides */
+	private int merged;
+
+	/**
+	 * @param minMatch
+	 *            the least intersection over union of two boxes that are the
+	 *            same box, see {@link Annotation#min_diff}
+	 */
+	public ListMerge(double minMatch) {
+		this.minMatch = minMatch;
+	}
+
+	/**
+	 * Merge two lists edited from the same base.
+	 *
+	 * @param base
+	 *            the list both were edited from
+	 * @param ours
+	 *            our edit of the list, which wins conflicts
+	 * @param theirs
+	 *            their edit of the list
+	 * @param out
+	 *            where the merged list is written
+	 * @param report
+	 *            told of each conflict
+	 * @throws IOException
+	 *             if a list can't be read, isn't sorted by name, or the merged
+	 *             list can't be written
+	 */
+	public void merge(File base, File ours, File theirs, ListWriter out, Conflicts report) throws IOException {
+		this.images = 0;
+		this.merged = 0;
+		try (Cursor b = new Cursor(base, false); Cursor o = new Cursor(ours, true);
+				Cursor t = new Cursor(theirs, false)) {
+			// comments before the first image, such as a URL list's base URL,
+			// head the merged list whatever image comes first
+			o.flushComments(out);
+			while (b.name != null || o.name != null || t.name != null) {
+				String name = min(min(b.name, o.name), t.name);
+				if (name.equals(o.name))
+					o.flushComments(out);
+				mergeImage(name, b.take(name), o.take(name), t.take(name), out, report);
+			}
+			o.flushComments(out);
+		}
+	}
+
+	/** @return the number of images written by the last merge */
+	public int getImages() {
+		return this.images;
+	}
+
+	/**
+	 * @return the number of images the last merge took from theirs or merged
+	 *         from both sides
+	 */
+	public int getMerged() {
+		return this.merged;
+	}
+
+	/**
+	 * @param a
+	 *            a name, or null
+	 * @param b
+	 *            another name, or null
+	 * @return the first of the names, null if both are
+	 */
+	private static String min(String a, String b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		return a.compareTo(b) <= 0 ? a : b;
+	}
+
+	/**
+	 * Merge the three versions of an image's line.
+	 *
+	 * @param name
+	 *            the image's name
+	 * @param b
+	 *            its line in base, null if it isn't there
+	 * @param o
+	 *            its line in ours, null if it isn't there
+	 * @param t
+	 *            its line in theirs, null if it isn't there
+	 * @param out
+	 *            where the merged line is written
+	 * @param report
+	 *            told of each conflict
+	 * @throws IOException
+	 *             if the line can't be written
+	 */
+	private void mergeImage(String name, String b, String o, String t, ListWriter out, Conflicts report)
+			throws IOException {
+		if (Objects.equals(o, t) || Objects.equals(b, t)) {
+			writeLine(o, out);
+			return;
+		}
+		if (Objects.equals(b, o)) {
+			writeLine(t, out);
+			this.merged++;
+			return;
+		}
+		if (o == null || t == null) {
+			report.conflict(name, "removed in " + (o == null ? "ours" : "theirs") + ", changed in "
+					+ (o == null ? "theirs" : "ours"));
+			writeLine(o, out);
+			return;
+		}
+
+		List<Annotation> bs, os, ts;
+		try {
+			bs = b == null ? Collections.<Annotation> emptyList() : Annotation.parseAnnotationList(b);
+			os = Annotation.parseAnnotationList(o);
+			ts = Annotation.parseAnnotationList(t);
+		} catch (IllegalArgumentException e) {
+			report.conflict(name, "changed on both sides, and can't be parsed: " + e.getMessage());
+			writeLine(o, out);
+			return;
+		}
+		out.write(name, mergeBoxes(name, bs, os, ts, report));
+		this.images++;
+		this.merged++;
+	}
+
+	/**
+	 * @param line
+	 *            a line to write as it is, or null to write nothing
+	 * @param out
+	 *            where to write it
+	 * @throws IOException
+	 *             if the line can't be written
+	 */
+	private void writeLine(String line, ListWriter out) throws IOException {
+		if (line == null)
+			return;
+		out.writeLine(line);
+		this.images++;
+	}
+
+	/**
+	 * Merge the three versions of an image's boxes. The merged boxes are in
+	 * the order of ours, followed by those only theirs added.
+	 *
+	 * @param name
+	 *            the image's name
+	 * @param bs
+	 *            its boxes in base
+	 * @param os
+	 *            its boxes in ours
+	 * @param ts
+	 *            its boxes in theirs
+	 * @param report
+	 *            told of each conflict
+	 * @return the merged boxes
+	 */
+	private List<Annotation> mergeBoxes(String name, List<Annotation> bs, List<Annotation> os,
+			List<Annotation> ts, Conflicts report) {
+		String[] bt = texts(bs), ot = texts(os), tt = texts(ts);
+		int[] bos = match(bs, os), bts = match(bs, ts);
+		int[] ob = invert(bos, os.size()), tb = invert(bts, ts.size());
+
+		// the boxes added on each side, matched to each other
+		List<Annotation> oAdded = new ArrayList<>(), tAdded = new ArrayList<>();
+		for (int k = 0; k < os.size(); k++)
+			if (ob[k] < 0)
+				oAdded.add(os.get(k));
+		for (int k = 0; k < ts.size(); k++)
+			if (tb[k] < 0)
+				tAdded.add(ts.get(k));
+		int[] added = match(oAdded, tAdded);
+		boolean[] takenAdded = new boolean[tAdded.size()];
+
+		List<Annotation> result = new ArrayList<>(os.size() + tAdded.size());
+		int a = 0;
+		for (int k = 0; k < os.size(); k++) {
+			Annotation o = os.get(k);
+			int i = ob[k];
+			if (i < 0) {
+				// added in ours
+				int j = added[a++];
+				if (j >= 0) {
+					takenAdded[j] = true;
+					if (!tAdded.get(j).toString().equals(ot[k]))
+						report.conflict(name, "box " + ot[k] + " added in ours, " + tAdded.get(j) + " in theirs");
+				}
+				result.add(o);
+				continue;
+			}
+			int j = bts[i];
+			if (j < 0) {
+				// removed in theirs, unless ours changed it
+				if (ot[k].equals(bt[i]))
+					continue;
+				report.conflict(name, "box " + bt[i] + " removed in theirs, changed in ours");
+				result.add(o);
+			} else if (ot[k].equals(tt[j]) || tt[j].equals(bt[i]))
+				result.add(o);
+			else if (ot[k].equals(bt[i]))
+				result.add(ts.get(j));
+			else {
+				report.conflict(name, "box " + bt[i] + " changed to " + ot[k] + " in ours, " + tt[j] + " in theirs");
+				result.add(o);
+			}
+		}
+
+		// boxes removed in ours but changed in theirs stay removed
+		for (int i = 0; i < bs.size(); i++)
+			if (bos[i] < 0 && bts[i] >= 0 && !tt[bts[i]].equals(bt[i]))
+				report.conflict(name, "box " + bt[i] + " removed in ours, changed in theirs");
+
+		for (int j = 0; j < tAdded.size(); j++)
+			if (!takenAdded[j])
+				result.add(tAdded.get(j));
+		return result;
+	}
+
+	/**
+	 * @param boxes
+	 *            some boxes
+	 * @return the text of each box, as it's written in a list
+	 */
+	private static String[] texts(List<Annotation> boxes) {
+		String[] s = new String[boxes.size()];
+		for (int k = 0; k < s.length; k++)
+			s[k] = boxes.get(k).toString();
+		return s;
+	}
+
+	/**
+	 * Match two versions of an image's boxes by geometry, closest pairs first.
+	 *
+	 * @param xs
+	 *            some boxes
+	 * @param ys
+	 *            other boxes
+	 * @return the box of ys each box of xs is matched to, -1 if none
+	 */
+	private int[] match(List<Annotation> xs, List<Annotation> ys) {
+		int[] m = new int[xs.size()];
+		Arrays.fill(m, -1);
+		if (xs.isEmpty() || ys.isEmpty())
+			return m;
+		// every pair close enough to be the same box, closest first
+		ArrayList<double[]> pairs = new ArrayList<>();
+		for (int i = 0; i < xs.size(); i++)
+			for (int j = 0; j < ys.size(); j++) {
+				double score = iou(xs.get(i), ys.get(j));
+				if (score >= this.minMatch)
+					pairs.add(new double[] { score, i, j });
+			}
+		pairs.sort((p, q) -> Double.compare(q[0], p[0]));
+		boolean[] taken = new boolean[ys.size()];
+		for (double[] p : pairs) {
+			int i = (int) p[1], j = (int) p[2];
+			if (m[i] < 0 && !taken[j]) {
+				m[i] = j;
+				taken[j] = true;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * @param m
+	 *            a matching of boxes, see {@link #match(List, List)}
+	 * @param n
+	 *            the number of boxes matched to
+	 * @return the matching the other way around
+	 */
+	private static int[] invert(int[] m, int n) {
+		int[] inv = new int[n];
+		Arrays.fill(inv, -1);
+		for (int i = 0; i < m.length; i++)
+			if (m[i] >= 0)
+				inv[m[i]] = i;
+		return inv;
+	}
+
+	/**
+	 * @param a
+	 *            a box
+	 * @param b
+	 *            another box
+	 * @return the area of their intersection over the area of their union, 1
+	 *         for two empty boxes in the same place
+	 */
+	private static double iou(Annotation a, Annotation b) {
+		if (a.getWidth() <= 0 || a.getHeight() <= 0 || b.getWidth() <= 0 || b.getHeight() <= 0)
+			return a.getX() == b.getX() && a.getY() == b.getY() && a.getWidth() == b.getWidth()
+					&& a.getHeight() == b.getHeight() ? 1 : 0;
+		double w = Math.min(a.getMaxX(), b.getMaxX()) - Math.max(a.getX(), b.getX());
+		double h = Math.min(a.getMaxY(), b.getMaxY()) - Math.max(a.getY(), b.getY());
+		if (w <= 0 || h <= 0)
+			return 0;
+		double inter = w * h;
+		return inter / (a.getWidth() * a.getHeight() + b.getWidth() * b.getHeight() - inter);
+	}
+
+	/**
+	 * Reads the image lines of a list one at a time, in name order.
+	 */
+	private static class Cursor implements Closeable {
+		/** the list */
+		private final File list;
+		/** reads the list */
+		private final MappedLineReader in;
+		/** the comments read since the last image taken, null to skip them */
+		private final List<String> comments;
+		/** the number of lines read */
+		private int lines;
+		/** the name of the current image, null once the list is read */
+		String name;
+		/** the line of the current image */
+		private String line;
+
+		/**
+		 * @param list
+		 *            the list
+		 * @param keepComments
+		 *            true if the list's comments are wanted
+		 * @throws IOException
+		 *             if the list can't be read
+		 */
+		Cursor(File list, boolean keepComments) throws IOException {
+			this.list = list;
+			this.in = new MappedLineReader(list);
+			this.comments = keepComments ? new ArrayList<>() : null;
+			advance();
+		}
+
+		/**
+		 * Move on to the next image line.
+		 *
+		 * @throws IOException
+		 *             if the list can't be read, or isn't sorted by name
+		 */
+		private void advance() throws IOException {
+			String previous = this.name;
+			String l;
+			while ((l = this.in.readLine()) != null) {
+				this.lines++;
+				if (l.length() == 0)
+					continue;
+				if (l.startsWith("#")) {
+					if (this.comments != null)
+						this.comments.add(l);
+					continue;
+				}
+				int tab = l.indexOf('\t');
+				String n = tab < 0 ? l : l.substring(0, tab);
+				if (previous != null && n.compareTo(previous) <= 0)
+					throw new IOException(this.list + ":" + this.lines + ": "
+							+ (n.equals(previous) ? n + " is named twice." : "the list isn't sorted by name."));
+				this.name = n;
+				this.line = l;
+				return;
+			}
+			this.name = null;
+			this.line = null;
+		}
+
+		/**
+		 * @param n
+		 *            the name of the image being merged
+		 * @return the image's line, if it's the current image, which is then
+		 *         taken, otherwise null
+		 * @throws IOException
+		 *             if the list can't be read, or isn't sorted by name
+		 */
+		String take(String n) throws IOException {
+			if (!n.equals(this.name))
+				return null;
+			String l = this.line;
+			advance();
+			return l;
+		}
+
+		/**
+		 * Write out the comments read since the last image taken.
+		 *
+		 * @param out
+		 *            where to write them
+		 * @throws IOException
+		 *             if they can't be written
+		 */
+		void flushComments(ListWriter out) throws IOException {
+			for (String c : this.comments)
+				out.writeLine(c);
+			this.comments.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
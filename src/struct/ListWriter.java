@@ -0,0 +1,172 @@
+package struct;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+import annotations.Annotation;
+
+/**
+ * Writes the lines of a list file, an image's name followed by its tab
+ * separated Annotations, without building a String for each image or
+ * Annotation along the way.
+ * <p>
+ * Each line is written into a single reused buffer with
+ * {@link Annotation#appendTo(Appendable)}, encoded into a reused byte buffer
+ * and handed to the underlying stream in one bulk write, so saving a large
+ * list costs about as much as the writes themselves. The text written is the
+ * same as writing each MetaImage's toString followed by a new line through an
+ * OutputStreamWriter of the same charset.
+ * <p>
+ * Since the writer does its own encoding it knows how many bytes it has
+ * written, see {@link #position()}, which is how the byte offsets of a list's
+ * lines are found as it's saved (see {@link ListLayout}).
+ * <p>
+ * A ListWriter isn't safe to use from more than one thread at a time.
+ *
+ * @author bonifantmc
+ *
+ */
+public class ListWriter implements Closeable, Flushable {
+	/** where the lines are written */
+	private final OutputStream out;
+	/** encodes the lines */
+	private final CharsetEncoder encoder;
+	/** the line being built */
+	private final StringBuilder line = new StringBuilder(256);
+	/** the characters of the line, handed to the encoder */
+	private char[] chars = new char[256];
+	/** the encoded line, handed to the stream */
+	private ByteBuffer bytes = ByteBuffer.allocate(1024);
+	/** the number of bytes written so far */
+	private long position;
+
+	/**
+	 * Write lines in the platform's default charset, the charset list files
+	 * are read in.
+	 *
+	 * @param out
+	 *            where the lines are written, it's best buffered
+	 */
+	public ListWriter(OutputStream out) {
+		this(out, Charset.defaultCharset());
+	}
+
+	/**
+	 * @param out
+	 *            where the lines are written, it's best buffered
+	 * @param cs
+	 *            the charset to encode lines with
+	 */
+	public ListWriter(OutputStream out, Charset cs) {
+		this.out = out;
+		// characters that can't be encoded are replaced, as an
+		// OutputStreamWriter does
+		this.encoder = cs.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Write an image's line, its name and its Annotations.
+	 *
+	 * @param i
+	 *            the image
+	 * @throws IOException
+	 *             if the line can't be written
+	 */
+	public void write(MetaImage i) throws IOException {
+		write(i.getName(), i.getAnnotations());
+	}
+
+	/**
+	 * Write an image's line, its name and its Annotations.
+	 *
+	 * @param name
+	 *            the image's name
+	 * @param notes
+	 *            its Annotations
+	 * @throws IOException
+	 *             if the line can't be written
+	 */
+	public void write(String name, List<Annotation> notes) throws IOException {
+		this.line.setLength(0);
+		this.line.append(name);
+		for (Annotation a : notes)
+			a.appendTo(this.line.append('\t'));
+		this.line.append('\n');
+		flushLine();
+	}
+
+	/**
+	 * Write a line of text as is, such as a comment or a line that couldn't be
+	 * parsed.
+	 *
+	 * @param text
+	 *            the line, without its new line
+	 * @throws IOException
+	 *             if the line can't be written
+	 */
+	public void writeLine(CharSequence text) throws IOException {
+		this.line.setLength(0);
+		this.line.append(text).append('\n');
+		flushLine();
+	}
+
+	/**
+	 * @return the number of bytes written so far, the offset in the stream
+	 *         the next line starts at
+	 */
+	public long position() {
+		return this.position;
+	}
+
+	/**
+	 * Encode the line built and hand it to the stream.
+	 *
+	 * @throws IOException
+	 *             if the line can't be written
+	 */
+	private void flushLine() throws IOException {
+		int n = this.line.length();
+		if (n > this.chars.length)
+			this.chars = new char[Math.max(n, this.chars.length * 2)];
+		this.line.getChars(0, n, this.chars, 0);
+
+		// make room for the longest encoding of the line, so it's encoded in
+		// one go
+		int max = (int) Math.ceil(n * (double) this.encoder.maxBytesPerChar());
+		if (max > this.bytes.capacity())
+			this.bytes = ByteBuffer.allocate(Math.max(max, this.bytes.capacity() * 2));
+		this.bytes.clear();
+		this.encoder.reset();
+		this.encoder.encode(CharBuffer.wrap(this.chars, 0, n), this.bytes, true);
+		this.encoder.flush(this.bytes);
+		this.out.write(this.bytes.array(), 0, this.bytes.position());
+		this.position += this.bytes.position();
+
+		// don't hold on to the buffers of an unusually long line
+		if (this.line.capacity() > 1 << 20) {
+			this.line.setLength(0);
+			this.line.trimToSize();
+			this.chars = new char[256];
+			this.bytes = ByteBuffer.allocate(1024);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+}
@@ -0,0 +1,288 @@
+package struct;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a text file line by line through a FileChannel, so a list file only
+ * has to be read from disk once.
+ * <p>
+ * The file is read in windows of at most {@value #WINDOW} bytes into a buffer
+ * that's reused for every window (a line is never split across two windows, if
+ * a line is longer than a window the window grows to fit it) so files larger
+ * than 2GB can be read as well. The file is read rather than memory mapped: a
+ * mapping lives on until it's garbage collected, and on Windows a file that's
+ * still mapped can't be truncated or replaced, which the lists read here
+ * routinely are once they've been read. Since the
+ * reader always knows how many bytes it has consumed, callers can report
+ * progress by {@link #position()} over {@link #size()} instead of counting the
+ * lines of the file in a separate pass.
+ * <p>
+ * Lines are decoded with the platform's default charset and are terminated by
+ * "\n" or "\r\n", the same as {@link java.io.BufferedReader#readLine()} for the
+ * list files the ILB reads and writes.
+ * <p>
+ * A reader can also checksum the bytes it reads as it reads them (see
+ * {@link #checksum(CRC32)}), so a file that has to be both read and hashed is
+ * only read once.
+ * <p>
+ * A reader can also be limited to a region of the file, see
+ * {@link #split(File, long)} for breaking a file into regions at line
+ * boundaries so each region can be read by a different thread.
+ *
+ * @author bonifantmc
+ *
+ */
+public class MappedLineReader implements Closeable {
+	/** the default size of a window, 1MB */
+	private static final int WINDOW = 1 << 20;
+
+	/** the file being read */
+	private final RandomAccessFile file;
+	/** the channel the file is read from */
+	private final FileChannel channel;
+	/** the offset in the file where reading stops */
+	private final long size;
+	/** the charset lines are decoded with */
+	private final Charset charset;
+
+	/** the window of the file currently read, reused for every window */
+	private ByteBuffer window;
+	/** the file offset where the current window begins */
+	private long windowStart;
+	/** the size windows are currently read at */
+	private int windowSize = WINDOW;
+	/** scratch space lines are copied into before decoding */
+	private byte[] line = new byte[256];
+	/** the offset in the file where the last line read starts */
+	private long lineStart;
+	/** the offset in the file where the last line read ends */
+	private long lineEnd;
+	/** updated with each line read, terminator and all, null if not wanted */
+	private CRC32 crc;
+
+	/**
+	 * @param f
+	 *            the file to read
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public MappedLineReader(File f) throws IOException {
+		this(f, Charset.defaultCharset());
+	}
+
+	/**
+	 * @param f
+	 *            the file to read
+	 * @param cs
+	 *            the charset to decode lines with
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public MappedLineReader(File f, Charset cs) throws IOException {
+		this(f, cs, 0, -1);
+	}
+
+	/**
+	 * @param f
+	 *            the file to read
+	 * @param cs
+	 *            the charset to decode lines with
+	 * @param from
+	 *            the offset to start reading at, should be the start of a line
+	 * @param to
+	 *            the offset to stop reading at, should be the start of a line
+	 *            (or -1 to read to the end of the file)
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public MappedLineReader(File f, Charset cs, long from, long to) throws IOException {
+		this.file = new RandomAccessFile(f, "r");
+		this.channel = this.file.getChannel();
+		this.size = to < 0 ? this.channel.size() : Math.min(to, this.channel.size());
+		this.charset = cs;
+		try {
+			fill(Math.min(from, this.size));
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Find offsets that break a file into regions of roughly the given size,
+	 * each offset is the start of a line.
+	 * 
+	 * @param f
+	 *            the file to split
+	 * @param chunkSize
+	 *            the approximate size of each region in bytes
+	 * @return the offsets regions start at, followed by the size of the file,
+	 *         so region i is [result[i], result[i+1])
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static long[] split(File f, long chunkSize) throws IOException {
+		ArrayList<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel ch = raf.getChannel()) {
+			long size = ch.size();
+			ByteBuffer buf = ByteBuffer.allocate(8192);
+			long pos = chunkSize;
+			while (pos < size) {
+				// step forward to just after the next new line
+				long nl = -1;
+				while (nl < 0 && pos < size) {
+					buf.clear();
+					int n = ch.read(buf, pos);
+					if (n <= 0)
+						break;
+					for (int i = 0; i < n; i++)
+						if (buf.get(i) == '\n') {
+							nl = pos + i;
+							break;
+						}
+					if (nl < 0)
+						pos += n;
+				}
+				if (nl < 0 || nl + 1 >= size)
+					break;
+				bounds.add(nl + 1);
+				pos = nl + 1 + chunkSize;
+			}
+			bounds.add(size);
+		}
+		long[] ret = new long[bounds.size()];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = bounds.get(i).longValue();
+		return ret;
+	}
+
+	/**
+	 * Update a checksum with every byte read from here on, line terminators
+	 * included, so once the reader reaches the end it holds the checksum of
+	 * everything read.
+	 *
+	 * @param checksum
+	 *            the checksum to update, or null to stop updating one
+	 */
+	public void checksum(CRC32 checksum) {
+		this.crc = checksum;
+	}
+
+	/**
+	 * Read a new window of the file.
+	 *
+	 * @param start
+	 *            the offset in the file to start the window at
+	 * @throws IOException
+	 *             if the file can't be read, or is cut short while it's read
+	 */
+	private void fill(long start) throws IOException {
+		int len = (int) Math.min(this.windowSize, this.size - start);
+		if (this.window == null || this.window.capacity() < len)
+			this.window = ByteBuffer.allocate(len);
+		this.window.clear();
+		this.window.limit(len);
+		ListLayout.readFully(this.channel, this.window, start);
+		this.window.flip();
+		this.windowStart = start;
+	}
+
+	/**
+	 * @return the next line of the file (without its line terminator), or null
+	 *         if the end of the file has been reached
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public String readLine() throws IOException {
+		if (position() >= this.size)
+			return null;
+
+		// scan the window for the end of the line, rereading if the line runs
+		// off the end of the window
+		int start = this.window.position();
+		int end = start;
+		while (true) {
+			int limit = this.window.limit();
+			while (end < limit && this.window.get(end) != '\n')
+				end++;
+			if (end < limit || this.windowStart + limit >= this.size)
+				break;
+			// line continues beyond the window, reread starting at this line
+			// and if the line already filled a whole window, grow the window
+			long at = this.windowStart + start;
+			if (start == 0)
+				this.windowSize = (int) Math.min(Integer.MAX_VALUE - 8, 2L * this.windowSize);
+			fill(at);
+			end -= start;
+			start = 0;
+		}
+
+		// next read starts after the terminator if there was one
+		int next = end < this.window.limit() ? end + 1 : end;
+		if (this.crc != null) {
+			ByteBuffer read = this.window.duplicate();
+			read.limit(next);
+			read.position(start);
+			this.crc.update(read);
+		}
+		if (end > start && this.window.get(end - 1) == '\r')
+			end--;
+
+		int len = end - start;
+		this.lineStart = this.windowStart + start;
+		this.lineEnd = this.windowStart + end;
+		if (len > this.line.length)
+			this.line = new byte[Math.max(len, 2 * this.line.length)];
+		this.window.position(start);
+		this.window.get(this.line, 0, len);
+		this.window.position(next);
+		return new String(this.line, 0, len, this.charset);
+	}
+
+	/**
+	 * @return the offset of the next byte to be read, for a reader of the whole
+	 *         file this is the number of bytes read so far
+	 */
+	public long position() {
+		return this.windowStart + this.window.position();
+	}
+
+	/**
+	 * @return the offset in the file where the last line read starts
+	 */
+	public long lineStart() {
+		return this.lineStart;
+	}
+
+	/**
+	 * @return the offset in the file just past the last line read, not
+	 *         counting its line terminator
+	 */
+	public long lineEnd() {
+		return this.lineEnd;
+	}
+
+	/**
+	 * @return the size of the file in bytes, or the offset reading stops at if
+	 *         this reader is limited to a region of the file
+	 */
+	public long size() {
+		return this.size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.window = null;
+		this.channel.close();
+		this.file.close();
+	}
+}
@@ -0,0 +1,411 @@
+package struct;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A list too big to keep in one file, split into shards (list.shards is a
+ * manifest naming the text lists its images are kept in, each an ordinary
+ * list the ILB can read on its own), so the shards can be read in parallel and
+ * saving the list only writes the shards whose images changed.
+ * <p>
+ * The manifest is a text file. Its first line is {@value #HEADER}, a tab, and
+ * how images are partitioned into shards:
+ * <ul>
+ * <li>hash, an image is kept in the shard given by a hash of its name modulo
+ * the number of shards, so shards are about the same size</li>
+ * <li>directory, each directory images are named in has a shard of its own,
+ * so a directory's images are kept together, shards are added as new
+ * directories are met</li>
+ * </ul>
+ * Every other line names a shard (relative to the manifest's directory), the
+ * number of images it holds, and for lists partitioned by directory the
+ * directory it holds, separated by tabs. The images of the list are the
+ * images of each shard in turn, the counts let each shard be read knowing the
+ * index of its first image before the shards before it are read.
+ * <p>
+ * An image stays in its shard, in the order it was saved, so reading the list
+ * back gives the images of each shard together rather than in the order they
+ * were in across the whole list. Each shard has its own {@link ListLayout} and
+ * {@link ListIndex}, a shard none of whose images changed isn't written at
+ * all, and one with only a few changed lines has just those rewritten.
+ *
+ * @author bonifantmc
+ *
+ */
+public class ShardedList {
+	/** the extension of a manifest */
+	public static final String EXTENSION = ".shards";
+	/** the first field of a manifest */
+	private static final String HEADER = "#ILB shards";
+
+	/** How the images of a list are assigned to shards */
+	public enum Partition {
+		/** by a hash of an image's name */
+		HASH,
+		/** by the directory an image is named in */
+		DIRECTORY;
+
+		/**
+		 * @param s
+		 *            the name of a partition
+		 * @return the partition with that name, or HASH if there's none
+		 */
+		public static Partition parsePartition(String s) {
+			for (Partition p : values())
+				if (p.name().equalsIgnoreCase(s))
+					return p;
+			return HASH;
+		}
+	}
+
+	/** the number of shards a new list partitioned by hash is split into */
+	public static int shardCount = 16;
+	/** how the images of a new list are partitioned */
+	public static Partition partition = Partition.HASH;
+
+	/** the manifest */
+	private final File manifest;
+	/** how the list's images are partitioned */
+	private final Partition by;
+	/** the shard files */
+	private final ArrayList<File> files = new ArrayList<>();
+	/** the number of images in each shard, as of the last read or save */
+	private final ArrayList<Integer> counts = new ArrayList<>();
+	/** the directory of each shard, when partitioned by directory */
+	private final ArrayList<String> directories = new ArrayList<>();
+	/** the shard of each directory, when partitioned by directory */
+	private final HashMap<String, Integer> byDirectory = new HashMap<>();
+	/** where the lines of each shard lie, null if not known */
+	private final ArrayList<ListLayout> layouts = new ArrayList<>();
+	/**
+	 * the CRC32 of each shard file, taken when its layout was, null if not
+	 * known
+	 */
+	private final ArrayList<Long> crcs = new ArrayList<>();
+	/** the layouts of the shards written by the last save, until committed */
+	private final HashMap<Integer, ListLayout> written = new HashMap<>();
+	/** the CRC32s of the shards written by the last save, until committed */
+	private final HashMap<Integer, Long> writtenCrcs = new HashMap<>();
+
+	/**
+	 * @param manifest
+	 *            the manifest
+	 * @param by
+	 *            how the list's images are partitioned
+	 */
+	private ShardedList(File manifest, Partition by) {
+		this.manifest = manifest.getAbsoluteFile();
+		this.by = by;
+	}
+
+	/**
+	 * Start a new sharded list, partitioned as {@link #partition} says, nothing
+	 * is written until it's saved.
+	 *
+	 * @param manifest
+	 *            the manifest of the list
+	 * @return the list
+	 */
+	public static ShardedList create(File manifest) {
+		ShardedList l = new ShardedList(manifest, partition);
+		if (l.by == Partition.HASH)
+			for (int k = 0; k < Math.max(1, shardCount); k++)
+				l.addShard(null);
+		return l;
+	}
+
+	/**
+	 * @param manifest
+	 *            the manifest of a sharded list
+	 * @return the list
+	 * @throws IOException
+	 *             if the manifest can't be read or is malformed
+	 */
+	public static ShardedList read(File manifest) throws IOException {
+		try (MappedLineReader in = new MappedLineReader(manifest)) {
+			String line = in.readLine();
+			String[] head = line == null ? new String[0] : line.split("\t");
+			if (head.length < 2 || !head[0].equals(HEADER))
+				throw new IOException("not a shard manifest " + manifest);
+			ShardedList l = new ShardedList(manifest, Partition.parsePartition(head[1]));
+			while ((line = in.readLine()) != null) {
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				String[] f = line.split("\t", -1);
+				if (f.length < (l.by == Partition.DIRECTORY ? 3 : 2))
+					throw new IOException("malformed shard manifest " + manifest + ": " + line);
+				int k = l.addShard(l.by == Partition.DIRECTORY ? f[2] : null);
+				l.files.set(k, new File(l.manifest.getParentFile(), f[0]));
+				try {
+					l.counts.set(k, Integer.valueOf(f[1]));
+				} catch (NumberFormatException e) {
+					throw new IOException("malformed shard manifest " + manifest + ": " + line, e);
+				}
+			}
+			if (l.files.isEmpty())
+				throw new IOException("shard manifest names no shards " + manifest);
+			return l;
+		}
+	}
+
+	/**
+	 * @param f
+	 *            a list file
+	 * @return true if the file is named as a shard manifest
+	 */
+	public static boolean isManifest(File f) {
+		return f.getName().toLowerCase().endsWith(EXTENSION);
+	}
+
+	/**
+	 * @param f
+	 *            a list file
+	 * @return true if this is the list kept in that file
+	 */
+	public boolean isFor(File f) {
+		return this.manifest.equals(f.getAbsoluteFile());
+	}
+
+	/** @return the manifest */
+	public File getFile() {
+		return this.manifest;
+	}
+
+	/** @return the number of shards */
+	public int shards() {
+		return this.files.size();
+	}
+
+	/**
+	 * @param k
+	 *            a shard
+	 * @return the shard's file
+	 */
+	public File getShard(int k) {
+		return this.files.get(k);
+	}
+
+	/**
+	 * @param k
+	 *            a shard
+	 * @return the number of images in the shard, as of the last read or save
+	 */
+	public int getCount(int k) {
+		return this.counts.get(k).intValue();
+	}
+
+	/**
+	 * @param k
+	 *            a shard
+	 * @param layout
+	 *            where the lines of the shard lie, as it was read
+	 */
+	public void setLayout(int k, ListLayout layout) {
+		this.layouts.set(k, layout);
+		this.crcs.set(k, null);
+	}
+
+	/**
+	 * Add a shard, named after the manifest and its number.
+	 *
+	 * @param directory
+	 *            the directory the shard holds, null when partitioned by hash
+	 * @return the new shard's number
+	 */
+	private int addShard(String directory) {
+		int k = this.files.size();
+		String name = this.manifest.getName();
+		name = name.substring(0, name.length() - EXTENSION.length());
+		this.files.add(new File(this.manifest.getParentFile(), name + "." + k + ".lst"));
+		this.counts.add(Integer.valueOf(0));
+		this.layouts.add(null);
+		this.crcs.add(null);
+		if (directory != null) {
+			this.directories.add(directory);
+			this.byDirectory.put(directory, Integer.valueOf(k));
+		}
+		return k;
+	}
+
+	/**
+	 * @param i
+	 *            an image
+	 * @return the shard the image is kept in, a new shard if it's the first
+	 *         image of its directory
+	 */
+	private int shardOf(MetaImage i) {
+		String name = i.getName();
+		if (this.by == Partition.HASH)
+			return (int) Long.remainderUnsigned(Fnv.hash(name), this.files.size());
+		int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+		String dir = slash < 0 ? "" : name.substring(0, slash);
+		Integer k = this.byDirectory.get(dir);
+		return k != null ? k.intValue() : addShard(dir);
+	}
+
+	/**
+	 * Save the list as part of a larger save. Each shard is written only if its
+	 * images changed: a shard whose images are the same ones, in the same
+	 * order, as when it was last read or written, is left alone if none of
+	 * them changed, has just the changed lines rewritten if it can be
+	 * (see {@link ListLayout#rewrite(File, List, Set)}), and is written whole
+	 * otherwise. The manifest is staged last, so it's renamed into place after
+	 * the shards. Once the save is committed call {@link #saved()}.
+	 *
+	 * @param images
+	 *            the images of the list, in the order they're saved
+	 * @param changed
+	 *            the images whose lines need rewriting, or null if any of them
+	 *            might have changed, then each shard is compared to its file
+	 * @param save
+	 *            the save the shards are written in
+	 * @throws IOException
+	 *             if a shard or the manifest can't be written
+	 */
+	public void save(List<MetaImage> images, Set<MetaImage> changed, AtomicSave save) throws IOException {
+		ArrayList<ArrayList<MetaImage>> parts = new ArrayList<>();
+		for (MetaImage i : images) {
+			int k = shardOf(i);
+			while (parts.size() <= k)
+				parts.add(new ArrayList<>());
+			parts.get(k).add(i);
+		}
+		while (parts.size() < this.files.size())
+			parts.add(new ArrayList<>());
+
+		this.written.clear();
+		this.writtenCrcs.clear();
+		for (int k = 0; k < parts.size(); k++) {
+			List<MetaImage> part = parts.get(k);
+			File f = this.files.get(k);
+			this.counts.set(k, Integer.valueOf(part.size()));
+			ListLayout old = this.layouts.get(k);
+			boolean same = old != null && old.holdsFor(f) && old.matches(part);
+			if (same && changed != null && !anyIn(part, changed))
+				continue;
+			if (same && changed != null && old.rewrite(f, part, changed)) {
+				this.crcs.set(k, null);
+				continue;
+			}
+
+			File tmp = save.stage(f);
+			CRC32 crc = new CRC32();
+			ListLayout layout;
+			try (OutputStream out = new CheckedOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16), crc)) {
+				layout = write(part, out, f);
+			}
+			// a shard that writes out as it already is needs no replacing
+			if (same && f.length() == tmp.length() && crc.getValue() == crcOf(k)) {
+				save.discard(f);
+				continue;
+			}
+			this.written.put(Integer.valueOf(k), layout);
+			this.writtenCrcs.put(Integer.valueOf(k), Long.valueOf(crc.getValue()));
+		}
+
+		try (ListWriter out = new ListWriter(
+				new BufferedOutputStream(new FileOutputStream(save.stage(this.manifest))))) {
+			out.writeLine(HEADER + "\t" + this.by.name().toLowerCase());
+			for (int k = 0; k < this.files.size(); k++) {
+				String line = this.files.get(k).getName() + "\t" + this.counts.get(k);
+				if (this.by == Partition.DIRECTORY)
+					line += "\t" + this.directories.get(k);
+				out.writeLine(line);
+			}
+		}
+	}
+
+	/**
+	 * Take the layouts of the shards written by the last save, once the save
+	 * is committed and they're in place.
+	 */
+	public void saved() {
+		for (Map.Entry<Integer, ListLayout> e : this.written.entrySet()) {
+			e.getValue().stamp();
+			this.layouts.set(e.getKey().intValue(), e.getValue());
+			this.crcs.set(e.getKey().intValue(), this.writtenCrcs.get(e.getKey()));
+		}
+		this.written.clear();
+		this.writtenCrcs.clear();
+	}
+
+	/**
+	 * @param k
+	 *            a shard whose layout still holds for its file
+	 * @return the CRC32 of the shard file, read through once if it isn't
+	 *         known
+	 * @throws IOException
+	 *             if the shard can't be read
+	 */
+	private long crcOf(int k) throws IOException {
+		Long known = this.crcs.get(k);
+		if (known != null)
+			return known.longValue();
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[1 << 16];
+		try (InputStream in = new FileInputStream(this.files.get(k))) {
+			for (int n; (n = in.read(buf)) > 0;)
+				crc.update(buf, 0, n);
+		}
+		this.crcs.set(k, Long.valueOf(crc.getValue()));
+		return crc.getValue();
+	}
+
+	/**
+	 * @param part
+	 *            some images
+	 * @param changed
+	 *            the images that changed
+	 * @return true if any of the images changed
+	 */
+	private static boolean anyIn(List<MetaImage> part, Set<MetaImage> changed) {
+		if (changed.isEmpty())
+			return false;
+		for (MetaImage i : part)
+			if (changed.contains(i))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Write images as a text list, starting with the base URL if they're
+	 * found online.
+	 *
+	 * @param images
+	 *            the images
+	 * @param os
+	 *            where to write them
+	 * @param file
+	 *            the file they end up in
+	 * @return where each image's line was written
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	private static ListLayout write(List<MetaImage> images, OutputStream os, File file) throws IOException {
+		ListLayout layout = new ListLayout(file);
+		ListWriter out = new ListWriter(os);
+		if (!images.isEmpty() && images.get(0) instanceof URLMetaImage)
+			out.writeLine("#" + ((URLMetaImage) images.get(0)).getBaseURL());
+		for (MetaImage i : images) {
+			long start = out.position();
+			out.write(i);
+			layout.add(i, start, out.position() - 1);
+		}
+		out.flush();
+		return layout;
+	}
+}
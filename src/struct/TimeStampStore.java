@@ -0,0 +1,413 @@
+package struct;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * The date each image of a list was last viewed and the order the images were
+ * in when the list was last closed, kept in a binary file
+ * (timestamps/list.lst.ilbts) of fixed width records.
+ * <p>
+ * The file is a header of {@value #HEADER} bytes (a magic number, the format
+ * version, and the number of records) followed by one record of
+ * {@value #RECORD} bytes per image: a 64 bit hash of the image's name, the
+ * date, and the image's position in the list. Records are looked up by the
+ * hash of an image's name, so no image has to be turned back into a line of
+ * text to find its record, and since every record is the same size the date
+ * of a single image can be changed in place.
+ * <p>
+ * The whole file is read in one pass when a list is loaded, into open
+ * addressing tables of primitives rather than a map of boxed values. If a
+ * list only has a timestamps file in the old text format (the date, a tab,
+ * and the image's line of the list) that's read instead, and replaced with the
+ * binary file the next time the timestamps are saved.
+ *
+ * @author bonifantmc
+ *
+ */
+public class TimeStampStore {
+	/** the directory timestamps are kept in */
+	public static final File DIRECTORY = new File("timestamps");
+	/** the extension added to a list's name to name its timestamps file */
+	public static final String EXTENSION = ".ilbts";
+	/** identifies a file as a timestamps file, "ILBT" */
+	private static final int MAGIC = 0x494C4254;
+	/** the version of the format */
+	private static final int VERSION = 1;
+	/** bytes in the header */
+	private static final int HEADER = 16;
+	/** bytes in a record, hash + date + position */
+	private static final int RECORD = 8 + 8 + 4;
+	/** offset of the record count in the header */
+	private static final int COUNT_OFFSET = 8;
+	/** offset of the date within a record */
+	private static final int DATE_OFFSET = 8;
+	/** the number of records read from the file at a time */
+	private static final int BATCH = 1 << 12;
+
+	/** the name of the list the timestamps are for */
+	private final String listName;
+	/** the timestamps file */
+	private final File file;
+	/** the old text timestamps file */
+	private final File legacy;
+	/** the hash of the name of the image at each slot, 0 for an empty slot */
+	private long[] keys;
+	/** the date of the image at each slot */
+	private long[] dates;
+	/** the position in the list of the image at each slot */
+	private int[] orders;
+	/** the record in the file of the image at each slot, -1 if none */
+	private int[] records;
+	/** the number of filled slots */
+	private int size;
+	/** the number of records in the file */
+	private int count;
+	/** the table of the file written by the last save, until it's committed */
+	private TimeStampStore written;
+
+	/**
+	 * Read the timestamps of a list.
+	 *
+	 * @param listName
+	 *            the name of the list file
+	 */
+	public TimeStampStore(String listName) {
+		this.listName = listName;
+		this.file = new File(DIRECTORY, listName + EXTENSION);
+		this.legacy = new File(DIRECTORY, listName);
+		allocate(16);
+		try {
+			if (this.file.isFile())
+				read();
+			else if (this.legacy.isFile())
+				readLegacy();
+		} catch (IOException e) {
+			e.printStackTrace();
+			allocate(16);
+		}
+	}
+
+	/**
+	 * An empty table for the same list, to hold the records of a file being
+	 * written until the file is in place.
+	 *
+	 * @param of
+	 *            the timestamps being saved
+	 * @param n
+	 *            the number of images being saved
+	 */
+	private TimeStampStore(TimeStampStore of, int n) {
+		this.listName = of.listName;
+		this.file = of.file;
+		this.legacy = of.legacy;
+		allocate(n);
+	}
+
+	/**
+	 * @param name
+	 *            an image's name
+	 * @return the 64 bit FNV-1a hash of the name, never 0
+	 */
+	static long hash(String name) {
+		long h = Fnv.hash(name);
+		return h == 0 ? 1 : h;
+	}
+
+	/**
+	 * @param list
+	 *            the name of a list file
+	 * @return true if these are the timestamps of that list
+	 */
+	public boolean isFor(String list) {
+		return this.listName.equals(list);
+	}
+
+	/**
+	 * Set the date and indexes of an image to what they were when the list was
+	 * last saved, if the image has a timestamp.
+	 *
+	 * @param i
+	 *            the image
+	 * @return true if the image had a timestamp
+	 */
+	public synchronized boolean apply(MetaImage i) {
+		int slot = find(hash(i.getName()));
+		if (this.keys[slot] == 0)
+			return false;
+		i.setDate(this.dates[slot]);
+		i.setIndexCur(this.orders[slot]);
+		i.setIndexAlt(i.getIndexCur());
+		return true;
+	}
+
+	/**
+	 * Record a change to an image's date, writing just the image's date to the
+	 * file (or a new record on the end of it if the image doesn't have one
+	 * yet).
+	 *
+	 * @param i
+	 *            the image whose date changed
+	 */
+	public synchronized void update(MetaImage i) {
+		long h = hash(i.getName());
+		int slot = find(h);
+		if (this.keys[slot] == 0) {
+			slot = insert(h, i.getDate(), i.getIndexCur(), -1);
+		} else {
+			this.dates[slot] = i.getDate();
+		}
+		// the file is only updated in place if it's already in binary form
+		if (!this.file.isFile())
+			return;
+		try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw"); FileChannel ch = raf.getChannel()) {
+			if (this.records[slot] < 0) {
+				ByteBuffer rec = ByteBuffer.allocate(RECORD);
+				rec.putLong(h).putLong(i.getDate()).putInt(i.getIndexCur()).flip();
+				ch.write(rec, HEADER + (long) this.count * RECORD);
+				this.records[slot] = this.count++;
+				ByteBuffer cnt = ByteBuffer.allocate(4);
+				cnt.putInt(this.count).flip();
+				ch.write(cnt, COUNT_OFFSET);
+			} else {
+				ByteBuffer date = ByteBuffer.allocate(8);
+				date.putLong(i.getDate()).flip();
+				ch.write(date, HEADER + (long) this.records[slot] * RECORD + DATE_OFFSET);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param images
+	 *            the images of the list, in order
+	 * @return true if the file already records the images in that order,
+	 *         with their current dates, so saving them would write it as it is
+	 */
+	public synchronized boolean holds(List<MetaImage> images) {
+		if (this.count != images.size() || !this.file.isFile())
+			return false;
+		for (int k = 0; k < images.size(); k++) {
+			MetaImage i = images.get(k);
+			int slot = find(hash(i.getName()));
+			if (this.keys[slot] == 0 || this.records[slot] != k || this.orders[slot] != k
+					|| this.dates[slot] != i.getDate())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Replace the file with the dates of the given images, recording the
+	 * images' current order.
+	 *
+	 * @param images
+	 *            the images of the list, in order
+	 */
+	public synchronized void save(List<MetaImage> images) {
+		try (AtomicSave save = new AtomicSave()) {
+			save(images, save);
+			save.commit();
+			saved();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write the dates of the given images, recording the images' current
+	 * order, as part of a larger save. The file is replaced when the save is
+	 * committed, once it is call {@link #saved()}. Until then the timestamps
+	 * are still those of the file in place, so a save that fails or is never
+	 * committed leaves them as they were.
+	 *
+	 * @param images
+	 *            the images of the list, in order
+	 * @param save
+	 *            the save the file is written in
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public synchronized void save(List<MetaImage> images, AtomicSave save) throws IOException {
+		if (!DIRECTORY.exists())
+			DIRECTORY.mkdir();
+		TimeStampStore next = new TimeStampStore(this, images.size());
+		this.written = null;
+		File tmp = save.stage(this.file);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(images.size());
+			out.writeInt(0);
+			for (MetaImage i : images) {
+				long h = hash(i.getName());
+				out.writeLong(h);
+				out.writeLong(i.getDate());
+				out.writeInt(next.count);
+				if (next.keys[next.find(h)] == 0)
+					next.insert(h, i.getDate(), next.count, next.count);
+				next.count++;
+			}
+		}
+		this.written = next;
+	}
+
+	/**
+	 * Take the table of the file written by the last save, once the save is
+	 * committed and the file is in place.
+	 */
+	public synchronized void saved() {
+		if (this.written == null)
+			return;
+		this.keys = this.written.keys;
+		this.dates = this.written.dates;
+		this.orders = this.written.orders;
+		this.records = this.written.records;
+		this.size = this.written.size;
+		this.count = this.written.count;
+		this.written = null;
+	}
+
+	/**
+	 * Read the binary file, in one pass through a buffer of {@value #BATCH}
+	 * records at a time. The file isn't memory mapped, it's replaced whenever
+	 * the timestamps are saved and a mapping would keep it open until it's
+	 * garbage collected.
+	 *
+	 * @throws IOException
+	 *             if the file can't be read or is malformed
+	 */
+	private void read() throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(this.file, "r"); FileChannel ch = raf.getChannel()) {
+			if (ch.size() < HEADER)
+				throw new IOException("malformed timestamps " + this.file);
+			ByteBuffer b = ByteBuffer.allocate(HEADER);
+			ListLayout.readFully(ch, b, 0);
+			b.flip();
+			if (b.getInt() != MAGIC || b.getInt() != VERSION)
+				throw new IOException("not a timestamps file " + this.file);
+			int n = b.getInt();
+			b.getInt();
+			if (n < 0 || ch.size() < HEADER + (long) n * RECORD)
+				throw new IOException("malformed timestamps " + this.file);
+			allocate(n);
+			b = ByteBuffer.allocate(RECORD * Math.min(n, BATCH));
+			b.limit(0);
+			long pos = HEADER;
+			for (int r = 0; r < n; r++) {
+				if (!b.hasRemaining()) {
+					b.clear();
+					b.limit(RECORD * Math.min(n - r, BATCH));
+					ListLayout.readFully(ch, b, pos);
+					pos += b.limit();
+					b.flip();
+				}
+				long h = b.getLong();
+				long date = b.getLong();
+				int order = b.getInt();
+				int slot = find(h);
+				if (this.keys[slot] == 0)
+					insert(h, date, order, r);
+			}
+			this.count = n;
+		}
+	}
+
+	/**
+	 * Read a timestamps file in the old text format
+	 *
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	private void readLegacy() throws IOException {
+		try (BufferedReader tr = new BufferedReader(new FileReader(this.legacy))) {
+			String time;
+			int cnt = 0;
+			while ((time = tr.readLine()) != null) {
+				int tab = time.indexOf('\t');
+				if (tab < 0)
+					continue;
+				int end = time.indexOf('\t', tab + 1);
+				String name = end < 0 ? time.substring(tab + 1) : time.substring(tab + 1, end);
+				long h = hash(name);
+				if (this.keys[find(h)] == 0)
+					insert(h, Long.parseLong(time.substring(0, tab)), cnt, -1);
+				cnt++;
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("malformed timestamps " + this.legacy, e);
+		}
+	}
+
+	// Open addressing table ***************************************************
+
+	/**
+	 * Empty the table, making room for the given number of entries
+	 *
+	 * @param n
+	 *            the number of entries expected
+	 */
+	private void allocate(int n) {
+		int cap = Integer.highestOneBit(Math.max(16, n * 2 - 1)) << 1;
+		this.keys = new long[cap];
+		this.dates = new long[cap];
+		this.orders = new int[cap];
+		this.records = new int[cap];
+		this.size = 0;
+	}
+
+	/**
+	 * @param h
+	 *            a hash
+	 * @return the slot holding the hash, or the empty slot it would go in
+	 */
+	private int find(long h) {
+		int mask = this.keys.length - 1;
+		int slot = (int) (h ^ (h >>> 32)) & mask;
+		while (this.keys[slot] != 0 && this.keys[slot] != h)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Add an entry, the hash must not be in the table already
+	 *
+	 * @param h
+	 *            the hash of the image's name
+	 * @param date
+	 *            the image's date
+	 * @param order
+	 *            the image's position in the list
+	 * @param record
+	 *            the image's record in the file, -1 if none
+	 * @return the slot the entry was put in
+	 */
+	private int insert(long h, long date, int order, int record) {
+		if (2 * (this.size + 1) > this.keys.length) {
+			long[] k = this.keys, d = this.dates;
+			int[] o = this.orders, r = this.records;
+			allocate(this.keys.length);
+			for (int s = 0; s < k.length; s++)
+				if (k[s] != 0)
+					insert(k[s], d[s], o[s], r[s]);
+		}
+		int slot = find(h);
+		this.keys[slot] = h;
+		this.dates[slot] = date;
+		this.orders[slot] = order;
+		this.records[slot] = record;
+		this.size++;
+		return slot;
+	}
+}
@@ -0,0 +1,777 @@
+package struct;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.HttpURLConnection;
+import java.net.ResponseCache;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An on disk cache of images fetched over HTTP, so a list of URLs can be
+ * browsed at the speed of the local disk once its images have been fetched.
+ * <p>
+ * Image contents are stored by their SHA-256 (cache/urls/objects/hash) so an
+ * image found at several URLs is only stored once. Each URL has an entry
+ * (cache/urls/index/hash of the URL) naming the contents it was last found to
+ * have along with the ETag and Last-Modified the server sent with them, which
+ * are used to ask the server whether the contents have changed rather than
+ * fetching them again, see {@link #fetch(URL)}.
+ * <p>
+ * An entry is used without asking the server for as long as the server said
+ * it stays fresh, by Cache-Control max-age or Expires. A response marked
+ * no-cache is asked about every time it's used, and one marked no-store is
+ * never stored. Failing those, an entry stays fresh for a tenth of the time
+ * since its Last-Modified, and for {@link #maxAge} if the server gave no hint
+ * at all.
+ * <p>
+ * The cache keeps at most {@link #maxSize} bytes of contents, past that the
+ * entries used least recently (and the contents no other entry names) are
+ * evicted until it's a tenth under.
+ * <p>
+ * The cache is installed as the JVM's {@link ResponseCache}, so images read
+ * through a plain {@link java.net.URL} connection (the way a URLMetaImage
+ * reads its image) are served from the disk while their entry is fresh,
+ * served after asking the server about it once it isn't, and stored as
+ * they're read otherwise.
+ *
+ * @author bonifantmc
+ *
+ */
+public class URLDiskCache extends ResponseCache {
+	/** If true URL lists are fetched through this cache */
+	public static boolean enabled = true;
+	/**
+	 * how long an entry is used without asking the server about it, ms, when
+	 * the server doesn't say, and the most a Last-Modified alone keeps it
+	 * fresh
+	 */
+	public static long maxAge = 24 * 60 * 60 * 1000L;
+	/** the most bytes of contents the cache keeps */
+	public static long maxSize = 1L << 30;
+	/** the directory of the cache */
+	public static final File DIRECTORY = new File("cache" + File.separator + "urls");
+	/** how long to wait to connect to or hear from a server, ms */
+	static final int TIMEOUT = 15000;
+
+	/** the cache shared by the application, null until needed */
+	private static URLDiskCache shared;
+
+	/** where the entries for each URL are kept */
+	private final File index;
+	/** where the contents of images are kept */
+	private final File objects;
+	/** the bytes of contents in the cache */
+	private long size;
+
+	/**
+	 * @param dir
+	 *            the directory to keep the cache in
+	 */
+	public URLDiskCache(File dir) {
+		this.index = new File(dir, "index");
+		this.objects = new File(dir, "objects");
+		this.index.mkdirs();
+		this.objects.mkdirs();
+		// contents that were never finished being read
+		File[] partial = this.objects.listFiles();
+		if (partial != null)
+			for (File f : partial)
+				if (f.getName().endsWith(".tmp"))
+					f.delete();
+				else
+					this.size += f.length();
+	}
+
+	/** @return the cache shared by the application */
+	public static synchronized URLDiskCache shared() {
+		if (shared == null)
+			shared = new URLDiskCache(DIRECTORY);
+		return shared;
+	}
+
+	/**
+	 * Make the shared cache the JVM's ResponseCache, if it isn't already
+	 */
+	public static synchronized void install() {
+		if (ResponseCache.getDefault() != shared())
+			ResponseCache.setDefault(shared());
+	}
+
+	/**
+	 * What the cache knows about a URL
+	 */
+	public static class Entry {
+		/** the URL */
+		final String url;
+		/** the ETag the server sent, null if none */
+		final String etag;
+		/** the Last-Modified the server sent, null if none */
+		final String lastModified;
+		/** the content type the server sent, null if none */
+		final String type;
+		/** the SHA-256 of the contents, in hex */
+		final String hash;
+		/** when the server last confirmed the contents, ms since the epoch */
+		long validated;
+		/** when the contents stop being fresh, ms since the epoch */
+		long expires;
+
+		/**
+		 * @param url
+		 *            the URL
+		 * @param etag
+		 *            the ETag the server sent, null if none
+		 * @param lastModified
+		 *            the Last-Modified the server sent, null if none
+		 * @param type
+		 *            the content type the server sent, null if none
+		 * @param hash
+		 *            the SHA-256 of the contents, in hex
+		 * @param validated
+		 *            when the server last confirmed the contents
+		 * @param expires
+		 *            when the contents stop being fresh
+		 */
+		Entry(String url, String etag, String lastModified, String type, String hash, long validated,
+				long expires) {
+			this.url = url;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.type = type;
+			this.hash = hash;
+			this.validated = validated;
+			this.expires = expires;
+		}
+
+		/** @return true if the entry can be used without asking the server */
+		public boolean isFresh() {
+			long now = System.currentTimeMillis();
+			return now >= this.validated && now < this.expires;
+		}
+	}
+
+	/**
+	 * @param url
+	 *            a URL
+	 * @return the cache's entry for the URL, or null if it has none
+	 */
+	public Entry lookup(String url) {
+		File f = indexFile(url);
+		if (!f.isFile())
+			return null;
+		Properties p = new Properties();
+		try (FileInputStream in = new FileInputStream(f)) {
+			p.load(in);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		// the entry is from a different URL with the same hash
+		if (!url.equals(p.getProperty("url")))
+			return null;
+		long validated, expires;
+		try {
+			validated = Long.parseLong(p.getProperty("validated", "0"));
+			// entries from before expiry was kept were fresh for maxAge
+			expires = Long.parseLong(p.getProperty("expires", String.valueOf(validated + maxAge)));
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+		Entry e = new Entry(url, p.getProperty("etag"), p.getProperty("lastModified"), p.getProperty("type"),
+				p.getProperty("hash"), validated, expires);
+		if (e.hash == null || !contents(e).isFile())
+			return null;
+		return e;
+	}
+
+	/**
+	 * Mark an entry as just used, the entries used least recently are the
+	 * first evicted.
+	 *
+	 * @param e
+	 *            the entry
+	 */
+	private void used(Entry e) {
+		indexFile(e.url).setLastModified(System.currentTimeMillis());
+	}
+
+	/**
+	 * @param e
+	 *            an entry
+	 * @return the file holding the entry's contents
+	 */
+	public File contents(Entry e) {
+		return new File(this.objects, e.hash);
+	}
+
+	/**
+	 * Record that the server confirmed an entry's contents are current.
+	 *
+	 * @param e
+	 *            the entry
+	 * @param conn
+	 *            the connection the server confirmed them over, its headers
+	 *            say how long they now stay fresh
+	 */
+	public void revalidated(Entry e, URLConnection conn) {
+		e.validated = System.currentTimeMillis();
+		e.expires = expires(conn, e.validated, e.lastModified);
+		write(e);
+	}
+
+	/**
+	 * Get the contents of a URL into the cache, unless the cache has a fresh
+	 * copy. A copy that isn't fresh is asked about with If-None-Match and
+	 * If-Modified-Since, and a 304 response only marks it as current. Every
+	 * response is read to its end so the connection it came over goes back to
+	 * the JVM's keep-alive pool.
+	 *
+	 * @param url
+	 *            the URL
+	 * @return the URL's entry, or null if the server says not to store its
+	 *         contents
+	 * @throws IOException
+	 *             if the contents can't be fetched or stored
+	 */
+	public Entry fetch(URL url) throws IOException {
+		String key = url.toString();
+		Entry e = lookup(key);
+		if (e != null && e.isFresh()) {
+			used(e);
+			return e;
+		}
+
+		URLConnection conn = url.openConnection();
+		conn.setConnectTimeout(TIMEOUT);
+		conn.setReadTimeout(TIMEOUT);
+		// ask the server directly, the cache is handled here
+		conn.setUseCaches(false);
+		if (!(conn instanceof HttpURLConnection)) {
+			try (InputStream in = conn.getInputStream()) {
+				return store(key, conn, in);
+			}
+		}
+
+		HttpURLConnection http = (HttpURLConnection) conn;
+		if (e != null) {
+			if (e.etag != null)
+				http.setRequestProperty("If-None-Match", e.etag);
+			if (e.lastModified != null)
+				http.setRequestProperty("If-Modified-Since", e.lastModified);
+		}
+		int code = http.getResponseCode();
+		if (code == HttpURLConnection.HTTP_NOT_MODIFIED && e != null) {
+			drain(http.getInputStream());
+			revalidated(e, http);
+			used(e);
+			return e;
+		}
+		if (code != HttpURLConnection.HTTP_OK) {
+			InputStream err = http.getErrorStream();
+			if (err != null)
+				drain(err);
+			throw new IOException("HTTP " + code + " fetching " + key);
+		}
+		if (isNoStore(http)) {
+			drain(http.getInputStream());
+			indexFile(key).delete();
+			return null;
+		}
+		try (InputStream in = http.getInputStream()) {
+			return store(key, http, in);
+		}
+	}
+
+	/**
+	 * Read the rest of a response so its connection can be reused.
+	 *
+	 * @param in
+	 *            the response
+	 * @throws IOException
+	 *             if the response can't be read
+	 */
+	static void drain(InputStream in) throws IOException {
+		try (InputStream i = in) {
+			byte[] buf = new byte[8192];
+			while (i.read(buf) > 0)
+				continue;
+		}
+	}
+
+	/**
+	 * Store the contents of a URL along with the headers of the response they
+	 * came in.
+	 *
+	 * @param url
+	 *            the URL
+	 * @param conn
+	 *            the connection the contents came from
+	 * @param in
+	 *            the contents, read to its end
+	 * @return the new entry for the URL
+	 * @throws IOException
+	 *             if the contents can't be read or stored
+	 */
+	public Entry store(String url, URLConnection conn, InputStream in) throws IOException {
+		Pending p = new Pending(url, conn);
+		try {
+			byte[] buf = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				p.write(buf, 0, n);
+		} catch (IOException e) {
+			p.abort();
+			throw e;
+		}
+		p.close();
+		return p.entry;
+	}
+
+	/**
+	 * @param e
+	 *            the entry to write to the index
+	 */
+	private void write(Entry e) {
+		Properties p = new Properties();
+		p.setProperty("url", e.url);
+		p.setProperty("hash", e.hash);
+		p.setProperty("validated", String.valueOf(e.validated));
+		p.setProperty("expires", String.valueOf(e.expires));
+		if (e.etag != null)
+			p.setProperty("etag", e.etag);
+		if (e.lastModified != null)
+			p.setProperty("lastModified", e.lastModified);
+		if (e.type != null)
+			p.setProperty("type", e.type);
+		File f = indexFile(e.url);
+		File tmp = new File(f.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(tmp)) {
+			p.store(out, null);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param url
+	 *            a URL
+	 * @return the file the URL's entry is kept in
+	 */
+	private File indexFile(String url) {
+		return new File(this.index, hex(digest("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	// Freshness ***************************************************************
+
+	/**
+	 * @param cacheControl
+	 *            a Cache-Control header, or null
+	 * @param name
+	 *            the name of a directive
+	 * @return the directive's value, "" if it has none, or null if the header
+	 *         doesn't have the directive
+	 */
+	static String directive(String cacheControl, String name) {
+		if (cacheControl == null)
+			return null;
+		for (String d : cacheControl.split(",")) {
+			int eq = d.indexOf('=');
+			if (!(eq < 0 ? d : d.substring(0, eq)).trim().equalsIgnoreCase(name))
+				continue;
+			if (eq < 0)
+				return "";
+			String v = d.substring(eq + 1).trim();
+			return v.length() > 1 && v.startsWith("\"") && v.endsWith("\"") ? v.substring(1, v.length() - 1) : v;
+		}
+		return null;
+	}
+
+	/**
+	 * @param conn
+	 *            a response
+	 * @return true if the server says not to store the response
+	 */
+	static boolean isNoStore(URLConnection conn) {
+		return directive(conn.getHeaderField("Cache-Control"), "no-store") != null;
+	}
+
+	/**
+	 * @param conn
+	 *            a response
+	 * @param now
+	 *            when the response was received
+	 * @param lastModified
+	 *            the Last-Modified the contents were stored with, used if the
+	 *            response has none, or null
+	 * @return when the contents stop being fresh, see {@link URLDiskCache}
+	 */
+	static long expires(URLConnection conn, long now, String lastModified) {
+		String cc = conn.getHeaderField("Cache-Control");
+		if (directive(cc, "no-cache") != null || directive(cc, "no-store") != null)
+			return now;
+		long age = Math.max(0, conn.getHeaderFieldInt("Age", 0)) * 1000L;
+		String maxAgeValue = directive(cc, "max-age");
+		if (maxAgeValue != null)
+			try {
+				return now + Long.parseLong(maxAgeValue) * 1000L - age;
+			} catch (NumberFormatException e) {
+				return now;
+			}
+		long date = conn.getHeaderFieldDate("Date", now);
+		if (conn.getHeaderField("Expires") != null) {
+			// an Expires that isn't a date means already expired
+			long expires = conn.getHeaderFieldDate("Expires", Long.MIN_VALUE);
+			return expires == Long.MIN_VALUE ? now : now + (expires - date) - age;
+		}
+		long modified = conn.getHeaderFieldDate("Last-Modified", parseDate(lastModified));
+		if (modified != Long.MIN_VALUE)
+			return now + Math.min(maxAge, Math.max(0, date - modified) / 10);
+		return now + maxAge;
+	}
+
+	/**
+	 * @param date
+	 *            an HTTP date, or null
+	 * @return the date in ms since the epoch, or Long.MIN_VALUE if it isn't
+	 *         one
+	 */
+	private static long parseDate(String date) {
+		if (date == null)
+			return Long.MIN_VALUE;
+		try {
+			return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	// Eviction ****************************************************************
+
+	/**
+	 * Count contents newly added to the cache, and evict entries if that puts
+	 * the cache over {@link #maxSize}.
+	 *
+	 * @param bytes
+	 *            the size of the contents added
+	 * @param added
+	 *            the entry naming them, which is kept
+	 */
+	private synchronized void added(long bytes, Entry added) {
+		this.size += bytes;
+		if (this.size > maxSize)
+			evict(maxSize - maxSize / 10, indexFile(added.url));
+	}
+
+	/** @return the bytes of contents in the cache */
+	public synchronized long size() {
+		return this.size;
+	}
+
+	/**
+	 * Delete the contents no entry names, then the entries used least
+	 * recently, along with contents only they name, until the cache holds no
+	 * more than a given number of bytes.
+	 *
+	 * @param target
+	 *            the most bytes to leave in the cache
+	 * @param keep
+	 *            the file of an entry that isn't evicted
+	 */
+	private synchronized void evict(long target, File keep) {
+		File[] files = this.index.listFiles();
+		if (files == null)
+			return;
+		ArrayList<File> entries = new ArrayList<>();
+		HashMap<File, String> hashes = new HashMap<>();
+		HashMap<String, Integer> names = new HashMap<>();
+		for (File f : files) {
+			if (f.getName().endsWith(".tmp"))
+				continue;
+			Properties p = new Properties();
+			try (FileInputStream in = new FileInputStream(f)) {
+				p.load(in);
+			} catch (IOException e) {
+				continue;
+			}
+			String hash = p.getProperty("hash");
+			if (hash == null)
+				continue;
+			if (!f.equals(keep))
+				entries.add(f);
+			hashes.put(f, hash);
+			names.merge(hash, Integer.valueOf(1), Integer::sum);
+		}
+
+		// contents left behind when their URL's contents changed
+		File[] contents = this.objects.listFiles();
+		if (contents != null)
+			for (File o : contents)
+				if (!o.getName().endsWith(".tmp") && !names.containsKey(o.getName()))
+					delete(o);
+
+		final HashMap<File, Long> used = new HashMap<>();
+		for (File f : entries)
+			used.put(f, Long.valueOf(f.lastModified()));
+		entries.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+		for (File f : entries) {
+			if (this.size <= target)
+				break;
+			if (!f.delete())
+				continue;
+			String hash = hashes.get(f);
+			int n = names.get(hash).intValue() - 1;
+			names.put(hash, Integer.valueOf(n));
+			if (n == 0)
+				delete(new File(this.objects, hash));
+		}
+	}
+
+	/**
+	 * @param o
+	 *            contents to delete from the cache
+	 */
+	private void delete(File o) {
+		long length = o.length();
+		if (o.delete())
+			this.size -= length;
+	}
+
+	// ResponseCache **********************************************************
+
+	/**
+	 * @param headers
+	 *            the headers of a request
+	 * @return true if the request has to go to the server, because it asks
+	 *         not to be served from a cache or makes a conditional or partial
+	 *         request of its own
+	 */
+	private static boolean bypasses(Map<String, List<String>> headers) {
+		for (Map.Entry<String, List<String>> h : headers.entrySet()) {
+			String name = h.getKey();
+			if (name == null)
+				continue;
+			if (name.equalsIgnoreCase("If-None-Match") || name.equalsIgnoreCase("If-Modified-Since")
+					|| name.equalsIgnoreCase("Range"))
+				return true;
+			if (name.equalsIgnoreCase("Cache-Control") || name.equalsIgnoreCase("Pragma"))
+				for (String v : h.getValue())
+					if (directive(v, "no-cache") != null || directive(v, "no-store") != null)
+						return true;
+		}
+		return false;
+	}
+
+	@Override
+	public CacheResponse get(URI uri, String method, Map<String, List<String>> headers) {
+		if (!"GET".equals(method) || bypasses(headers))
+			return null;
+		Entry found = lookup(uri.toString());
+		if (found == null)
+			return null;
+		if (found.isFresh())
+			used(found);
+		else
+			// ask the server about the copy, rather than fetching it whole
+			try {
+				found = fetch(uri.toURL());
+			} catch (IOException | IllegalArgumentException ex) {
+				return null;
+			}
+		if (found == null)
+			return null;
+		final Entry e = found;
+		final File f = contents(e);
+		return new CacheResponse() {
+			@Override
+			public Map<String, List<String>> getHeaders() {
+				Map<String, List<String>> h = new HashMap<>();
+				h.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+				h.put("Content-Length", Collections.singletonList(String.valueOf(f.length())));
+				if (e.type != null)
+					h.put("Content-Type", Collections.singletonList(e.type));
+				if (e.etag != null)
+					h.put("ETag", Collections.singletonList(e.etag));
+				if (e.lastModified != null)
+					h.put("Last-Modified", Collections.singletonList(e.lastModified));
+				return h;
+			}
+
+			@Override
+			public InputStream getBody() throws IOException {
+				return new FileInputStream(f);
+			}
+		};
+	}
+
+	@Override
+	public CacheRequest put(URI uri, URLConnection conn) throws IOException {
+		if (!(conn instanceof HttpURLConnection))
+			return null;
+		HttpURLConnection http = (HttpURLConnection) conn;
+		if (!"GET".equals(http.getRequestMethod()) || http.getResponseCode() != HttpURLConnection.HTTP_OK
+				|| isNoStore(http))
+			return null;
+		final Pending p = new Pending(uri.toString(), conn);
+		return new CacheRequest() {
+			@Override
+			public OutputStream getBody() {
+				return p;
+			}
+
+			@Override
+			public void abort() {
+				p.abort();
+			}
+		};
+	}
+
+	/**
+	 * Contents being written to the cache. The contents are hashed as they're
+	 * written to a temporary file, which is moved to its place in the cache
+	 * (unless the cache already has the same contents) when the stream is
+	 * closed.
+	 */
+	private class Pending extends OutputStream {
+		/** the URL the contents are from */
+		private final String url;
+		/** the ETag of the response, null if none */
+		private final String etag;
+		/** the Last-Modified of the response, null if none */
+		private final String lastModified;
+		/** the content type of the response, null if none */
+		private final String type;
+		/** when the response was received */
+		private final long received = System.currentTimeMillis();
+		/** when the contents stop being fresh */
+		private final long expires;
+		/** where the contents are written until they're complete */
+		private final File tmp;
+		/** the stream writing to tmp */
+		private final FileOutputStream out;
+		/** hashes the contents */
+		private final MessageDigest sha = digest("SHA-256");
+		/** true once the stream is closed or aborted */
+		private boolean done;
+		/** the URL's new entry, set when the stream is closed */
+		Entry entry;
+
+		/**
+		 * @param url
+		 *            the URL the contents are from
+		 * @param conn
+		 *            the connection the contents are from
+		 * @throws IOException
+		 *             if the temporary file can't be created
+		 */
+		Pending(String url, URLConnection conn) throws IOException {
+			this.url = url;
+			this.etag = conn.getHeaderField("ETag");
+			this.lastModified = conn.getHeaderField("Last-Modified");
+			this.type = conn.getContentType();
+			this.expires = expires(conn, this.received, null);
+			this.tmp = File.createTempFile("url", ".tmp", URLDiskCache.this.objects);
+			this.out = new FileOutputStream(this.tmp);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.sha.update((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.sha.update(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.done)
+				return;
+			this.done = true;
+			this.out.close();
+			String hash = hex(this.sha.digest());
+			File f = new File(URLDiskCache.this.objects, hash);
+			long added = 0;
+			synchronized (URLDiskCache.this) {
+				if (f.isFile())
+					this.tmp.delete();
+				else {
+					Files.move(this.tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					added = f.length();
+				}
+				this.entry = new Entry(this.url, this.etag, this.lastModified, this.type, hash, this.received,
+						this.expires);
+				URLDiskCache.this.write(this.entry);
+			}
+			added(added, this.entry);
+		}
+
+		/** Throw away the contents written so far */
+		void abort() {
+			if (this.done)
+				return;
+			this.done = true;
+			try {
+				this.out.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			this.tmp.delete();
+		}
+	}
+
+	/**
+	 * @param algorithm
+	 *            the name of a digest every JVM has
+	 * @return the digest
+	 */
+	static MessageDigest digest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param bytes
+	 *            some bytes
+	 * @return the bytes in hex
+	 */
+	static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,136 @@
+package struct;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the images of a URL list into a {@link URLDiskCache} over a bounded
+ * number of concurrent connections, so the first pass over a list isn't one
+ * round trip per image, and later passes read the images from disk.
+ * <p>
+ * Each image is fetched with {@link URLDiskCache#fetch(URL)}, so an image the
+ * cache already has is only asked about, and every response is read to its
+ * end so the connection it came over goes back to the JVM's keep-alive pool
+ * and the next request to the same host reuses it, rather than paying for a
+ * new connection each image.
+ *
+ * @author bonifantmc
+ *
+ */
+public class URLFetcher {
+	/** the number of images fetched at once */
+	public static int connections = 8;
+
+	/** the fetcher shared by the application, null until needed */
+	private static URLFetcher shared;
+
+	/** the cache images are fetched into */
+	private final URLDiskCache cache;
+	/** the threads images are fetched on */
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * @param cache
+	 *            the cache to fetch images into
+	 * @param threads
+	 *            the number of images to fetch at once
+	 */
+	public URLFetcher(URLDiskCache cache, int threads) {
+		this.cache = cache;
+		// let every fetching thread keep its connection alive between images
+		if (System.getProperty("http.maxConnections") == null)
+			System.setProperty("http.maxConnections", String.valueOf(Math.max(5, threads)));
+		this.pool = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "URL Fetcher");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	/** @return the fetcher shared by the application */
+	public static synchronized URLFetcher shared() {
+		if (shared == null)
+			shared = new URLFetcher(URLDiskCache.shared(), Math.max(1, connections));
+		return shared;
+	}
+
+	/**
+	 * Stop fetching images for the shared fetcher, if there is one
+	 */
+	public static synchronized void stopPrefetch() {
+		if (shared != null)
+			shared.pool.getQueue().clear();
+	}
+
+	/**
+	 * Fetch an image into the cache on the calling thread.
+	 *
+	 * @param url
+	 *            the image's URL
+	 * @return the cached copy of the image, or null if the server says not to
+	 *         store it
+	 * @throws IOException
+	 *             if the image can't be fetched
+	 */
+	public File fetchNow(URL url) throws IOException {
+		URLDiskCache.Entry e = this.cache.fetch(url);
+		return e == null ? null : this.cache.contents(e);
+	}
+
+	/**
+	 * Fetch an image into the cache in the background.
+	 *
+	 * @param url
+	 *            the image's URL
+	 * @return the cached copy of the image, once fetched
+	 */
+	public Future<File> fetch(final URL url) {
+		return this.pool.submit(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				return fetchNow(url);
+			}
+		});
+	}
+
+	/**
+	 * Fetch the images of a list into the cache in the background, in the
+	 * order given, replacing any images still waiting from an earlier call.
+	 * Images that fail to fetch are reported and skipped.
+	 *
+	 * @param urls
+	 *            the images' URLs
+	 * @return the fetches, one per URL
+	 */
+	public List<Future<File>> prefetch(List<URL> urls) {
+		this.pool.getQueue().clear();
+		List<Future<File>> ret = new ArrayList<>(urls.size());
+		for (final URL u : urls)
+			ret.add(this.pool.submit(new Callable<File>() {
+				@Override
+				public File call() {
+					try {
+						return fetchNow(u);
+					} catch (IOException e) {
+						System.err.println(e.getMessage());
+						return null;
+					}
+				}
+			}));
+		return ret;
+	}
+}
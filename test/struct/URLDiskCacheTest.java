@@ -0,0 +1,338 @@
+package struct;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ResponseCache;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link URLDiskCache} against a local HTTP server standing in for an
+ * image host. Each path of the server answers with the headers its name
+ * calls for, and every request is recorded so a test can check which ones
+ * reached the server and how they were asked.
+ *
+ * @author bonifantmc
+ *
+ */
+public class URLDiskCacheTest {
+	/** the ETag the server gives its images */
+	private static final String ETAG = "\"v1\"";
+	/** the Last-Modified the server gives its images */
+	private static final String LAST_MODIFIED = "Mon, 02 Jan 2017 03:04:05 GMT";
+
+	/** the server standing in for an image host */
+	private HttpServer server;
+	/** the requests the server has answered, "path" or "path 304" */
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+	/** the directory of the cache under test */
+	private File dir;
+	/** the cache under test */
+	private URLDiskCache cache;
+	/** maxSize before the test */
+	private long maxSize;
+
+	/**
+	 * Start the server and make an empty cache.
+	 *
+	 * @throws IOException
+	 *             if the server can't be started
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/", this::answer);
+		this.server.start();
+		this.dir = Files.createTempDirectory("urlcache").toFile();
+		this.cache = new URLDiskCache(this.dir);
+		this.maxSize = URLDiskCache.maxSize;
+	}
+
+	/**
+	 * Stop the server and delete the cache.
+	 *
+	 * @throws IOException
+	 *             if the cache can't be deleted
+	 */
+	@After
+	public void tearDown() throws IOException {
+		this.server.stop(0);
+		URLDiskCache.maxSize = this.maxSize;
+		Files.walk(this.dir.toPath()).map(Path::toFile).sorted(Collections.reverseOrder())
+				.forEach(File::delete);
+	}
+
+	/**
+	 * Answer a request. The image at /name is the bytes of its name, 1000
+	 * times over if the name starts with "big". A name holding "maxage" is
+	 * sent with max-age=60, "nocache" with no-cache, "nostore" with no-store,
+	 * and "expired" with an Expires in the past. Every image has an ETag and
+	 * a Last-Modified, and a request for it with either gets a 304.
+	 *
+	 * @param x
+	 *            the request
+	 * @throws IOException
+	 *             if the answer can't be sent
+	 */
+	private void answer(HttpExchange x) throws IOException {
+		String name = x.getRequestURI().getPath().substring(1);
+		boolean conditional = ETAG.equals(x.getRequestHeaders().getFirst("If-None-Match"))
+				|| LAST_MODIFIED.equals(x.getRequestHeaders().getFirst("If-Modified-Since"));
+		this.requests.add(conditional ? name + " 304" : name);
+		if (name.contains("maxage"))
+			x.getResponseHeaders().set("Cache-Control", "public, max-age=60");
+		else if (name.contains("nocache"))
+			x.getResponseHeaders().set("Cache-Control", "no-cache");
+		else if (name.contains("nostore"))
+			x.getResponseHeaders().set("Cache-Control", "no-store");
+		else if (name.contains("expired"))
+			x.getResponseHeaders().set("Expires", "Thu, 01 Jan 1970 00:00:00 GMT");
+		x.getResponseHeaders().set("ETag", ETAG);
+		x.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+		x.getResponseHeaders().set("Content-Type", "image/png");
+		if (conditional) {
+			x.sendResponseHeaders(304, -1);
+			x.close();
+			return;
+		}
+		byte[] body = body(name);
+		x.sendResponseHeaders(200, body.length);
+		try (OutputStream out = x.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            the name of an image of the server
+	 * @return the image's bytes
+	 */
+	private static byte[] body(String name) {
+		byte[] b = name.getBytes(StandardCharsets.UTF_8);
+		if (!name.startsWith("big"))
+			return b;
+		byte[] ret = new byte[b.length * 1000];
+		for (int i = 0; i < ret.length; i += b.length)
+			System.arraycopy(b, 0, ret, i, b.length);
+		return ret;
+	}
+
+	/**
+	 * @param name
+	 *            the name of an image of the server
+	 * @return its URL
+	 * @throws IOException
+	 *             never
+	 */
+	private URL url(String name) throws IOException {
+		return new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + "/" + name);
+	}
+
+	/**
+	 * @param name
+	 *            the name of an image of the server
+	 * @return the image as the cache has it, after fetching it
+	 * @throws IOException
+	 *             if it can't be fetched
+	 */
+	private byte[] fetch(String name) throws IOException {
+		URLDiskCache.Entry e = this.cache.fetch(url(name));
+		assertNotNull(name, e);
+		return Files.readAllBytes(this.cache.contents(e).toPath());
+	}
+
+	/**
+	 * An image the server says stays fresh is served from the disk without
+	 * asking the server again.
+	 *
+	 * @throws IOException
+	 *             if fetching fails
+	 */
+	@Test
+	public void maxAgeIsServedFromDisk() throws IOException {
+		assertArrayEquals(body("maxage.png"), fetch("maxage.png"));
+		assertArrayEquals(body("maxage.png"), fetch("maxage.png"));
+		assertEquals(Arrays.asList("maxage.png"), this.requests);
+	}
+
+	/**
+	 * An image marked no-cache is asked about with its ETag every time, and a
+	 * 304 serves the copy on disk.
+	 *
+	 * @throws IOException
+	 *             if fetching fails
+	 */
+	@Test
+	public void noCacheIsRevalidated() throws IOException {
+		assertArrayEquals(body("nocache.png"), fetch("nocache.png"));
+		assertArrayEquals(body("nocache.png"), fetch("nocache.png"));
+		assertArrayEquals(body("nocache.png"), fetch("nocache.png"));
+		assertEquals(Arrays.asList("nocache.png", "nocache.png 304", "nocache.png 304"), this.requests);
+	}
+
+	/**
+	 * An image whose Expires has passed is asked about before it's used.
+	 *
+	 * @throws IOException
+	 *             if fetching fails
+	 */
+	@Test
+	public void expiredIsRevalidated() throws IOException {
+		fetch("expired.png");
+		fetch("expired.png");
+		assertEquals(Arrays.asList("expired.png", "expired.png 304"), this.requests);
+	}
+
+	/**
+	 * An image marked no-store is never stored.
+	 *
+	 * @throws IOException
+	 *             if fetching fails
+	 */
+	@Test
+	public void noStoreIsNotStored() throws IOException {
+		assertNull(this.cache.fetch(url("nostore.png")));
+		assertNull(this.cache.lookup(url("nostore.png").toString()));
+		assertNull(this.cache.fetch(url("nostore.png")));
+		assertEquals(Arrays.asList("nostore.png", "nostore.png"), this.requests);
+		assertEquals(0, this.cache.size());
+	}
+
+	/**
+	 * A cache over its size evicts the images used least recently.
+	 *
+	 * @throws IOException
+	 *             if fetching fails
+	 */
+	@Test
+	public void leastRecentlyUsedIsEvicted() throws IOException {
+		URLDiskCache.maxSize = 3 * body("big0-maxage.png").length;
+		fetch("big0-maxage.png");
+		fetch("big1-maxage.png");
+		fetch("big2-maxage.png");
+		// the file system's clock may be too coarse to tell images used in
+		// quick succession apart, so when each was used is set here, big0
+		// being used again after the others
+		long t = System.currentTimeMillis() - 60000;
+		used("big1-maxage.png", t);
+		used("big2-maxage.png", t + 1000);
+		used("big0-maxage.png", t + 2000);
+		fetch("big3-maxage.png");
+		assertTrue(this.cache.size() <= URLDiskCache.maxSize);
+		assertNull(this.cache.lookup(url("big1-maxage.png").toString()));
+		assertNull(this.cache.lookup(url("big2-maxage.png").toString()));
+		assertNotNull(this.cache.lookup(url("big0-maxage.png").toString()));
+		assertNotNull(this.cache.lookup(url("big3-maxage.png").toString()));
+		assertEquals(this.cache.size(), directorySize(new File(this.dir, "objects")));
+	}
+
+	/**
+	 * Set when an image of the cache was last used.
+	 *
+	 * @param name
+	 *            the name of an image in the cache
+	 * @param time
+	 *            when it was used
+	 * @throws IOException
+	 *             if the cache's entries can't be read
+	 */
+	private void used(String name, long time) throws IOException {
+		for (File f : new File(this.dir, "index").listFiles())
+			if (url(name).toString().equals(readUrl(f)))
+				f.setLastModified(time);
+	}
+
+	/**
+	 * @param entry
+	 *            an entry file of the cache
+	 * @return the URL it's for
+	 * @throws IOException
+	 *             if it can't be read
+	 */
+	private static String readUrl(File entry) throws IOException {
+		Properties p = new Properties();
+		try (InputStream in = Files.newInputStream(entry.toPath())) {
+			p.load(in);
+		}
+		return p.getProperty("url");
+	}
+
+	/**
+	 * @param d
+	 *            a directory
+	 * @return the bytes of the files in it
+	 */
+	private static long directorySize(File d) {
+		long size = 0;
+		for (File f : d.listFiles())
+			size += f.length();
+		return size;
+	}
+
+	/**
+	 * Images read through a plain URL connection, with the cache installed as
+	 * the JVM's ResponseCache, follow the same rules.
+	 *
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	@Test
+	public void responseCacheFollowsHeaders() throws IOException {
+		ResponseCache old = ResponseCache.getDefault();
+		ResponseCache.setDefault(this.cache);
+		try {
+			for (int i = 0; i < 2; i++) {
+				assertArrayEquals(body("maxage.png"), read("maxage.png"));
+				assertArrayEquals(body("nocache.png"), read("nocache.png"));
+				assertArrayEquals(body("nostore.png"), read("nostore.png"));
+			}
+		} finally {
+			ResponseCache.setDefault(old);
+		}
+		assertEquals(Arrays.asList("maxage.png", "nocache.png", "nostore.png", "nocache.png 304", "nostore.png"),
+				this.requests);
+	}
+
+	/**
+	 * @param name
+	 *            the name of an image of the server
+	 * @return the image, read through a plain URL connection
+	 * @throws IOException
+	 *             if it can't be read
+	 */
+	private byte[] read(String name) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = url(name).openStream()) {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+}